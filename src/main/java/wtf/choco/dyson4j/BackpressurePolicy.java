@@ -0,0 +1,43 @@
+package wtf.choco.dyson4j;
+
+import wtf.choco.dyson4j.exception.DysonBackpressureException;
+
+/**
+ * A policy determining how a message is handled when it is sent to a fan while the maximum
+ * amount of messages are already in flight. A message is in flight from the moment it is
+ * published until the fan has responded to it, or until it has been handed off to the network
+ * if it expects no response.
+ *
+ * @see DysonFanOptions.Builder#backpressurePolicy(BackpressurePolicy)
+ * @see DysonFanOptions.Builder#maxInFlightMessages(int)
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * The message is queued and published once an earlier message is no longer in flight.
+     * Queued messages are published in the order in which they were sent. Once the queue is
+     * full, further messages fail with a {@link DysonBackpressureException}.
+     *
+     * @see DysonFanOptions.Builder#maxQueuedMessages(int)
+     */
+    QUEUE,
+
+    /**
+     * The message immediately fails with a {@link DysonBackpressureException}.
+     */
+    FAIL_FAST,
+
+    /**
+     * The thread sending the message blocks until an earlier message is no longer in flight, and
+     * the message is then published in its place. If the message's timeout elapses first, or the
+     * thread is interrupted, a {@link DysonBackpressureException} is thrown. Best suited to callers
+     * running on virtual threads.
+     * <p>
+     * Messages that no calling thread needs to block for are queued as per {@link #QUEUE} instead.
+     * These are coalesced or buffered state changes, which are sent later on by the fan itself, and
+     * coalesced requests such as {@link DysonFan#requestCurrentState()}, of which at most one is
+     * ever in flight.
+     */
+    BLOCK;
+
+}
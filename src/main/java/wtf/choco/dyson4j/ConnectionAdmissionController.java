@@ -0,0 +1,236 @@
+package wtf.choco.dyson4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Limits the amount of connection attempts made concurrently by the fans sharing it. When many
+ * fans (re)connect at once, such as after an access point has rebooted, attempts beyond the
+ * limit are queued and admitted one by one as earlier attempts complete, each delayed by a
+ * random jitter so that admitted attempts do not start in lockstep. Fans with commands waiting
+ * to be sent are admitted before all others.
+ * <p>
+ * The time taken to (re)connect a whole fleet is therefore bounded by roughly the amount of
+ * fans divided by the maximum amount of concurrent attempts, multiplied by the duration of a
+ * single attempt plus half of the jitter, rather than every fan competing for the network at
+ * the same time.
+ * <p>
+ * This class is thread-safe and is generally shared by every fan in a {@link DysonFleet}.
+ *
+ * @see DysonFanOptions.Builder#admissionController(ConnectionAdmissionController)
+ */
+public final class ConnectionAdmissionController {
+
+    private static final ConnectionAdmissionController UNLIMITED = new ConnectionAdmissionController();
+
+    private final int maxConcurrentAttempts;
+    private final Duration maxJitter;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private final Queue<PendingAttempt<?>> priorityQueue = new ArrayDeque<>(), queue = new ArrayDeque<>();
+    private int activeAttempts;
+
+    /**
+     * Construct a new {@link ConnectionAdmissionController}.
+     *
+     * @param maxConcurrentAttempts the maximum amount of connection attempts in progress at
+     * any given time. Must be positive
+     * @param maxJitter the maximum random delay applied to each admitted attempt. Must not be
+     * negative
+     * @param scheduler the scheduler on which admitted attempts are started
+     */
+    public ConnectionAdmissionController(int maxConcurrentAttempts, @NotNull Duration maxJitter, @NotNull ScheduledExecutorService scheduler) {
+        Preconditions.checkArgument(maxConcurrentAttempts > 0, "maxConcurrentAttempts must be positive");
+        Preconditions.checkArgument(maxJitter != null, "maxJitter must not be null");
+        Preconditions.checkArgument(!maxJitter.isNegative(), "maxJitter must not be negative");
+        Preconditions.checkArgument(scheduler != null, "scheduler must not be null");
+
+        this.maxConcurrentAttempts = maxConcurrentAttempts;
+        this.maxJitter = maxJitter;
+        this.scheduler = scheduler;
+    }
+
+    private ConnectionAdmissionController() {
+        this.maxConcurrentAttempts = Integer.MAX_VALUE;
+        this.maxJitter = Duration.ZERO;
+        this.scheduler = null;
+    }
+
+    /**
+     * Submit a connection attempt. The attempt is started once admitted, and the returned future
+     * is completed with the attempt's result. Cancelling the returned future before the attempt
+     * has been admitted removes it from the queue.
+     *
+     * @param <T> the attempt's result type
+     * @param priority whether or not the attempt should be admitted before attempts without priority,
+     * such as for a fan with commands waiting to be sent
+     * @param attempt the connection attempt
+     *
+     * @return a completable future, completed when the attempt has completed
+     */
+    @NotNull
+    public <T> CompletableFuture<T> submit(boolean priority, @NotNull Supplier<@NotNull CompletableFuture<T>> attempt) {
+        Preconditions.checkArgument(attempt != null, "attempt must not be null");
+
+        if (this == UNLIMITED) {
+            return attempt.get();
+        }
+
+        PendingAttempt<T> pendingAttempt = new PendingAttempt<>(attempt);
+        synchronized (lock) {
+            (priority ? priorityQueue : queue).add(pendingAttempt);
+        }
+
+        this.dispatch();
+        return pendingAttempt.future;
+    }
+
+    /**
+     * Get the maximum amount of connection attempts in progress at any given time.
+     *
+     * @return the maximum concurrent attempts
+     */
+    public int getMaxConcurrentAttempts() {
+        return maxConcurrentAttempts;
+    }
+
+    /**
+     * Get the maximum random delay applied to each admitted attempt.
+     *
+     * @return the maximum jitter
+     */
+    @NotNull
+    public Duration getMaxJitter() {
+        return maxJitter;
+    }
+
+    /**
+     * Get the amount of connection attempts currently admitted and in progress.
+     *
+     * @return the active attempt count
+     */
+    public int getActiveAttempts() {
+        synchronized (lock) {
+            return activeAttempts;
+        }
+    }
+
+    /**
+     * Get the amount of connection attempts waiting to be admitted.
+     *
+     * @return the queued attempt count
+     */
+    public int getQueuedAttempts() {
+        synchronized (lock) {
+            return priorityQueue.size() + queue.size();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            PendingAttempt<?> pendingAttempt;
+            synchronized (lock) {
+                if (activeAttempts >= maxConcurrentAttempts) {
+                    return;
+                }
+
+                pendingAttempt = priorityQueue.poll();
+                if (pendingAttempt == null) {
+                    pendingAttempt = queue.poll();
+                }
+
+                if (pendingAttempt == null) {
+                    return;
+                }
+
+                // Cancelled while queued
+                if (pendingAttempt.future.isDone()) {
+                    continue;
+                }
+
+                this.activeAttempts++;
+            }
+
+            /*
+             * Always hop onto the scheduler, even without jitter. Attempts completing synchronously would otherwise
+             * admit the next one on the same stack, which could overflow with thousands of queued attempts.
+             */
+            long jitterNanos = maxJitter.toNanos();
+            long delayNanos = (jitterNanos > 0) ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0;
+            PendingAttempt<?> admittedAttempt = pendingAttempt;
+            try {
+                this.scheduler.schedule(() -> run(admittedAttempt), delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // The scheduler was shut down, so fail the attempt and free its slot for the next one to fail alike
+                synchronized (lock) {
+                    this.activeAttempts--;
+                }
+
+                admittedAttempt.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private <T> void run(PendingAttempt<T> pendingAttempt) {
+        CompletableFuture<T> attemptFuture;
+        try {
+            attemptFuture = pendingAttempt.future.isDone() ? CompletableFuture.completedFuture(null) : pendingAttempt.attempt.get();
+        } catch (RuntimeException e) {
+            attemptFuture = CompletableFuture.failedFuture(e);
+        }
+
+        attemptFuture.whenComplete((result, e) -> {
+            synchronized (lock) {
+                this.activeAttempts--;
+            }
+
+            if (e != null) {
+                pendingAttempt.future.completeExceptionally(e);
+            } else {
+                pendingAttempt.future.complete(result);
+            }
+
+            this.dispatch();
+        });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionAdmissionController[maxConcurrentAttempts=%s, maxJitter=%s]", maxConcurrentAttempts, maxJitter);
+    }
+
+    /**
+     * Get a {@link ConnectionAdmissionController} that admits every attempt immediately on the
+     * calling thread. This is the default controller of a fan not registered to a {@link DysonFleet}.
+     *
+     * @return the unlimited controller
+     */
+    @NotNull
+    public static ConnectionAdmissionController unlimited() {
+        return UNLIMITED;
+    }
+
+    private static final class PendingAttempt<T> {
+
+        private final Supplier<CompletableFuture<T>> attempt;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private PendingAttempt(Supplier<CompletableFuture<T>> attempt) {
+            this.attempt = attempt;
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package wtf.choco.dyson4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An append-only record of the desired states declared on a {@link DesiredStateReconciler}.
+ * Every declaration is appended to the journal before it is applied, so that a reconciler
+ * created with the same journal after a restart resumes converging fans towards the same
+ * desired states.
+ *
+ * @see DesiredStateReconciler#DesiredStateReconciler(DesiredStateJournal)
+ */
+public interface DesiredStateJournal extends Closeable {
+
+    /**
+     * Append a change to the desired states of a fan. A null value indicates that the state
+     * no longer has a desired value.
+     *
+     * @param serialNumber the serial number of the fan whose desired states changed
+     * @param states the changed states and their new desired values
+     *
+     * @throws IOException if the change could not be recorded
+     */
+    public void append(@NotNull String serialNumber, @NotNull Map<@NotNull FanState<?>, MqttStateValueProvider> states) throws IOException;
+
+    /**
+     * Replay every change recorded in this journal, in the order in which they were appended,
+     * and get the resulting desired states of every fan.
+     *
+     * @return the desired states by serial number
+     *
+     * @throws IOException if the journal could not be read
+     */
+    @NotNull
+    public Map<@NotNull String, @NotNull Map<@NotNull FanState<?>, @NotNull MqttStateValueProvider>> replay() throws IOException;
+
+    @Override
+    public default void close() throws IOException { }
+
+    /**
+     * Get a {@link DesiredStateJournal} that records nothing. Desired states will not survive
+     * a restart.
+     *
+     * @return the journal
+     */
+    @NotNull
+    public static DesiredStateJournal none() {
+        return NoDesiredStateJournal.INSTANCE;
+    }
+
+    /**
+     * Get a {@link DesiredStateJournal} backed by the file at the given path, created if it does
+     * not exist. Every change is written to the file synchronously before it is applied, and the
+     * file is compacted when it is replayed if it holds significantly more changes than there are
+     * desired states.
+     *
+     * @param path the path to the journal file
+     *
+     * @return the journal
+     *
+     * @throws IOException if the file could not be opened
+     */
+    @NotNull
+    public static DesiredStateJournal file(@NotNull Path path) throws IOException {
+        Preconditions.checkArgument(path != null, "path must not be null");
+        return new FileDesiredStateJournal(path);
+    }
+
+}
@@ -0,0 +1,396 @@
+package wtf.choco.dyson4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.event.DysonFanEvent;
+import wtf.choco.dyson4j.event.FanConnectionStateEvent;
+import wtf.choco.dyson4j.event.FanStateChangeEvent;
+import wtf.choco.dyson4j.event.FanStatusEvent;
+import wtf.choco.dyson4j.exception.DysonConnectionException;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Converges {@link DysonFan DysonFans} towards a set of declared desired {@link FanState} values.
+ * <p>
+ * Once a fan is {@link #manage(DysonFan) managed}, its desired states are compared against its
+ * {@link DysonFan#getCachedStatus() cached status} and only those that differ are sent to the
+ * fan, merged into a single state change. Fans are reconciled every time they report their full
+ * status (which they do after every connection and reconnection), and every time any of their
+ * states change, such that a state changed by some other means (such as the fan's remote) is
+ * changed back to its desired value.
+ * <p>
+ * Every change to a fan's desired states is appended to a {@link DesiredStateJournal} before it
+ * is applied. A reconciler created with the same journal after a restart resumes with the same
+ * desired states and, as it compares them against each fan's status, sends nothing to fans that
+ * are already in their desired state.
+ */
+public final class DesiredStateReconciler implements AutoCloseable {
+
+    private final DesiredStateJournal journal;
+    private final ConcurrentMap<String, Map<FanState<?>, MqttStateValueProvider>> desiredStates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ManagedFan> managedFans = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Construct a new {@link DesiredStateReconciler}, restoring all desired states recorded in the
+     * given journal.
+     *
+     * @param journal the journal in which to record desired states
+     *
+     * @throws IOException if the journal could not be replayed
+     */
+    public DesiredStateReconciler(@NotNull DesiredStateJournal journal) throws IOException {
+        Preconditions.checkArgument(journal != null, "journal must not be null");
+
+        this.journal = journal;
+        journal.replay().forEach((serialNumber, states) -> desiredStates.put(serialNumber, new HashMap<>(states)));
+    }
+
+    /**
+     * Construct a new {@link DesiredStateReconciler} whose desired states are not
+     * {@link DesiredStateJournal#none() recorded}.
+     */
+    public DesiredStateReconciler() {
+        this.journal = DesiredStateJournal.none();
+    }
+
+    /**
+     * Start managing the given fan, converging it towards its desired states. If the fan is
+     * connected and its status is known, it is reconciled immediately.
+     *
+     * @param fan the fan to manage
+     *
+     * @throws IllegalArgumentException if another fan with the same serial number is already managed
+     * @throws IllegalStateException if this reconciler is closed
+     */
+    public void manage(@NotNull DysonFan fan) {
+        Preconditions.checkArgument(fan != null, "fan must not be null");
+        this.ensureOpen();
+
+        ManagedFan managedFan = new ManagedFan(fan);
+        ManagedFan existing = managedFans.putIfAbsent(fan.getSerialNumber(), managedFan);
+        Preconditions.checkArgument(existing == null || existing.fan == fan, () -> "A fan with serial number " + fan.getSerialNumber() + " is already managed");
+
+        if (existing == null) {
+            fan.getEventPublisher().subscribe(managedFan);
+            managedFan.reconcile();
+        }
+    }
+
+    /**
+     * Stop managing the given fan. Its desired states are retained.
+     *
+     * @param fan the fan to stop managing
+     */
+    public void unmanage(@NotNull DysonFan fan) {
+        Preconditions.checkArgument(fan != null, "fan must not be null");
+
+        ManagedFan managedFan = managedFans.get(fan.getSerialNumber());
+        if (managedFan != null && managedFan.fan == fan && managedFans.remove(fan.getSerialNumber(), managedFan)) {
+            managedFan.cancel();
+        }
+    }
+
+    /**
+     * Set the desired value of a state on the fan with the given serial number. The change is
+     * recorded in this reconciler's journal before being applied, and if the fan is managed, it
+     * is reconciled.
+     *
+     * @param <T> the state's value type
+     * @param serialNumber the serial number of the fan
+     * @param state the state
+     * @param value the desired value
+     *
+     * @return a completable future, completed when any differences have been sent to the fan, or
+     * immediately if there were none or the fan cannot currently be reconciled
+     *
+     * @throws UncheckedIOException if the change could not be recorded in the journal
+     * @throws IllegalStateException if this reconciler is closed
+     */
+    @NotNull
+    public <T extends MqttStateValueProvider> CompletableFuture<Void> setDesiredState(@NotNull String serialNumber, @NotNull FanState<T> state, @NotNull T value) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+        Preconditions.checkArgument(value != null, "value must not be null");
+        return setDesiredStates(serialNumber, Map.of(state, value));
+    }
+
+    /**
+     * Set the desired values of several states on the fan with the given serial number. The
+     * change is recorded in this reconciler's journal before being applied, and if the fan is
+     * managed, it is reconciled.
+     *
+     * @param serialNumber the serial number of the fan
+     * @param states the states and their desired values
+     *
+     * @return a completable future, completed when any differences have been sent to the fan, or
+     * immediately if there were none or the fan cannot currently be reconciled
+     *
+     * @throws UncheckedIOException if the change could not be recorded in the journal
+     * @throws IllegalStateException if this reconciler is closed
+     */
+    @NotNull
+    public CompletableFuture<Void> setDesiredStates(@NotNull String serialNumber, @NotNull Map<@NotNull FanState<?>, @NotNull MqttStateValueProvider> states) {
+        Preconditions.checkArgument(serialNumber != null, "serialNumber must not be null");
+        Preconditions.checkArgument(states != null, "states must not be null");
+        states.forEach((state, value) -> Preconditions.checkArgument(state.getValueType().isInstance(value), () -> "value for " + state.getName() + " must be of type " + state.getValueType().getSimpleName()));
+
+        return updateDesiredStates(serialNumber, states);
+    }
+
+    /**
+     * Clear the desired value of a state on the fan with the given serial number. The state will
+     * no longer be reconciled, and is left at whatever value it currently holds.
+     *
+     * @param serialNumber the serial number of the fan
+     * @param state the state to clear
+     *
+     * @throws UncheckedIOException if the change could not be recorded in the journal
+     * @throws IllegalStateException if this reconciler is closed
+     */
+    public void clearDesiredState(@NotNull String serialNumber, @NotNull FanState<?> state) {
+        Preconditions.checkArgument(serialNumber != null, "serialNumber must not be null");
+        Preconditions.checkArgument(state != null, "state must not be null");
+
+        Map<FanState<?>, MqttStateValueProvider> cleared = new HashMap<>();
+        cleared.put(state, null);
+        this.updateDesiredStates(serialNumber, cleared);
+    }
+
+    private CompletableFuture<Void> updateDesiredStates(String serialNumber, Map<FanState<?>, MqttStateValueProvider> states) {
+        // Journal writes and the changes they record must be applied in the same order
+        synchronized (journal) {
+            // Checked under the lock as closing the reconciler closes the journal under it too
+            this.ensureOpen();
+
+            try {
+                this.journal.append(serialNumber, states);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not record desired states for " + serialNumber, e);
+            }
+
+            this.desiredStates.compute(serialNumber, (ignore, currentStates) -> {
+                Map<FanState<?>, MqttStateValueProvider> newStates = (currentStates != null) ? new HashMap<>(currentStates) : new HashMap<>();
+                states.forEach((state, value) -> {
+                    if (value != null) {
+                        newStates.put(state, value);
+                    } else {
+                        newStates.remove(state);
+                    }
+                });
+
+                return newStates.isEmpty() ? null : newStates;
+            });
+        }
+
+        ManagedFan managedFan = managedFans.get(serialNumber);
+        return (managedFan != null) ? managedFan.reconcile() : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Get an unmodifiable copy of the desired states of the fan with the given serial number.
+     *
+     * @param serialNumber the serial number of the fan
+     *
+     * @return the desired states
+     */
+    @NotNull
+    public Map<@NotNull FanState<?>, @NotNull MqttStateValueProvider> getDesiredStates(@NotNull String serialNumber) {
+        Preconditions.checkArgument(serialNumber != null, "serialNumber must not be null");
+
+        Map<FanState<?>, MqttStateValueProvider> states = desiredStates.get(serialNumber);
+        return (states != null) ? Collections.unmodifiableMap(new HashMap<>(states)) : Collections.emptyMap();
+    }
+
+    /**
+     * Reconcile the given managed fan now, sending any desired states that differ from its
+     * cached status.
+     *
+     * @param fan the fan to reconcile
+     *
+     * @return a completable future, completed when any differences have been sent to the fan, or
+     * immediately if there were none or the fan cannot currently be reconciled
+     *
+     * @throws IllegalArgumentException if the fan is not managed by this reconciler
+     */
+    @NotNull
+    public CompletableFuture<Void> reconcile(@NotNull DysonFan fan) {
+        Preconditions.checkArgument(fan != null, "fan must not be null");
+
+        ManagedFan managedFan = managedFans.get(fan.getSerialNumber());
+        Preconditions.checkArgument(managedFan != null && managedFan.fan == fan, "fan is not managed by this reconciler");
+        return managedFan.reconcile();
+    }
+
+    /**
+     * Check whether or not this reconciler has been closed.
+     *
+     * @return true if closed, false otherwise
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close this reconciler. Every fan is unmanaged and the journal is closed. The fans
+     * themselves are left as they are.
+     *
+     * @throws IOException if the journal could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.managedFans.values().forEach(ManagedFan::cancel);
+        this.managedFans.clear();
+
+        synchronized (journal) {
+            this.journal.close();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Reconciler has been closed");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends MqttStateValueProvider> void setState(MultiStateChange change, FanState<T> state, MqttStateValueProvider value) {
+        change.setState(state, (T) value);
+    }
+
+    /*
+     * States sent to the fan but not yet reflected in its status are tracked so that they're not sent again by every event
+     * received until the fan reports the change. They're forgotten once the fan reports a new value for them (whether that
+     * is the sent value or not), once it reports its full status, or if sending them failed. Events for a single fan are
+     * delivered one at a time, but reconciliation may also be triggered by any thread changing desired states, so all state
+     * here is guarded by the managed fan's monitor.
+     */
+    private final class ManagedFan implements Flow.Subscriber<DysonFanEvent> {
+
+        private final DysonFan fan;
+        private final Map<FanState<?>, MqttStateValueProvider> sentStates = new HashMap<>();
+
+        private Flow.Subscription subscription;
+        private boolean cancelled;
+
+        private ManagedFan(DysonFan fan) {
+            this.fan = fan;
+        }
+
+        private CompletableFuture<Void> reconcile() {
+            Map<FanState<?>, MqttStateValueProvider> differences = new HashMap<>();
+
+            synchronized (this) {
+                Map<FanState<?>, MqttStateValueProvider> states = desiredStates.get(fan.getSerialNumber());
+                DeviceStatus status = fan.getCachedStatus();
+                if (cancelled || states == null || status == null || !fan.isConnected()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                states.forEach((state, value) -> {
+                    if (fan.supportsFeature(state) && !value.equals(status.getState(state)) && !value.equals(sentStates.get(state))) {
+                        differences.put(state, value);
+                    }
+                });
+
+                if (differences.isEmpty()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                this.sentStates.putAll(differences);
+            }
+
+            CompletableFuture<Void> future;
+            try {
+                future = fan.setState(change -> differences.forEach((state, value) -> setState(change, state, value)));
+            } catch (DysonConnectionException e) {
+                // Disconnected in the meantime. We'll be reconciled again once the fan reports its status
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            return future.whenComplete((ignore, e) -> {
+                if (e != null) {
+                    synchronized (this) {
+                        differences.forEach(sentStates::remove);
+                    }
+                }
+            });
+        }
+
+        private void cancel() {
+            Flow.Subscription subscription;
+            synchronized (this) {
+                this.cancelled = true;
+                subscription = this.subscription;
+            }
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            boolean cancelled;
+            synchronized (this) {
+                this.subscription = subscription;
+                cancelled = this.cancelled;
+            }
+
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(DysonFanEvent event) {
+            if (event instanceof FanStatusEvent) {
+                synchronized (this) {
+                    this.sentStates.clear();
+                }
+            } else if (event instanceof FanStateChangeEvent stateChangeEvent) {
+                synchronized (this) {
+                    stateChangeEvent.getStates().forEach(sentStates::remove);
+                }
+            } else if (event instanceof FanConnectionStateEvent connectionStateEvent && connectionStateEvent.getNewState() != FanConnectionState.CONNECTED) {
+                // Anything sent may have been lost with the connection
+                synchronized (this) {
+                    this.sentStates.clear();
+                }
+
+                return;
+            } else {
+                return;
+            }
+
+            this.reconcile();
+        }
+
+        @Override
+        public void onError(Throwable throwable) { }
+
+        @Override
+        public void onComplete() { }
+
+    }
+
+}
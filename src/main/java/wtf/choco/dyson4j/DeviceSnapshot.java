@@ -0,0 +1,29 @@
+package wtf.choco.dyson4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a combined, point-in-time view of a Dyson fan's {@link DeviceStatus status} and
+ * {@link EnvironmentalSensorData environmental sensor data} as queried by
+ * {@link DysonFan#requestSnapshot()}. Both values were sent by the fan in response to the same
+ * request. An instance of this object will not reflect changes requested by future invocations.
+ */
+public interface DeviceSnapshot {
+
+    /**
+     * Get the device's status as of this snapshot.
+     *
+     * @return the device status
+     */
+    @NotNull
+    public DeviceStatus getStatus();
+
+    /**
+     * Get the device's environmental sensor data as of this snapshot.
+     *
+     * @return the sensor data
+     */
+    @NotNull
+    public EnvironmentalSensorData getSensorData();
+
+}
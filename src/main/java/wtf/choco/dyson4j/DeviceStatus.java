@@ -1,15 +1,23 @@
 package wtf.choco.dyson4j;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.dyson4j.setting.FanState;
 import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
 
 /**
  * Represents a Dyson fan's status as queried by {@link DysonFan#requestCurrentState()}.
  * This status is a snapshot of when the state was requested. An instance of this object
  * will not reflect changes requested by future invocations.
+ * <p>
+ * Two statuses are {@link Object#equals(Object) equal} if their codes, filter life and the
+ * values of every {@link FanState} are equal.
  */
 public interface DeviceStatus {
 
@@ -89,4 +97,27 @@ public interface DeviceStatus {
     @Nullable
     public <T extends MqttStateValueProvider> T getState(@NotNull FanState<T> state);
 
+    /**
+     * Get all {@link FanState FanStates} whose values differ between this status and the
+     * given status, including states that have a value in only one of the two.
+     *
+     * @param other the status against which to compare
+     *
+     * @return an unmodifiable set of the changed states. Empty if no states have changed
+     */
+    @NotNull
+    public default Set<@NotNull FanState<?>> getChangedStates(@NotNull DeviceStatus other) {
+        Preconditions.checkArgument(other != null, "other must not be null");
+
+        Set<FanState<?>> changedStates = new HashSet<>();
+        for (FanState<?> state : FanState.values()) {
+            MqttStateValueProvider value = getState(state), otherValue = other.getState(state);
+            if (value != null ? !value.equals(otherValue) : otherValue != null) {
+                changedStates.add(state);
+            }
+        }
+
+        return Collections.unmodifiableSet(changedStates);
+    }
+
 }
@@ -1,12 +1,18 @@
 package wtf.choco.dyson4j;
 
 import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.dyson4j.event.DysonFanEvent;
+import wtf.choco.dyson4j.event.FanConnectionStateEvent;
 import wtf.choco.dyson4j.exception.DysonConnectionException;
 import wtf.choco.dyson4j.setting.FanState;
 import wtf.choco.dyson4j.setting.MqttStateValueProvider;
@@ -63,6 +69,18 @@ public interface DysonFan {
      */
     public boolean isConnected();
 
+    /**
+     * Get the {@link FanConnectionState state} of the connection to this fan. Unlike
+     * {@link #isConnected()}, this distinguishes a fan that is disconnected from one whose
+     * connection was lost and is being re-established as per its {@link ReconnectPolicy}.
+     *
+     * @return the connection state
+     *
+     * @see wtf.choco.dyson4j.event.FanConnectionStateEvent
+     */
+    @NotNull
+    public FanConnectionState getConnectionState();
+
     /**
      * Get this Dyson fan's {@link FanModel model}.
      *
@@ -72,18 +90,30 @@ public interface DysonFan {
     public FanModel getModel();
 
     /**
-     * Get the {@link InetAddress} where this fan is located on the network.
+     * Get the {@link InetAddress} where this fan is located on the network. The address may
+     * change while reconnecting if the fan's {@link FanAddressResolver} resolves a new one.
      *
      * @return the address
      */
     @NotNull
     public InetAddress getAddress();
 
+    /**
+     * Get this fan's serial number. This is the username found on the fan's label, without
+     * its {@code "DYSON-"} prefix.
+     *
+     * @return the serial number
+     *
+     * @see DysonFanCredentials#getUsername()
+     */
+    @NotNull
+    public String getSerialNumber();
+
     /**
      * Check whether or not the provided {@link FanState} is supported by this DysonFan's
      * {@link FanModel model}.
      * <p>
-     * This is a convenience method. Equivalent to {@code getModel().isSupported(state)}.
+     * This is a convenience method. Equivalent to {@code getModel().supportsFeature(state)}.
      *
      * @param state the state to check
      *
@@ -96,8 +126,17 @@ public interface DysonFan {
      * to use {@link #setState(Consumer)} instead so that all state changes may be made in a
      * single request to the fan.
      * <p>
-     * The fan must be {@link #isConnected() connected}. This method will be performed
-     * asynchronously.
+     * If a {@link DysonFanOptions#getStateCoalescingWindow() state coalescing window} has been
+     * configured, the change will be merged with any other changes made within the same window
+     * and sent to the fan as a single request once the window has elapsed.
+     * <p>
+     * State changes are sent to the fan in the order in which this method and
+     * {@link #setState(Consumer)} were called, even when called concurrently.
+     * <p>
+     * The fan must be {@link #isConnected() connected}, unless an
+     * {@link DysonFanOptions#getOfflineBufferDeadline() offline buffer deadline} has been
+     * configured, in which case the change is buffered until the fan connects. This method will
+     * be performed asynchronously.
      *
      * @param <T> the state value type
      * @param state the state to change
@@ -105,8 +144,10 @@ public interface DysonFan {
      *
      * @return a completable future, completed when the state has been sent to the fan
      *
-     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
-     * CompletableFuture if some other communication error occurs
+     * @throws IllegalArgumentException if the state is not {@link #supportsFeature(FanState)
+     * supported} by this fan's model
+     * @throws DysonConnectionException if the Dyson fan is not connected and offline buffering
+     * is disabled, or in the CompletableFuture if some other communication error occurs
      */
     @NotNull
     public <T extends MqttStateValueProvider> CompletableFuture<Void> setState(@NotNull FanState<T> state, @NotNull T value);
@@ -115,22 +156,132 @@ public interface DysonFan {
      * Set multiple states on this fan in a single query. This will update more than one state
      * on the fan in a single query.
      * <p>
+     * The fan must be {@link #isConnected() connected}, unless an
+     * {@link DysonFanOptions#getOfflineBufferDeadline() offline buffer deadline} has been
+     * configured, in which case the changes are buffered until the fan connects. This method
+     * will be performed asynchronously.
+     *
+     * @param change a consumer containing a {@link MultiStateChange} instance, which may be
+     * used to build a sequence of state changes to send to the fan
+     *
+     * @return a completable future, completed when the states have been sent to the fan
+     *
+     * @throws IllegalArgumentException if any of the states are not
+     * {@link #supportsFeature(FanState) supported} by this fan's model
+     * @throws DysonConnectionException if the Dyson fan is not connected and offline buffering
+     * is disabled, or in the CompletableFuture if some other communication error occurs
+     */
+    @NotNull
+    public CompletableFuture<Void> setState(@NotNull Consumer<@NotNull MultiStateChange> change);
+
+    /**
+     * Apply a precompiled {@link StateChange} to this fan. This behaves like
+     * {@link #setState(Consumer)}, but the states supported by this fan's model are determined
+     * and the message to send is encoded only once per model rather than on every call, making
+     * this preferable for state changes applied repeatedly.
+     * <p>
+     * Because a state change may be applied to fans of many different models, states not
+     * {@link #supportsFeature(FanState) supported} by this fan's model are discarded rather
+     * than rejected, and if none remain, nothing is sent.
+     * <p>
+     * The fan must be {@link #isConnected() connected}, unless an
+     * {@link DysonFanOptions#getOfflineBufferDeadline() offline buffer deadline} has been
+     * configured, in which case the changes are buffered until the fan connects. This method
+     * will be performed asynchronously.
+     *
+     * @param change the state change to apply
+     *
+     * @return a completable future, completed when the states have been sent to the fan
+     *
+     * @throws DysonConnectionException if the Dyson fan is not connected and offline buffering
+     * is disabled, or in the CompletableFuture if some other communication error occurs
+     *
+     * @see StateChange#applyTo(Iterable)
+     */
+    @NotNull
+    public CompletableFuture<Void> setState(@NotNull StateChange change);
+
+    /**
+     * Set a state on this fan and await the fan's confirmation that it has been applied. Unlike
+     * {@link #setState(FanState, MqttStateValueProvider)}, which completes as soon as the change
+     * has been sent, the returned future is completed only once the fan reports the change,
+     * sparing the need to {@link #requestCurrentState() request its state} afterwards.
+     * <p>
+     * Confirmed state changes are never coalesced or buffered, though they are still sent in
+     * order with every other state change.
+     * <p>
+     * The fan must be {@link #isConnected() connected}. This method will be performed
+     * asynchronously.
+     *
+     * @param <T> the state value type
+     * @param state the state to change
+     * @param value the value to which the state should be set
+     *
+     * @return a completable future, completed with the fan's status once the fan has confirmed
+     * the change
+     *
+     * @throws IllegalArgumentException if the state is not {@link #supportsFeature(FanState)
+     * supported} by this fan's model
+     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
+     * CompletableFuture if some other communication error occurs
+     * @throws java.util.concurrent.TimeoutException (in the CompletableFuture) if the fan has
+     * not confirmed the change within the {@link DysonFanOptions#getResponseTimeout() response
+     * timeout}
+     */
+    @NotNull
+    public <T extends MqttStateValueProvider> CompletableFuture<DeviceStatus> setStateConfirmed(@NotNull FanState<T> state, @NotNull T value);
+
+    /**
+     * Set multiple states on this fan in a single query and await the fan's confirmation that
+     * they have been applied.
+     * <p>
      * The fan must be {@link #isConnected() connected}. This method will be performed
      * asynchronously.
      *
      * @param change a consumer containing a {@link MultiStateChange} instance, which may be
      * used to build a sequence of state changes to send to the fan
      *
-     * @return a completable future, completed when the states have been sent to the fan
+     * @return a completable future, completed with the fan's status once the fan has confirmed
+     * the changes
      *
+     * @throws IllegalArgumentException if any of the states are not
+     * {@link #supportsFeature(FanState) supported} by this fan's model
      * @throws DysonConnectionException if the Dyson fan is not connected, or in the
      * CompletableFuture if some other communication error occurs
+     * @throws java.util.concurrent.TimeoutException (in the CompletableFuture) if the fan has
+     * not confirmed the changes within the {@link DysonFanOptions#getResponseTimeout() response
+     * timeout}
+     *
+     * @see #setStateConfirmed(FanState, MqttStateValueProvider)
      */
     @NotNull
-    public CompletableFuture<Void> setState(@NotNull Consumer<@NotNull MultiStateChange> change);
+    public CompletableFuture<DeviceStatus> setStateConfirmed(@NotNull Consumer<@NotNull MultiStateChange> change);
 
     /**
-     * Request the device's current {@link DeviceStatus status}.
+     * Request the device's current {@link DeviceStatus status}, failing if the fan has not
+     * responded within the given timeout.
+     * <p>
+     * The fan must be {@link #isConnected() connected}. This method will be performed
+     * asynchronously. Cancelling the returned future will stop waiting for a response.
+     * <p>
+     * If an identical request is already awaiting a response from the fan, another will not
+     * be sent. Instead, the returned future will be completed by the same response.
+     *
+     * @param timeout the maximum amount of time to wait for a response. Must be positive
+     *
+     * @return a completable future, completed when the device status has been received
+     *
+     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
+     * CompletableFuture if some other communication error occurs
+     * @throws java.util.concurrent.TimeoutException (in the CompletableFuture) if the fan
+     * has not responded within the given timeout
+     */
+    @NotNull
+    public CompletableFuture<DeviceStatus> requestCurrentState(@NotNull Duration timeout);
+
+    /**
+     * Request the device's current {@link DeviceStatus status}, failing if the fan has not
+     * responded within the {@link DysonFanOptions#getResponseTimeout() response timeout}.
      * <p>
      * The fan must be {@link #isConnected() connected}. This method will be performed
      * asynchronously.
@@ -139,12 +290,38 @@ public interface DysonFan {
      *
      * @throws DysonConnectionException if the Dyson fan is not connected, or in the
      * CompletableFuture if some other communication error occurs
+     *
+     * @see #requestCurrentState(Duration)
      */
     @NotNull
     public CompletableFuture<DeviceStatus> requestCurrentState();
 
     /**
-     * Request the device's current {@link EnvironmentalSensorData sensor data}.
+     * Request the device's current {@link EnvironmentalSensorData sensor data}, failing if
+     * the fan has not responded within the given timeout.
+     * <p>
+     * The fan must be {@link #isConnected() connected}. This method will be performed
+     * asynchronously. Cancelling the returned future will stop waiting for a response.
+     * <p>
+     * If an identical request is already awaiting a response from the fan, another will not
+     * be sent. Instead, the returned future will be completed by the same response.
+     *
+     * @param timeout the maximum amount of time to wait for a response. Must be positive
+     *
+     * @return a completable future, completed when the device sensor data has been received
+     *
+     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
+     * CompletableFuture if some other communication error occurs
+     * @throws java.util.concurrent.TimeoutException (in the CompletableFuture) if the fan
+     * has not responded within the given timeout
+     */
+    @NotNull
+    public CompletableFuture<EnvironmentalSensorData> requestEnvironmentalSensorData(@NotNull Duration timeout);
+
+    /**
+     * Request the device's current {@link EnvironmentalSensorData sensor data}, failing if
+     * the fan has not responded within the {@link DysonFanOptions#getResponseTimeout() response
+     * timeout}.
      * <p>
      * The fan must be {@link #isConnected() connected}. This method will be performed
      * asynchronously.
@@ -153,10 +330,115 @@ public interface DysonFan {
      *
      * @throws DysonConnectionException if the Dyson fan is not connected, or in the
      * CompletableFuture if some other communication error occurs
+     *
+     * @see #requestEnvironmentalSensorData(Duration)
      */
     @NotNull
     public CompletableFuture<EnvironmentalSensorData> requestEnvironmentalSensorData();
 
+    /**
+     * Request a {@link DeviceSnapshot} containing both the device's current {@link DeviceStatus
+     * status} and its current {@link EnvironmentalSensorData sensor data}, failing if the fan has
+     * not responded with both within the given timeout.
+     * <p>
+     * Unlike calling both {@link #requestCurrentState(Duration)} and
+     * {@link #requestEnvironmentalSensorData(Duration)}, only a single request will be sent to the
+     * fan to which it will respond with both its status and its sensor data. This request is
+     * never coalesced with an identical request already awaiting a response.
+     * <p>
+     * The fan must be {@link #isConnected() connected}. This method will be performed
+     * asynchronously. Cancelling the returned future will stop waiting for a response.
+     *
+     * @param timeout the maximum amount of time to wait for a response. Must be positive
+     *
+     * @return a completable future, completed when both the device status and sensor data have
+     * been received
+     *
+     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
+     * CompletableFuture if some other communication error occurs
+     * @throws java.util.concurrent.TimeoutException (in the CompletableFuture) if the fan
+     * has not responded within the given timeout
+     */
+    @NotNull
+    public CompletableFuture<DeviceSnapshot> requestSnapshot(@NotNull Duration timeout);
+
+    /**
+     * Request a {@link DeviceSnapshot} containing both the device's current {@link DeviceStatus
+     * status} and its current {@link EnvironmentalSensorData sensor data}, failing if the fan has
+     * not responded within the {@link DysonFanOptions#getResponseTimeout() response timeout}.
+     * <p>
+     * The fan must be {@link #isConnected() connected}. This method will be performed
+     * asynchronously.
+     *
+     * @return a completable future, completed when both the device status and sensor data have
+     * been received
+     *
+     * @throws DysonConnectionException if the Dyson fan is not connected, or in the
+     * CompletableFuture if some other communication error occurs
+     *
+     * @see #requestSnapshot(Duration)
+     */
+    @NotNull
+    public CompletableFuture<DeviceSnapshot> requestSnapshot();
+
+    /**
+     * Get the most recently known {@link DeviceStatus} of this fan without communicating with
+     * the fan.
+     * <p>
+     * Upon connecting, the fan's status is requested once and is kept up to date from then on
+     * by every status and state change sent by the fan, regardless of whether or not it was
+     * requested. The returned status may therefore be stale if the fan has since disconnected.
+     * See {@link #getCachedStatusTimestamp()} to determine when it was last updated.
+     *
+     * @return the cached status, or null if the fan's status has not yet been received
+     */
+    @Nullable
+    public DeviceStatus getCachedStatus();
+
+    /**
+     * Get the most recently known value of the given {@link FanState} without communicating
+     * with the fan.
+     * <p>
+     * This is a convenience method. Equivalent to {@code getCachedStatus().getState(state)}
+     * if the cached status is present.
+     *
+     * @param <T> the state value type
+     * @param state the state to get
+     *
+     * @return the cached state value, or null if the fan's status has not yet been received
+     * or did not include the given state
+     *
+     * @see #getCachedStatus()
+     */
+    @Nullable
+    public <T extends MqttStateValueProvider> T getCachedState(@NotNull FanState<T> state);
+
+    /**
+     * Get the time at which the {@link #getCachedStatus() cached status} was last updated.
+     *
+     * @return the time of the last update, or null if the fan's status has not yet been received
+     */
+    @Nullable
+    public Instant getCachedStatusTimestamp();
+
+    /**
+     * Get the {@link Flow.Publisher} to which subscribers may subscribe to be notified of every
+     * {@link DysonFanEvent} published by this fan. This includes state changes, status updates
+     * and sensor data sent by the fan, whether they were requested or not, allowing for the fan
+     * to be monitored without polling it.
+     * <p>
+     * Each subscriber has its own bounded buffer of events. If a subscriber does not consume its
+     * events fast enough, the {@link DysonFanOptions#getEventOverflowPolicy() overflow policy} is
+     * applied. Events sent by the fan can only be published while it is {@link #isConnected()
+     * connected}, whereas a {@link FanConnectionStateEvent} is published
+     * upon every change in connection state. Subscribers will be completed once the fan's
+     * connection has been destroyed.
+     *
+     * @return the event publisher
+     */
+    @NotNull
+    public Flow.Publisher<@NotNull DysonFanEvent> getEventPublisher();
+
     /**
      * Check whether or not this fan has any messages pending.
      * <p>
@@ -180,7 +462,8 @@ public interface DysonFan {
     public int getPendingMessages();
 
     /**
-     * Disconnect from the Dyson fan.
+     * Disconnect from the Dyson fan. Any requests still awaiting a response from the fan
+     * will be completed exceptionally with a {@link DysonConnectionException}.
      * <p>
      * The fan must be {@link #isConnected() connected}. This method will be performed
      * asynchronously.
@@ -0,0 +1,883 @@
+package wtf.choco.dyson4j;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.event.EventOverflowPolicy;
+import wtf.choco.dyson4j.mqtt.transport.MqttTransport;
+import wtf.choco.dyson4j.mqtt.transport.NioMqttTransport;
+import wtf.choco.dyson4j.mqtt.transport.PahoMqttTransport;
+import wtf.choco.dyson4j.util.DaemonThreadFactory;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * A set of options used to configure the behaviour of a {@link DysonFan} and its underlying
+ * connection. Instances of this class are immutable and may be shared between any amount
+ * of fans. The only state created after construction is the default {@link #getTransport()
+ * transport}, which is created lazily the first time it is needed and then never changes.
+ *
+ * @see #builder()
+ * @see #defaults()
+ */
+public final class DysonFanOptions {
+
+    /**
+     * The default amount of time to wait for the fan to respond to a message.
+     */
+    public static final Duration DEFAULT_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The default maximum amount of messages in flight to a fan at any given time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_MESSAGES = 10;
+
+    /**
+     * The default maximum amount of messages queued for a fan under {@link BackpressurePolicy#QUEUE}.
+     */
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1000;
+
+    /**
+     * The default interval at which the fan's MQTT server is pinged to keep the connection alive.
+     */
+    public static final Duration DEFAULT_KEEP_ALIVE_INTERVAL = Duration.ofSeconds(60);
+
+    /**
+     * The default maximum amount of time by which each fan's keepalive interval is shortened
+     * so that fans connected at the same time don't ping in lockstep.
+     */
+    public static final Duration DEFAULT_KEEP_ALIVE_JITTER = Duration.ofSeconds(10);
+
+    private static final DysonFanOptions DEFAULTS = builder().build();
+
+    private final Duration responseTimeout;
+    private final Duration stateCoalescingWindow;
+    private final Duration offlineBufferDeadline;
+    private final boolean suppressRedundantStateChanges;
+
+    private final Executor eventExecutor;
+    private final int eventBufferCapacity;
+    private final EventOverflowPolicy eventOverflowPolicy;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor connectionExecutor;
+    private final Duration keepAliveInterval, keepAliveJitter;
+    private final MqttTransport transport;
+    private volatile MqttTransport defaultTransport;
+
+    private final ReconnectPolicy reconnectPolicy;
+    private final FanAddressResolver addressResolver;
+    private final ConnectionAdmissionController admissionController;
+    private final boolean eagerConnectionHandler;
+    private final Executor completionExecutor;
+
+    private final int maxInFlightMessages, maxQueuedMessages;
+    private final BackpressurePolicy backpressurePolicy;
+
+    private DysonFanOptions(Builder builder) {
+        this.responseTimeout = builder.responseTimeout;
+        this.stateCoalescingWindow = builder.stateCoalescingWindow;
+        this.offlineBufferDeadline = builder.offlineBufferDeadline;
+        this.suppressRedundantStateChanges = builder.suppressRedundantStateChanges;
+        this.eventExecutor = builder.eventExecutor;
+        this.eventBufferCapacity = builder.eventBufferCapacity;
+        this.eventOverflowPolicy = builder.eventOverflowPolicy;
+        this.scheduler = builder.scheduler;
+        this.connectionExecutor = builder.connectionExecutor;
+        this.keepAliveInterval = builder.keepAliveInterval;
+        this.keepAliveJitter = builder.keepAliveJitter;
+        this.transport = builder.transport;
+        this.reconnectPolicy = builder.reconnectPolicy;
+        this.addressResolver = builder.addressResolver;
+        this.admissionController = builder.admissionController;
+        this.eagerConnectionHandler = builder.eagerConnectionHandler;
+        this.completionExecutor = builder.completionExecutor;
+        this.maxInFlightMessages = builder.maxInFlightMessages;
+        this.maxQueuedMessages = builder.maxQueuedMessages;
+        this.backpressurePolicy = builder.backpressurePolicy;
+    }
+
+    /**
+     * Get the amount of time to wait for the fan to respond to a message before the
+     * request will fail with a {@link java.util.concurrent.TimeoutException}.
+     *
+     * @return the response timeout
+     */
+    @NotNull
+    public Duration getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * Get the window of time during which state changes made on a fan are buffered and
+     * merged into a single message. If {@link Duration#ZERO zero}, state changes are sent
+     * immediately.
+     *
+     * @return the state coalescing window
+     */
+    @NotNull
+    public Duration getStateCoalescingWindow() {
+        return stateCoalescingWindow;
+    }
+
+    /**
+     * Get the maximum amount of time for which state changes made while a fan is not connected
+     * are buffered to be sent once it connects. If {@link Duration#ZERO zero}, state changes made
+     * while a fan is not connected fail immediately.
+     *
+     * @return the offline buffer deadline
+     */
+    @NotNull
+    public Duration getOfflineBufferDeadline() {
+        return offlineBufferDeadline;
+    }
+
+    /**
+     * Check whether or not state changes that would not change a fan's state are suppressed
+     * rather than sent to the fan.
+     *
+     * @return true if redundant state changes are suppressed, false if they are sent
+     */
+    public boolean isSuppressRedundantStateChanges() {
+        return suppressRedundantStateChanges;
+    }
+
+    /**
+     * Get the {@link Executor} on which events are delivered to a fan's subscribers.
+     *
+     * @return the event executor
+     */
+    @NotNull
+    public Executor getEventExecutor() {
+        return eventExecutor;
+    }
+
+    /**
+     * Get the maximum amount of events buffered for each of a fan's subscribers.
+     *
+     * @return the event buffer capacity
+     */
+    public int getEventBufferCapacity() {
+        return eventBufferCapacity;
+    }
+
+    /**
+     * Get the {@link EventOverflowPolicy} applied when a subscriber's event buffer is full.
+     *
+     * @return the event overflow policy
+     */
+    @NotNull
+    public EventOverflowPolicy getEventOverflowPolicy() {
+        return eventOverflowPolicy;
+    }
+
+    /**
+     * Get the {@link ScheduledExecutorService} on which a fan's delayed tasks are run, such
+     * as the flushing of coalesced state changes. If none was set, a scheduler shared by all
+     * fans in the JVM is returned.
+     *
+     * @return the scheduler
+     */
+    @NotNull
+    public ScheduledExecutorService getScheduler() {
+        return (scheduler != null) ? scheduler : DefaultScheduler.INSTANCE;
+    }
+
+    /**
+     * Get the {@link Executor} on which a fan's connection handler is created and the network
+     * I/O of its MQTT connection is run. If none was set, an executor shared by all fans in the
+     * JVM is returned.
+     *
+     * @return the connection executor
+     */
+    @NotNull
+    public Executor getConnectionExecutor() {
+        return (connectionExecutor != null) ? connectionExecutor : DefaultConnectionExecutor.INSTANCE;
+    }
+
+    /**
+     * Get the interval at which the fan's MQTT server is pinged to keep the connection alive
+     * while no other messages are being exchanged. {@link Duration#ZERO} if keepalive pings are
+     * disabled.
+     *
+     * @return the keepalive interval
+     */
+    @NotNull
+    public Duration getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
+
+    /**
+     * Get the maximum amount of time by which each fan's {@link #getKeepAliveInterval()
+     * keepalive interval} is randomly shortened in order to stagger pings across fans.
+     *
+     * @return the keepalive jitter
+     */
+    @NotNull
+    public Duration getKeepAliveJitter() {
+        return keepAliveJitter;
+    }
+
+    /**
+     * Get the {@link MqttTransport} over which a fan's MQTT connection is established. If none
+     * was set, a {@link PahoMqttTransport} running on the {@link #getScheduler() scheduler} and
+     * {@link #getConnectionExecutor() connection executor} is created once and returned on every
+     * call, such that it is shared by every fan configured with these options.
+     *
+     * @return the transport
+     */
+    @NotNull
+    public MqttTransport getTransport() {
+        if (transport != null) {
+            return transport;
+        }
+
+        // Created once so that every fan configured with these options shares the same transport
+        MqttTransport result = defaultTransport;
+        if (result == null) {
+            synchronized (this) {
+                result = defaultTransport;
+                if (result == null) {
+                    result = new PahoMqttTransport(getScheduler(), getConnectionExecutor());
+                    this.defaultTransport = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    // The transport as configured, without creating the default transport if none was
+    @Nullable
+    MqttTransport getConfiguredTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the {@link ReconnectPolicy} applied when the connection to a fan is lost.
+     *
+     * @return the reconnect policy
+     */
+    @NotNull
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Get the {@link FanAddressResolver} consulted before every attempt to reconnect to a fan.
+     *
+     * @return the address resolver
+     */
+    @NotNull
+    public FanAddressResolver getAddressResolver() {
+        return addressResolver;
+    }
+
+    /**
+     * Get the {@link ConnectionAdmissionController} through which every connection attempt
+     * to a fan is made, including reconnect attempts.
+     *
+     * @return the admission controller
+     */
+    @NotNull
+    public ConnectionAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Check whether or not a fan's connection handler is created as soon as the fan is
+     * constructed rather than on its first connection.
+     *
+     * @return true if eager, false if lazy
+     */
+    public boolean isEagerConnectionHandler() {
+        return eagerConnectionHandler;
+    }
+
+    /**
+     * Get the {@link Executor} on which messages received from a fan are decoded and handled,
+     * and on which the futures returned by a fan are completed. Each fan runs its tasks on this
+     * executor one at a time and in order, whereas different fans may run in parallel.
+     *
+     * @return the completion executor
+     */
+    @NotNull
+    public Executor getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Get the maximum amount of messages in flight to a fan at any given time.
+     *
+     * @return the maximum in flight messages
+     */
+    public int getMaxInFlightMessages() {
+        return maxInFlightMessages;
+    }
+
+    /**
+     * Get the maximum amount of messages queued for a fan while the maximum amount of messages
+     * are in flight. Applies to {@link BackpressurePolicy#QUEUE}, and to the messages sent
+     * without a calling thread to block under {@link BackpressurePolicy#BLOCK}.
+     *
+     * @return the maximum queued messages
+     */
+    public int getMaxQueuedMessages() {
+        return maxQueuedMessages;
+    }
+
+    /**
+     * Get the {@link BackpressurePolicy} applied to messages sent while the maximum amount of
+     * messages are in flight.
+     *
+     * @return the backpressure policy
+     */
+    @NotNull
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * Get a new {@link Builder} initialized with the values of these options.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.responseTimeout = responseTimeout;
+        builder.stateCoalescingWindow = stateCoalescingWindow;
+        builder.offlineBufferDeadline = offlineBufferDeadline;
+        builder.suppressRedundantStateChanges = suppressRedundantStateChanges;
+        builder.eventExecutor = eventExecutor;
+        builder.eventBufferCapacity = eventBufferCapacity;
+        builder.eventOverflowPolicy = eventOverflowPolicy;
+        builder.scheduler = scheduler;
+        builder.connectionExecutor = connectionExecutor;
+        builder.keepAliveInterval = keepAliveInterval;
+        builder.keepAliveJitter = keepAliveJitter;
+        builder.transport = transport;
+        builder.reconnectPolicy = reconnectPolicy;
+        builder.addressResolver = addressResolver;
+        builder.admissionController = admissionController;
+        builder.eagerConnectionHandler = eagerConnectionHandler;
+        builder.completionExecutor = completionExecutor;
+        builder.maxInFlightMessages = maxInFlightMessages;
+        builder.maxQueuedMessages = maxQueuedMessages;
+        builder.backpressurePolicy = backpressurePolicy;
+        return builder;
+    }
+
+    /**
+     * Get the default {@link DysonFanOptions}.
+     *
+     * @return the default options
+     */
+    @NotNull
+    public static DysonFanOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Get a new {@link Builder} initialized with default values.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link DysonFanOptions}.
+     */
+    public static final class Builder {
+
+        private Duration responseTimeout = DEFAULT_RESPONSE_TIMEOUT;
+        private Duration stateCoalescingWindow = Duration.ZERO;
+        private Duration offlineBufferDeadline = Duration.ZERO;
+        private boolean suppressRedundantStateChanges = false;
+
+        private Executor eventExecutor = ForkJoinPool.commonPool();
+        private int eventBufferCapacity = Flow.defaultBufferSize();
+        private EventOverflowPolicy eventOverflowPolicy = EventOverflowPolicy.DROP;
+
+        private ScheduledExecutorService scheduler;
+        private Executor connectionExecutor;
+        private Duration keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL, keepAliveJitter = DEFAULT_KEEP_ALIVE_JITTER;
+        private MqttTransport transport;
+
+        private ReconnectPolicy reconnectPolicy = ReconnectPolicy.defaults();
+        private FanAddressResolver addressResolver = FanAddressResolver.fixed();
+        private ConnectionAdmissionController admissionController = ConnectionAdmissionController.unlimited();
+        private boolean eagerConnectionHandler = false;
+        private Executor completionExecutor = ForkJoinPool.commonPool();
+
+        private int maxInFlightMessages = DEFAULT_MAX_IN_FLIGHT_MESSAGES, maxQueuedMessages = DEFAULT_MAX_QUEUED_MESSAGES;
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.QUEUE;
+
+        private Builder() { }
+
+        /**
+         * Set the amount of time to wait for the fan to respond to a message before the
+         * request will fail with a {@link java.util.concurrent.TimeoutException}.
+         *
+         * @param responseTimeout the response timeout. Must be positive
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFanOptions#DEFAULT_RESPONSE_TIMEOUT
+         */
+        @NotNull
+        public Builder responseTimeout(@NotNull Duration responseTimeout) {
+            Preconditions.checkArgument(responseTimeout != null, "responseTimeout must not be null");
+            Preconditions.checkArgument(!responseTimeout.isNegative() && !responseTimeout.isZero(), "responseTimeout must be positive");
+
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        /**
+         * Set the window of time during which state changes made on a fan are buffered and
+         * merged into a single message. The first state change made on a fan opens the window,
+         * and any further state changes made before it elapses are merged into the same message,
+         * the last value set for each state taking precedence. Every state change made in the
+         * window completes once the merged message has been sent.
+         * <p>
+         * Coalescing is disabled by default ({@link Duration#ZERO}), in which case every state
+         * change is sent immediately as its own message.
+         *
+         * @param stateCoalescingWindow the state coalescing window. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder stateCoalescingWindow(@NotNull Duration stateCoalescingWindow) {
+            Preconditions.checkArgument(stateCoalescingWindow != null, "stateCoalescingWindow must not be null");
+            Preconditions.checkArgument(!stateCoalescingWindow.isNegative(), "stateCoalescingWindow must not be negative");
+
+            this.stateCoalescingWindow = stateCoalescingWindow;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of time for which state changes made while a fan is not connected
+         * (including while it is {@link FanConnectionState#RECONNECTING reconnecting}) are buffered.
+         * Only the last value set for each state is kept, and once the fan connects, every buffered
+         * state is sent as a single merged message. A state change that is not sent before the
+         * deadline elapses is dropped and completes exceptionally with a
+         * {@link java.util.concurrent.TimeoutException}. Buffered state changes are also discarded
+         * if the fan is explicitly {@link DysonFan#disconnect() disconnected}.
+         * <p>
+         * Buffering is disabled by default ({@link Duration#ZERO}), in which case setting a state
+         * while a fan is not connected throws a {@link wtf.choco.dyson4j.exception.DysonConnectionException}.
+         *
+         * @param offlineBufferDeadline the offline buffer deadline. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder offlineBufferDeadline(@NotNull Duration offlineBufferDeadline) {
+            Preconditions.checkArgument(offlineBufferDeadline != null, "offlineBufferDeadline must not be null");
+            Preconditions.checkArgument(!offlineBufferDeadline.isNegative(), "offlineBufferDeadline must not be negative");
+
+            this.offlineBufferDeadline = offlineBufferDeadline;
+            return this;
+        }
+
+        /**
+         * Set whether or not state changes that would not change a fan's state are suppressed
+         * rather than sent to the fan. When enabled, each requested value is compared against the
+         * value the fan is known to have, being either the last value sent to the fan that it has
+         * not yet confirmed, or otherwise the value in its {@link DysonFan#getCachedStatus() cached
+         * status}. Only values that differ are sent, and if none differ, nothing is sent and the
+         * returned future is completed immediately.
+         * <p>
+         * This applies to single state changes as well as to every state in a
+         * {@link MultiStateChange}. Disabled by default, in which case every requested value is
+         * sent.
+         *
+         * @param suppressRedundantStateChanges true to suppress redundant state changes, false to
+         * send them
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder suppressRedundantStateChanges(boolean suppressRedundantStateChanges) {
+            this.suppressRedundantStateChanges = suppressRedundantStateChanges;
+            return this;
+        }
+
+        /**
+         * Set the {@link Executor} on which events are delivered to a fan's subscribers.
+         * By default, the {@link ForkJoinPool#commonPool() common pool} is used.
+         *
+         * @param eventExecutor the event executor
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder eventExecutor(@NotNull Executor eventExecutor) {
+            Preconditions.checkArgument(eventExecutor != null, "eventExecutor must not be null");
+
+            this.eventExecutor = eventExecutor;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of events buffered for each of a fan's subscribers. Once a
+         * subscriber's buffer is full, the {@link #eventOverflowPolicy(EventOverflowPolicy)
+         * overflow policy} is applied. By default, {@link Flow#defaultBufferSize()} is used.
+         *
+         * @param eventBufferCapacity the event buffer capacity. Must be positive
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder eventBufferCapacity(int eventBufferCapacity) {
+            Preconditions.checkArgument(eventBufferCapacity > 0, "eventBufferCapacity must be positive");
+
+            this.eventBufferCapacity = eventBufferCapacity;
+            return this;
+        }
+
+        /**
+         * Set the {@link EventOverflowPolicy} applied when a subscriber's event buffer is full.
+         * By default, {@link EventOverflowPolicy#DROP} is used.
+         *
+         * @param eventOverflowPolicy the event overflow policy
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder eventOverflowPolicy(@NotNull EventOverflowPolicy eventOverflowPolicy) {
+            Preconditions.checkArgument(eventOverflowPolicy != null, "eventOverflowPolicy must not be null");
+
+            this.eventOverflowPolicy = eventOverflowPolicy;
+            return this;
+        }
+
+        /**
+         * Set the {@link ScheduledExecutorService} on which a fan's delayed tasks are run, such as
+         * the flushing of coalesced state changes and keepalive pings. The scheduler is not shut
+         * down by the fan and its lifecycle is left to the caller. Tasks run on the scheduler are
+         * short and non-blocking, so a single thread may serve many fans. By default, a single
+         * daemon thread shared by all fans in the JVM is used.
+         *
+         * @param scheduler the scheduler
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet
+         */
+        @NotNull
+        public Builder scheduler(@NotNull ScheduledExecutorService scheduler) {
+            Preconditions.checkArgument(scheduler != null, "scheduler must not be null");
+
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Set the {@link Executor} on which a fan's connection handler is created, and on which the
+         * network I/O of its MQTT connection is run when using the default {@link PahoMqttTransport}.
+         * The MQTT client runs blocking loops to receive, send and dispatch messages, each of
+         * which occupies one of the executor's threads for as long as the fan is connected. The
+         * executor must therefore be able to run at least three tasks concurrently per connected
+         * fan, such as an executor returned by {@link Executors#newCachedThreadPool()}, and its
+         * lifecycle is left to the caller. By default, a cached daemon thread pool shared by all
+         * fans in the JVM is used, allowing threads to be reused across connections.
+         *
+         * @param connectionExecutor the connection executor
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet
+         */
+        @NotNull
+        public Builder connectionExecutor(@NotNull Executor connectionExecutor) {
+            Preconditions.checkArgument(connectionExecutor != null, "connectionExecutor must not be null");
+
+            this.connectionExecutor = connectionExecutor;
+            return this;
+        }
+
+        /**
+         * Set the interval at which the fan's MQTT server is pinged to keep the connection alive
+         * while no other messages are being exchanged. The interval has a precision of seconds.
+         *
+         * @param keepAliveInterval the keepalive interval. Must be at least one second, or
+         * {@link Duration#ZERO} to disable keepalive pings altogether
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFanOptions#DEFAULT_KEEP_ALIVE_INTERVAL
+         */
+        @NotNull
+        public Builder keepAliveInterval(@NotNull Duration keepAliveInterval) {
+            Preconditions.checkArgument(keepAliveInterval != null, "keepAliveInterval must not be null");
+            Preconditions.checkArgument(keepAliveInterval.isZero() || keepAliveInterval.getSeconds() >= 1, "keepAliveInterval must be zero or at least one second");
+
+            this.keepAliveInterval = keepAliveInterval;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of time by which each fan's keepalive interval is randomly
+         * shortened. Without jitter, fans connected at the same time would all ping their servers
+         * at the same time, every time. The jitter is capped such that the keepalive interval is
+         * never less than one second.
+         *
+         * @param keepAliveJitter the keepalive jitter. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFanOptions#DEFAULT_KEEP_ALIVE_JITTER
+         */
+        @NotNull
+        public Builder keepAliveJitter(@NotNull Duration keepAliveJitter) {
+            Preconditions.checkArgument(keepAliveJitter != null, "keepAliveJitter must not be null");
+            Preconditions.checkArgument(!keepAliveJitter.isNegative(), "keepAliveJitter must not be negative");
+
+            this.keepAliveJitter = keepAliveJitter;
+            return this;
+        }
+
+        /**
+         * Set the {@link MqttTransport} over which a fan's MQTT connection is established. The
+         * transport is not closed by the fan and its lifecycle is left to the caller. By default,
+         * a {@link PahoMqttTransport} is used, which performs blocking I/O on the
+         * {@link #connectionExecutor(Executor) connection executor}. A {@link NioMqttTransport}
+         * may instead be used to serve many fans from a few threads.
+         *
+         * @param transport the transport
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet
+         */
+        @NotNull
+        public Builder transport(@NotNull MqttTransport transport) {
+            Preconditions.checkArgument(transport != null, "transport must not be null");
+
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Set the {@link ReconnectPolicy} applied when an established connection to a fan is lost.
+         * While reconnecting, the fan resubscribes to its status and requests its current state
+         * once connected again. By default, {@link ReconnectPolicy#defaults()} is used, which
+         * reconnects indefinitely.
+         *
+         * @param reconnectPolicy the reconnect policy
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#disabled()
+         */
+        @NotNull
+        public Builder reconnectPolicy(@NotNull ReconnectPolicy reconnectPolicy) {
+            Preconditions.checkArgument(reconnectPolicy != null, "reconnectPolicy must not be null");
+
+            this.reconnectPolicy = reconnectPolicy;
+            return this;
+        }
+
+        /**
+         * Set the {@link FanAddressResolver} consulted before every attempt to reconnect to a
+         * fan. If it resolves an address other than the fan's current address, the fan's address
+         * is updated and the reconnect attempt is made to the new address. By default,
+         * {@link FanAddressResolver#fixed()} is used, which never changes the fan's address.
+         *
+         * @param addressResolver the address resolver
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder addressResolver(@NotNull FanAddressResolver addressResolver) {
+            Preconditions.checkArgument(addressResolver != null, "addressResolver must not be null");
+
+            this.addressResolver = addressResolver;
+            return this;
+        }
+
+        /**
+         * Set the {@link ConnectionAdmissionController} through which every connection attempt
+         * to a fan is made, including reconnect attempts. Sharing a controller between fans
+         * limits how many of them connect at the same time. By default,
+         * {@link ConnectionAdmissionController#unlimited()} is used.
+         *
+         * @param admissionController the admission controller
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet
+         */
+        @NotNull
+        public Builder admissionController(@NotNull ConnectionAdmissionController admissionController) {
+            Preconditions.checkArgument(admissionController != null, "admissionController must not be null");
+
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        /**
+         * Set whether or not a fan's connection handler (and with it, its MQTT client) is created
+         * as soon as the fan is constructed. By default, the handler is created lazily on the
+         * {@link #connectionExecutor(Executor) connection executor} when the fan first connects.
+         * Creating it eagerly moves that cost to the fan's constructor, on the calling thread,
+         * which is useful when fans are created ahead of time at startup.
+         *
+         * @param eagerConnectionHandler true to create the handler eagerly, false to create it lazily
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder eagerConnectionHandler(boolean eagerConnectionHandler) {
+            this.eagerConnectionHandler = eagerConnectionHandler;
+            return this;
+        }
+
+        /**
+         * Set the {@link Executor} on which messages received from a fan are decoded and handled,
+         * and on which the futures returned by a fan are completed (and therefore on which any
+         * non-async stage chained onto them is run). This keeps slow callbacks from delaying the
+         * receipt of messages. Tasks of a single fan are run one at a time and in order, so the
+         * executor may be shared by any amount of fans without them being reordered, while
+         * different fans are processed in parallel. By default, the
+         * {@link ForkJoinPool#commonPool() common pool} is used.
+         *
+         * @param completionExecutor the completion executor
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see #virtualThreadCompletionExecutor()
+         */
+        @NotNull
+        public Builder completionExecutor(@NotNull Executor completionExecutor) {
+            Preconditions.checkArgument(completionExecutor != null, "completionExecutor must not be null");
+
+            this.completionExecutor = completionExecutor;
+            return this;
+        }
+
+        /**
+         * Set the {@link #completionExecutor(Executor) completion executor} to an executor shared
+         * by all fans in the JVM that starts a new virtual thread for every task, allowing callbacks
+         * to block without occupying a platform thread. If virtual threads are not supported by the
+         * running JVM, a cached pool of daemon platform threads is used instead.
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder virtualThreadCompletionExecutor() {
+            this.completionExecutor = VirtualThreadExecutor.INSTANCE;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of messages in flight to a fan at any given time. A message is in
+         * flight from the moment it is published until the fan has responded to it, or until it has
+         * been handed off to the network if it expects no response. Messages sent beyond this limit
+         * are handled as per the {@link #backpressurePolicy(BackpressurePolicy) backpressure policy}.
+         *
+         * @param maxInFlightMessages the maximum in flight messages. Must be positive
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFanOptions#DEFAULT_MAX_IN_FLIGHT_MESSAGES
+         */
+        @NotNull
+        public Builder maxInFlightMessages(int maxInFlightMessages) {
+            Preconditions.checkArgument(maxInFlightMessages > 0, "maxInFlightMessages must be positive");
+
+            this.maxInFlightMessages = maxInFlightMessages;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of messages queued for a fan while the maximum amount of messages
+         * are in flight. Applies to {@link BackpressurePolicy#QUEUE}, and to the messages sent
+         * without a calling thread to block under {@link BackpressurePolicy#BLOCK}.
+         *
+         * @param maxQueuedMessages the maximum queued messages. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFanOptions#DEFAULT_MAX_QUEUED_MESSAGES
+         */
+        @NotNull
+        public Builder maxQueuedMessages(int maxQueuedMessages) {
+            Preconditions.checkArgument(maxQueuedMessages >= 0, "maxQueuedMessages must not be negative");
+
+            this.maxQueuedMessages = maxQueuedMessages;
+            return this;
+        }
+
+        /**
+         * Set the {@link BackpressurePolicy} applied to messages sent while the maximum amount of
+         * messages are in flight. By default, {@link BackpressurePolicy#QUEUE} is used.
+         *
+         * @param backpressurePolicy the backpressure policy
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder backpressurePolicy(@NotNull BackpressurePolicy backpressurePolicy) {
+            Preconditions.checkArgument(backpressurePolicy != null, "backpressurePolicy must not be null");
+
+            this.backpressurePolicy = backpressurePolicy;
+            return this;
+        }
+
+        /**
+         * Build the {@link DysonFanOptions}.
+         *
+         * @return the options
+         */
+        @NotNull
+        public DysonFanOptions build() {
+            return new DysonFanOptions(this);
+        }
+
+    }
+
+    // Lazily created so that no thread is started unless a fan actually needs one
+    private static final class DefaultScheduler {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Dyson4J Scheduler"));
+
+    }
+
+    /*
+     * Virtual threads are only available from Java 21 onwards, whereas Dyson4J targets Java 17, so the factory method is
+     * looked up reflectively. It may also exist but throw if virtual threads are a disabled preview feature.
+     */
+    private static final class VirtualThreadExecutor {
+
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Executors.newCachedThreadPool(new DaemonThreadFactory("Dyson4J Completion"));
+            }
+        }
+
+    }
+
+    private static final class DefaultConnectionExecutor {
+
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(new DaemonThreadFactory("Dyson4J Connection"));
+
+    }
+
+}
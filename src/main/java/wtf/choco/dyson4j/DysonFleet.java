@@ -0,0 +1,563 @@
+package wtf.choco.dyson4j;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.mqtt.transport.NioMqttTransport;
+import wtf.choco.dyson4j.util.DaemonThreadFactory;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * A registry of {@link DysonFan DysonFans} sharing a common set of resources. Fans registered
+ * to a fleet are looked up by their serial number or address, may be connected or disconnected
+ * all at once, and share a scheduler, connection executor and connection admission controller
+ * rather than each fan starting threads of its own. The admission controller keeps fans from
+ * all reconnecting at once after an outage.
+ * <p>
+ * This class is thread-safe. Fans may be registered, looked up and unregistered concurrently.
+ * Once {@link #close() closed}, every fan in the fleet is disconnected and destroyed, and no
+ * more fans may be registered.
+ *
+ * @see #builder()
+ */
+public final class DysonFleet implements AutoCloseable {
+
+    /**
+     * The default maximum amount of fans in a fleet attempting to connect at the same time.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CONNECTIONS = 16;
+
+    /**
+     * The default maximum random delay applied to each connection attempt in a fleet.
+     */
+    public static final Duration DEFAULT_CONNECTION_JITTER = Duration.ofMillis(100);
+
+    private final ConcurrentMap<String, DysonFan> fansBySerialNumber = new ConcurrentHashMap<>();
+    private final ConcurrentMap<InetAddress, DysonFan> fansByAddress = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Throwable> connectionFailures = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connectionExecutor;
+    private final NioMqttTransport transport;
+    private final ConnectionAdmissionController admissionController;
+    private final DysonFanOptions fanOptions;
+
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
+
+    private DysonFleet(Builder builder) {
+        this.scheduler = Executors.newScheduledThreadPool(builder.schedulerThreads, new DaemonThreadFactory("Dyson4J Fleet Scheduler"));
+        this.connectionExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("Dyson4J Fleet Connection"));
+        this.transport = (builder.eventLoopThreads > 0) ? new NioMqttTransport(builder.eventLoopThreads) : null;
+        this.admissionController = new ConnectionAdmissionController(builder.maxConcurrentConnections, builder.connectionJitter, scheduler);
+        this.fanOptions = withSharedResources(builder.fanOptions);
+    }
+
+    /**
+     * Create and register a new {@link DysonFan} configured with this fleet's default
+     * {@link DysonFanOptions}. The fan is not connected.
+     *
+     * @param model the fan's model
+     * @param address the address at which the Dyson fan may be located
+     * @param credentials the fan credentials (as found on the fan's sticker or manual)
+     *
+     * @return the registered fan
+     *
+     * @throws IllegalArgumentException if a fan with the same serial number or address has
+     * already been registered
+     * @throws IllegalStateException if this fleet has been closed
+     */
+    @NotNull
+    public DysonFan register(@NotNull FanModel model, @NotNull InetAddress address, @NotNull DysonFanCredentials credentials) {
+        return register(model, address, credentials, fanOptions);
+    }
+
+    /**
+     * Create and register a new {@link DysonFan} configured with the given {@link DysonFanOptions}.
+     * The fan is not connected. Regardless of the given options, the fan will use this fleet's
+     * shared {@link DysonFanOptions#getScheduler() scheduler} and
+     * {@link DysonFanOptions#getConnectionExecutor() connection executor} and
+     * {@link DysonFanOptions#getAdmissionController() admission controller}, as well as its
+     * {@link DysonFanOptions#getTransport() transport} if the fleet was built with
+     * {@link Builder#eventLoopThreads(int) event loop threads}.
+     *
+     * @param model the fan's model
+     * @param address the address at which the Dyson fan may be located
+     * @param credentials the fan credentials (as found on the fan's sticker or manual)
+     * @param options the options with which to configure the fan
+     *
+     * @return the registered fan
+     *
+     * @throws IllegalArgumentException if a fan with the same serial number or address has
+     * already been registered
+     * @throws IllegalStateException if this fleet has been closed
+     */
+    @NotNull
+    public DysonFan register(@NotNull FanModel model, @NotNull InetAddress address, @NotNull DysonFanCredentials credentials, @NotNull DysonFanOptions options) {
+        Preconditions.checkArgument(options != null, "options must not be null");
+
+        this.closeLock.readLock().lock();
+        try {
+            this.ensureOpen();
+
+            if (options != fanOptions) {
+                options = withSharedResources(options);
+            }
+
+            DysonFan fan = new StandardDysonFan(model, address, credentials, options);
+
+            if (fansBySerialNumber.putIfAbsent(fan.getSerialNumber(), fan) != null) {
+                throw new IllegalArgumentException("A fan with serial number " + fan.getSerialNumber() + " has already been registered");
+            }
+
+            if (!putAddress(address, fan)) {
+                this.fansBySerialNumber.remove(fan.getSerialNumber(), fan);
+                throw new IllegalArgumentException("A fan at address " + address.getHostAddress() + " has already been registered");
+            }
+
+            return fan;
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Unregister the {@link DysonFan} with the given serial number from this fleet. If the fan
+     * is connected, it will be disconnected and destroyed.
+     *
+     * @param serialNumber the serial number of the fan to unregister
+     *
+     * @return a completable future, completed when the fan has been disconnected, or immediately
+     * if no fan with the given serial number is registered
+     */
+    @NotNull
+    public CompletableFuture<Void> unregister(@NotNull String serialNumber) {
+        Preconditions.checkArgument(serialNumber != null, "serialNumber must not be null");
+
+        DysonFan fan = fansBySerialNumber.remove(serialNumber);
+        if (fan == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!fansByAddress.remove(fan.getAddress(), fan)) {
+            // The fan's address changed since it was indexed
+            this.fansByAddress.values().remove(fan);
+        }
+
+        this.connectionFailures.remove(serialNumber);
+        return fan.disconnect(true);
+    }
+
+    /**
+     * Get the registered {@link DysonFan} with the given serial number.
+     *
+     * @param serialNumber the fan's serial number
+     *
+     * @return the fan, or null if none is registered with the given serial number
+     */
+    @Nullable
+    public DysonFan getBySerialNumber(@NotNull String serialNumber) {
+        Preconditions.checkArgument(serialNumber != null, "serialNumber must not be null");
+        return fansBySerialNumber.get(serialNumber);
+    }
+
+    /**
+     * Get the registered {@link DysonFan} at the given address. A fan whose address has changed
+     * since it was registered is found at its new address.
+     *
+     * @param address the fan's address
+     *
+     * @return the fan, or null if none is registered at the given address
+     */
+    @Nullable
+    public DysonFan getByAddress(@NotNull InetAddress address) {
+        Preconditions.checkArgument(address != null, "address must not be null");
+
+        DysonFan fan = fansByAddress.get(address);
+        if (fan != null && address.equals(fan.getAddress())) {
+            return fan;
+        }
+
+        // Fans may move to a new address while reconnecting, in which case the index is brought up to date lazily
+        if (fan != null) {
+            this.fansByAddress.remove(address, fan);
+        }
+
+        for (DysonFan candidate : fansBySerialNumber.values()) {
+            if (address.equals(candidate.getAddress())) {
+                this.fansByAddress.putIfAbsent(address, candidate);
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get an unmodifiable view of all fans registered to this fleet. The view reflects fans
+     * registered and unregistered after this method was called.
+     *
+     * @return all registered fans
+     */
+    @NotNull
+    public Collection<@NotNull DysonFan> getFans() {
+        return Collections.unmodifiableCollection(fansBySerialNumber.values());
+    }
+
+    /**
+     * Get the amount of fans registered to this fleet.
+     *
+     * @return the registered fan count
+     */
+    public int size() {
+        return fansBySerialNumber.size();
+    }
+
+    /**
+     * Connect every registered fan that is not already connected. Connection attempts are made
+     * concurrently and the failure of one does not affect any other. Failures are instead
+     * recorded and may be queried with {@link #getHealth()}.
+     *
+     * @param timeout the maximum amount of time until each connection will timeout and fail.
+     * Must be greater than 0
+     * @param unit the time unit used for {@code timeout}
+     *
+     * @return a completable future, completed once every connection attempt has either succeeded
+     * or failed. Never completed exceptionally
+     *
+     * @see DysonFan#connect(int, TimeUnit)
+     */
+    @NotNull
+    public CompletableFuture<Void> connectAll(int timeout, @NotNull TimeUnit unit) {
+        Preconditions.checkArgument(timeout > 0, "timeout must be > 0");
+        Preconditions.checkArgument(unit != null, "unit must not be null");
+        this.ensureOpen();
+
+        return forEachFan(fan -> fan.isConnected() ? null : fan.connect(timeout, unit).handle((result, e) -> {
+            if (e != null) {
+                this.connectionFailures.put(fan.getSerialNumber(), (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+            } else {
+                this.connectionFailures.remove(fan.getSerialNumber());
+            }
+
+            return null;
+        }));
+    }
+
+    /**
+     * Connect every registered fan that is not already connected. Connection attempts will
+     * automatically timeout after 5 seconds unless otherwise specified by
+     * {@link #connectAll(int, TimeUnit)}.
+     *
+     * @return a completable future, completed once every connection attempt has either succeeded
+     * or failed. Never completed exceptionally
+     */
+    @NotNull
+    public CompletableFuture<Void> connectAll() {
+        return connectAll(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Disconnect every registered fan that is connected. Fans are not destroyed and may be
+     * connected again, individually or by {@link #connectAll()}. Failures to disconnect are
+     * ignored.
+     *
+     * @return a completable future, completed once every fan has either been disconnected or
+     * failed to disconnect. Never completed exceptionally
+     */
+    @NotNull
+    public CompletableFuture<Void> disconnectAll() {
+        return forEachFan(fan -> fan.isConnected() ? fan.disconnect(false).handle((result, e) -> null) : null);
+    }
+
+    /**
+     * Apply a {@link StateChange} to every registered fan that is connected. Each fan is sent
+     * the states supported by its model.
+     *
+     * @param change the state change to apply
+     *
+     * @return a completable future, completed when the states have been sent to every connected
+     * fan. If any fan failed, the future is completed exceptionally once every other fan has
+     * completed
+     *
+     * @see StateChange#applyTo(Iterable)
+     */
+    @NotNull
+    public CompletableFuture<Void> setStateAll(@NotNull StateChange change) {
+        Preconditions.checkArgument(change != null, "change must not be null");
+        this.ensureOpen();
+
+        return forEachFan(fan -> fan.isConnected() ? change.applyTo(List.of(fan)) : null);
+    }
+
+    /**
+     * Get a summary of the connection health of every fan registered to this fleet.
+     *
+     * @return the fleet's health
+     */
+    @NotNull
+    public FleetHealth getHealth() {
+        int registeredFans = 0, connectedFans = 0;
+        for (DysonFan fan : fansBySerialNumber.values()) {
+            registeredFans++;
+
+            if (fan.isConnected()) {
+                connectedFans++;
+            }
+        }
+
+        return new FleetHealth(registeredFans, connectedFans, new HashMap<>(connectionFailures));
+    }
+
+    /**
+     * Get the {@link ConnectionAdmissionController} shared by every fan in this fleet, limiting
+     * how many of them connect or reconnect at the same time.
+     *
+     * @return the admission controller
+     */
+    @NotNull
+    public ConnectionAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Check whether or not this fleet has been closed.
+     *
+     * @return true if closed, false otherwise
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close this fleet. Every registered fan is unregistered, disconnected and destroyed, after
+     * which the fleet's shared resources are released. This method blocks until every fan has
+     * been disconnected.
+     */
+    @Override
+    public void close() {
+        // Waits for any fan being registered, after which none may be
+        this.closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            this.closed = true;
+        } finally {
+            this.closeLock.writeLock().unlock();
+        }
+
+        List<String> serialNumbers = new ArrayList<>(fansBySerialNumber.keySet());
+        List<CompletableFuture<?>> futures = new ArrayList<>(serialNumbers.size());
+        for (String serialNumber : serialNumbers) {
+            futures.add(unregister(serialNumber).handle((result, e) -> null));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        this.scheduler.shutdown();
+        this.connectionExecutor.shutdown();
+
+        if (transport != null) {
+            this.transport.close();
+        }
+    }
+
+    // Indexes the fan by its address unless another registered fan is still located at that address
+    private boolean putAddress(InetAddress address, DysonFan fan) {
+        while (true) {
+            DysonFan existing = fansByAddress.putIfAbsent(address, fan);
+            if (existing == null) {
+                return true;
+            }
+
+            if (address.equals(existing.getAddress())) {
+                return false;
+            }
+
+            this.fansByAddress.remove(address, existing);
+        }
+    }
+
+    private DysonFanOptions withSharedResources(DysonFanOptions options) {
+        // Compared as configured, as getting the transport would create a default one only for it to be replaced
+        boolean sharesTransport = (transport == null || options.getConfiguredTransport() == transport);
+        if (options.getScheduler() == scheduler && options.getConnectionExecutor() == connectionExecutor && options.getAdmissionController() == admissionController && sharesTransport) {
+            return options;
+        }
+
+        DysonFanOptions.Builder builder = options.toBuilder().scheduler(scheduler).connectionExecutor(connectionExecutor).admissionController(admissionController);
+        if (transport != null) {
+            builder.transport(transport);
+        }
+
+        return builder.build();
+    }
+
+    private CompletableFuture<Void> forEachFan(Function<DysonFan, CompletableFuture<?>> action) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (DysonFan fan : fansBySerialNumber.values()) {
+            CompletableFuture<?> future = action.apply(fan);
+            if (future != null) {
+                futures.add(future);
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("fleet has been closed");
+        }
+    }
+
+    /**
+     * Get a new {@link Builder} initialized with default values.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link DysonFleet}.
+     */
+    public static final class Builder {
+
+        private DysonFanOptions fanOptions = DysonFanOptions.defaults();
+        private int schedulerThreads = 1;
+        private int eventLoopThreads = 0;
+        private int maxConcurrentConnections = DEFAULT_MAX_CONCURRENT_CONNECTIONS;
+        private Duration connectionJitter = DEFAULT_CONNECTION_JITTER;
+
+        private Builder() { }
+
+        /**
+         * Set the default {@link DysonFanOptions} with which fans registered to the fleet are
+         * configured. The options' scheduler and connection executor are ignored in favour of the
+         * fleet's shared resources.
+         * By default, {@link DysonFanOptions#defaults()} is used.
+         *
+         * @param fanOptions the default fan options
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder fanOptions(@NotNull DysonFanOptions fanOptions) {
+            Preconditions.checkArgument(fanOptions != null, "fanOptions must not be null");
+
+            this.fanOptions = fanOptions;
+            return this;
+        }
+
+        /**
+         * Set the amount of threads in the scheduler shared by every fan in the fleet. The tasks
+         * run on the scheduler are short and non-blocking, so a single thread (the default) is
+         * generally sufficient even for large fleets.
+         *
+         * @param schedulerThreads the amount of scheduler threads. Must be positive
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder schedulerThreads(int schedulerThreads) {
+            Preconditions.checkArgument(schedulerThreads > 0, "schedulerThreads must be positive");
+
+            this.schedulerThreads = schedulerThreads;
+            return this;
+        }
+
+        /**
+         * Set the amount of event loop threads of a {@link NioMqttTransport} owned by the fleet
+         * and shared by every fan in it, overriding the transport of the fans' options. Whereas
+         * the default transport occupies threads for as long as each fan is connected, these few
+         * threads serve every fan in the fleet. The transport is closed with the fleet.
+         * By default (0), no such transport is created and the fans' own transport is used.
+         *
+         * @param eventLoopThreads the amount of event loop threads, or 0 to use the fans' transport.
+         * Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         */
+        @NotNull
+        public Builder eventLoopThreads(int eventLoopThreads) {
+            Preconditions.checkArgument(eventLoopThreads >= 0, "eventLoopThreads must not be negative");
+
+            this.eventLoopThreads = eventLoopThreads;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of fans in the fleet attempting to connect or reconnect at the
+         * same time. Further attempts are queued until an earlier attempt completes, with fans
+         * that have commands waiting to be sent admitted first.
+         *
+         * @param maxConcurrentConnections the maximum amount of concurrent connection attempts.
+         * Must be positive
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet#DEFAULT_MAX_CONCURRENT_CONNECTIONS
+         */
+        @NotNull
+        public Builder maxConcurrentConnections(int maxConcurrentConnections) {
+            Preconditions.checkArgument(maxConcurrentConnections > 0, "maxConcurrentConnections must be positive");
+
+            this.maxConcurrentConnections = maxConcurrentConnections;
+            return this;
+        }
+
+        /**
+         * Set the maximum random delay applied to each connection attempt once admitted, spreading
+         * out attempts admitted at the same time.
+         *
+         * @param connectionJitter the connection jitter. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see DysonFleet#DEFAULT_CONNECTION_JITTER
+         */
+        @NotNull
+        public Builder connectionJitter(@NotNull Duration connectionJitter) {
+            Preconditions.checkArgument(connectionJitter != null, "connectionJitter must not be null");
+            Preconditions.checkArgument(!connectionJitter.isNegative(), "connectionJitter must not be negative");
+
+            this.connectionJitter = connectionJitter;
+            return this;
+        }
+
+        /**
+         * Build the {@link DysonFleet}.
+         *
+         * @return the fleet
+         */
+        @NotNull
+        public DysonFleet build() {
+            return new DysonFleet(this);
+        }
+
+    }
+
+}
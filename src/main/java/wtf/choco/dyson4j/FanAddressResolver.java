@@ -0,0 +1,61 @@
+package wtf.choco.dyson4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Resolves the address at which a {@link DysonFan} is located on the network. The resolver is
+ * consulted before every attempt to reconnect to a fan whose connection was lost, allowing a
+ * fan to be found again after its address has changed, such as when its DHCP lease expired.
+ *
+ * @see DysonFanOptions.Builder#addressResolver(FanAddressResolver)
+ */
+@FunctionalInterface
+public interface FanAddressResolver {
+
+    /**
+     * Resolve the current address of the given fan. This method may block and is never called
+     * on a thread that would delay other fans.
+     *
+     * @param fan the fan whose address to resolve. Its {@link DysonFan#getAddress() address}
+     * is the last address at which it was known to be located
+     *
+     * @return the fan's current address
+     *
+     * @throws IOException if the address could not be resolved
+     */
+    @NotNull
+    public InetAddress resolve(@NotNull DysonFan fan) throws IOException;
+
+    /**
+     * Get a {@link FanAddressResolver} that always resolves a fan's last known address. This
+     * is the default resolver.
+     *
+     * @return the resolver
+     */
+    @NotNull
+    public static FanAddressResolver fixed() {
+        return DysonFan::getAddress;
+    }
+
+    /**
+     * Get a {@link FanAddressResolver} that looks up the given host name every time it resolves
+     * a fan's address. Useful when a fan is registered under a name by the network's DNS server.
+     * Note that the JVM may cache successful lookups as per the {@code networkaddress.cache.ttl}
+     * security property.
+     *
+     * @param hostName the fan's host name
+     *
+     * @return the resolver
+     */
+    @NotNull
+    public static FanAddressResolver hostName(@NotNull String hostName) {
+        Preconditions.checkArgument(hostName != null, "hostName must not be null");
+        return fan -> InetAddress.getByName(hostName);
+    }
+
+}
@@ -0,0 +1,31 @@
+package wtf.choco.dyson4j;
+
+import wtf.choco.dyson4j.event.FanConnectionStateEvent;
+
+/**
+ * Represents the state of the connection to a {@link DysonFan}.
+ *
+ * @see DysonFan#getConnectionState()
+ * @see FanConnectionStateEvent
+ */
+public enum FanConnectionState {
+
+    /**
+     * The fan is connected and accepts state changes and queries.
+     */
+    CONNECTED,
+
+    /**
+     * The connection to the fan was lost and attempts are being made to reconnect as per the
+     * fan's {@link ReconnectPolicy}. State changes and queries are not accepted until the fan
+     * is connected again.
+     */
+    RECONNECTING,
+
+    /**
+     * The fan is not connected, either because it never was, it was disconnected, or the
+     * connection was lost and could not be re-established.
+     */
+    DISCONNECTED;
+
+}
@@ -1,68 +1,66 @@
 package wtf.choco.dyson4j;
 
-import java.util.function.Predicate;
-
 import org.jetbrains.annotations.NotNull;
 
 import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.FanStateSet;
 
 /**
  * Represents a supported Dyson fan model.
+ * <p>
+ * Each model declares the {@link FanState FanStates} it supports as a {@link FanStateSet},
+ * allowing unsupported state changes to be discarded locally rather than being sent to the fan.
  */
 public enum FanModel {
 
     /**
      * Dyson Pure Cool Link Tower.
      */
-    DYSON_PURE_COOL_LINK_TOWER("475", "Dyson Pure Cool Link Tower"),
+    DYSON_PURE_COOL_LINK_TOWER("475", "Dyson Pure Cool Link Tower", Capabilities.COOL),
 
     /**
      * Dyson Pure Cool Link Desk.
      */
-    DYSON_PURE_COOL_LINK_DESK("469", "Dyson Pure Cool Link Desk"),
+    DYSON_PURE_COOL_LINK_DESK("469", "Dyson Pure Cool Link Desk", Capabilities.COOL),
 
     /**
      * Dyson Pure Hot+Cool Link Tower.
      */
-    DYSON_PURE_HOT_COOL_LINK_TOWER("455", "Dyson Pure Hot+Cool Link Tower"),
+    DYSON_PURE_HOT_COOL_LINK_TOWER("455", "Dyson Pure Hot+Cool Link Tower", Capabilities.HOT_COOL),
 
     /**
      * Dyson 360 Eye.
      */
-    DYSON_360_EYE("N223", "Dyson 360 Eye"),
+    DYSON_360_EYE("N223", "Dyson 360 Eye", FanStateSet.empty()),
 
     /**
      * Dyson Pure Cool.
      */
-    DYSON_PURE_COOL("438", "Dyson Pure Cool"),
+    DYSON_PURE_COOL("438", "Dyson Pure Cool", Capabilities.COOL),
 
     /**
      * Dyson Pure Cool Humidify.
      */
-    DYSON_PURE_COOL_HUMIDIFY("358", "Dyson Pure Cool Humidify"),
+    DYSON_PURE_COOL_HUMIDIFY("358", "Dyson Pure Cool Humidify", Capabilities.COOL),
 
     /**
      * Dyson Pure Cool Desktop.
      */
-    DYSON_PURE_COOL_DESKTOP("520", "Dyson Pure Cool Desktop"),
+    DYSON_PURE_COOL_DESKTOP("520", "Dyson Pure Cool Desktop", Capabilities.COOL),
 
     /**
      * Dyson Pure Hot+Cool.
      */
-    DYSON_PURE_HOT_COOL("527", "Dyson Pure Hot+Cool");
+    DYSON_PURE_HOT_COOL("527", "Dyson Pure Hot+Cool", Capabilities.HOT_COOL);
 
     private final String productCode;
     private final String friendlyName;
-    private final Predicate<FanState<?>> stateSupportPredicate; // TODO: Pull request, anybody? :)
+    private final FanStateSet supportedStates;
 
-    private FanModel(@NotNull String productCode, @NotNull String friendlyName, @NotNull Predicate<FanState<?>> stateSupportPredicate) {
+    private FanModel(@NotNull String productCode, @NotNull String friendlyName, @NotNull FanStateSet supportedStates) {
         this.productCode = productCode;
         this.friendlyName = friendlyName;
-        this.stateSupportPredicate = stateSupportPredicate;
-    }
-
-    private FanModel(@NotNull String productCode, @NotNull String friendlyName) {
-        this(productCode, friendlyName, state -> true);
+        this.supportedStates = supportedStates;
     }
 
     /**
@@ -93,7 +91,31 @@ public enum FanModel {
      * @return true if the fan supports the provided state, false otherwise
      */
     public boolean supportsFeature(@NotNull FanState<?> state) {
-        return state != null && stateSupportPredicate.test(state);
+        return supportedStates.contains(state);
+    }
+
+    /**
+     * Get the set of all {@link FanState FanStates} supported by this fan model.
+     *
+     * @return the supported states
+     */
+    @NotNull
+    public FanStateSet supportedStates() {
+        return supportedStates;
+    }
+
+    /*
+     * Enum constants can't reference static fields of their own enum in their constructors, hence the holder class.
+     *
+     * Every model could always be sent every state, so a state is only excluded from a model that physically can't act
+     * on it: the heating states on models without a heater, and every state on the 360 Eye, which is a robot vacuum
+     * rather than a fan. Excluding anything else would silently take away control that callers have always had.
+     */
+    private static final class Capabilities {
+
+        private static final FanStateSet HOT_COOL = FanStateSet.all();
+        private static final FanStateSet COOL = HOT_COOL.difference(FanStateSet.of(FanState.HEAT_MODE, FanState.MAXIMUM_TEMPERATURE));
+
     }
 
 }
@@ -0,0 +1,161 @@
+package wtf.choco.dyson4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+
+/*
+ * Each change to a single state is recorded as one line of the form "<serial number>\t<state id>\t<value>", where an
+ * empty value clears the state. Lines are written with DSYNC so that a change is on disk before it is applied. A line
+ * torn by a crash mid-write is cut off when the journal is next opened, and any line referring to an unknown state or
+ * value is ignored on replay.
+ */
+final class FileDesiredStateJournal implements DesiredStateJournal {
+
+    // Don't bother compacting small journals, and otherwise only once at least half of their lines are superseded
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private final Path path;
+    private FileChannel channel;
+
+    FileDesiredStateJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+
+        // A crash may have left a torn line behind. Cut it off, as what remains of it may well still parse as a valid line
+        long end = endOfLastLine(path);
+        if (end < channel.size()) {
+            this.channel.truncate(end);
+        }
+    }
+
+    // Returns the position just after the last line terminator in the file, or 0 if it has none
+    private static long endOfLastLine(Path path) throws IOException {
+        try (SeekableByteChannel readChannel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+
+            for (long end = readChannel.size(); end > 0; end -= buffer.limit()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end));
+                readChannel.position(end - buffer.limit());
+                while (buffer.hasRemaining() && readChannel.read(buffer) >= 0) {
+                    // Reads may be short, keep going until the buffer is full
+                }
+
+                for (int i = buffer.limit() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return end - buffer.limit() + i + 1;
+                    }
+                }
+            }
+
+            return 0;
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+    }
+
+    @Override
+    public synchronized void append(String serialNumber, Map<FanState<?>, MqttStateValueProvider> states) throws IOException {
+        if (states.isEmpty()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        states.forEach((state, value) -> appendLine(lines, serialNumber, state, value));
+        this.write(channel, lines);
+    }
+
+    @Override
+    public synchronized Map<String, Map<FanState<?>, MqttStateValueProvider>> replay() throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        Map<String, Map<FanState<?>, MqttStateValueProvider>> desiredStates = new HashMap<>();
+
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3) {
+                continue;
+            }
+
+            FanState<?> state = FanState.getById(fields[1]);
+            if (state == null) {
+                continue;
+            }
+
+            if (fields[2].isEmpty()) {
+                Map<FanState<?>, MqttStateValueProvider> states = desiredStates.get(fields[0]);
+                if (states != null && states.remove(state) != null && states.isEmpty()) {
+                    desiredStates.remove(fields[0]);
+                }
+
+                continue;
+            }
+
+            MqttStateValueProvider value = state.parseValue(fields[2]);
+            if (value != null) {
+                desiredStates.computeIfAbsent(fields[0], ignore -> new HashMap<>()).put(state, value);
+            }
+        }
+
+        int liveLines = desiredStates.values().stream().mapToInt(Map::size).sum();
+        if (lines.size() >= COMPACTION_THRESHOLD && lines.size() >= liveLines * 2) {
+            this.compact(desiredStates);
+        }
+
+        return desiredStates;
+    }
+
+    // Rewrites only the live desired states to a new file which atomically replaces the journal
+    private void compact(Map<String, Map<FanState<?>, MqttStateValueProvider>> desiredStates) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        desiredStates.forEach((serialNumber, states) -> states.forEach((state, value) -> appendLine(lines, serialNumber, state, value)));
+
+        Path compactedPath = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel compactedChannel = FileChannel.open(compactedPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC)) {
+            this.write(compactedChannel, lines);
+        }
+
+        // Whether or not the move succeeds, the journal must remain open for appends
+        this.channel.close();
+        try {
+            Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            this.channel = open(path);
+        }
+    }
+
+    private static void appendLine(StringBuilder lines, String serialNumber, FanState<?> state, MqttStateValueProvider value) {
+        lines.append(serialNumber).append('\t').append(state.getId()).append('\t');
+        if (value != null) {
+            lines.append(value.getStateValue());
+        }
+
+        lines.append('\n');
+    }
+
+    private void write(FileChannel channel, CharSequence lines) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.close();
+    }
+
+}
@@ -0,0 +1,77 @@
+package wtf.choco.dyson4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a point-in-time summary of the connection health of every fan registered to a
+ * {@link DysonFleet} as returned by {@link DysonFleet#getHealth()}. An instance of this object
+ * will not reflect changes made to the fleet after it was created.
+ */
+public final class FleetHealth {
+
+    private final int registeredFans, connectedFans;
+    private final Map<String, Throwable> connectionFailures;
+
+    FleetHealth(int registeredFans, int connectedFans, Map<String, Throwable> connectionFailures) {
+        this.registeredFans = registeredFans;
+        this.connectedFans = connectedFans;
+        this.connectionFailures = Collections.unmodifiableMap(connectionFailures);
+    }
+
+    /**
+     * Get the amount of fans registered to the fleet.
+     *
+     * @return the registered fan count
+     */
+    public int getRegisteredFans() {
+        return registeredFans;
+    }
+
+    /**
+     * Get the amount of registered fans that are connected.
+     *
+     * @return the connected fan count
+     */
+    public int getConnectedFans() {
+        return connectedFans;
+    }
+
+    /**
+     * Get the amount of registered fans that are not connected.
+     *
+     * @return the disconnected fan count
+     */
+    public int getDisconnectedFans() {
+        return registeredFans - connectedFans;
+    }
+
+    /**
+     * Get an unmodifiable map of the serial numbers of all fans whose most recent connection
+     * attempt made through the fleet has failed, and the reason for which it failed. A fan is
+     * removed from this map once it connects successfully through the fleet.
+     *
+     * @return the connection failures by serial number
+     */
+    @NotNull
+    public Map<@NotNull String, @NotNull Throwable> getConnectionFailures() {
+        return connectionFailures;
+    }
+
+    /**
+     * Check whether or not every registered fan is connected.
+     *
+     * @return true if healthy, false otherwise
+     */
+    public boolean isHealthy() {
+        return connectedFans == registeredFans;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FleetHealth[registeredFans=%s, connectedFans=%s, connectionFailures=%s]", registeredFans, connectedFans, connectionFailures.size());
+    }
+
+}
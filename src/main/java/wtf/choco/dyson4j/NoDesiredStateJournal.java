@@ -0,0 +1,23 @@
+package wtf.choco.dyson4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+
+final class NoDesiredStateJournal implements DesiredStateJournal {
+
+    static final DesiredStateJournal INSTANCE = new NoDesiredStateJournal();
+
+    private NoDesiredStateJournal() { }
+
+    @Override
+    public void append(String serialNumber, Map<FanState<?>, MqttStateValueProvider> states) { }
+
+    @Override
+    public Map<String, Map<FanState<?>, MqttStateValueProvider>> replay() {
+        return Collections.emptyMap();
+    }
+
+}
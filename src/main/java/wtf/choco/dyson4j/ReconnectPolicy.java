@@ -0,0 +1,297 @@
+package wtf.choco.dyson4j;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * A policy determining whether, when and how many times to reconnect to a {@link DysonFan}
+ * whose connection was lost. Reconnect attempts are delayed by an exponential backoff, each
+ * delay being the previous one multiplied by a constant factor up to a maximum, and randomly
+ * shortened by up to a fraction of itself (the jitter) so that many fans losing their
+ * connection at the same time do not all reconnect at the same time. Instances of this class
+ * are immutable.
+ * <p>
+ * A reconnect policy only applies to established connections that were lost. A call to
+ * {@link DysonFan#connect()} that fails is never retried.
+ *
+ * @see DysonFanOptions.Builder#reconnectPolicy(ReconnectPolicy)
+ */
+public final class ReconnectPolicy {
+
+    /**
+     * The default delay before the first reconnect attempt.
+     */
+    public static final Duration DEFAULT_INITIAL_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * The default maximum delay between two reconnect attempts.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMinutes(1);
+
+    /**
+     * The default factor by which the delay grows after every failed attempt.
+     */
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+
+    /**
+     * The default fraction of each delay by which it may be randomly shortened.
+     */
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private static final ReconnectPolicy DEFAULTS = builder().build();
+    private static final ReconnectPolicy DISABLED = builder().maxAttempts(-1).build();
+
+    private final Duration initialDelay, maxDelay;
+    private final double multiplier, jitter;
+    private final int maxAttempts;
+
+    private ReconnectPolicy(Builder builder) {
+        this.initialDelay = builder.initialDelay;
+        this.maxDelay = builder.maxDelay;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.maxAttempts = builder.maxAttempts;
+    }
+
+    /**
+     * Check whether or not this policy reconnects at all.
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return maxAttempts >= 0;
+    }
+
+    /**
+     * Get the delay before the first reconnect attempt.
+     *
+     * @return the initial delay
+     */
+    @NotNull
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * Get the maximum delay between two reconnect attempts, before jitter is applied.
+     *
+     * @return the maximum delay
+     */
+    @NotNull
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Get the factor by which the delay grows after every failed attempt.
+     *
+     * @return the multiplier
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Get the fraction of each delay by which it may be randomly shortened.
+     *
+     * @return the jitter, between 0 and 1
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Get the maximum amount of reconnect attempts made after a connection was lost. If 0, the
+     * amount of attempts is unlimited. If negative, this policy is disabled.
+     *
+     * @return the maximum amount of attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Check whether or not the given reconnect attempt may be made.
+     *
+     * @param attempt the attempt, starting at 1
+     *
+     * @return true if the attempt may be made, false if the fan should remain disconnected
+     */
+    public boolean canAttempt(int attempt) {
+        return maxAttempts == 0 || (maxAttempts > 0 && attempt <= maxAttempts);
+    }
+
+    /**
+     * Get the delay before the given reconnect attempt, jitter included. Calling this method
+     * twice with the same attempt may return different delays.
+     *
+     * @param attempt the attempt, starting at 1
+     *
+     * @return the delay
+     */
+    @NotNull
+    public Duration getDelay(int attempt) {
+        Preconditions.checkArgument(attempt > 0, "attempt must be positive");
+
+        double delayNanos = Math.min(initialDelay.toNanos() * Math.pow(multiplier, attempt - 1), maxDelay.toNanos());
+        if (jitter > 0) {
+            delayNanos -= delayNanos * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+
+        return Duration.ofNanos((long) delayNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReconnectPolicy[initialDelay=%s, maxDelay=%s, multiplier=%s, jitter=%s, maxAttempts=%s]", initialDelay, maxDelay, multiplier, jitter, maxAttempts);
+    }
+
+    /**
+     * Get the default {@link ReconnectPolicy}. Reconnects indefinitely, starting after
+     * {@link #DEFAULT_INITIAL_DELAY} and backing off up to {@link #DEFAULT_MAX_DELAY}.
+     *
+     * @return the default policy
+     */
+    @NotNull
+    public static ReconnectPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Get a {@link ReconnectPolicy} that never reconnects.
+     *
+     * @return the disabled policy
+     */
+    @NotNull
+    public static ReconnectPolicy disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Get a new {@link Builder} initialized with default values.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link ReconnectPolicy}.
+     */
+    public static final class Builder {
+
+        private Duration initialDelay = DEFAULT_INITIAL_DELAY, maxDelay = DEFAULT_MAX_DELAY;
+        private double multiplier = DEFAULT_MULTIPLIER, jitter = DEFAULT_JITTER;
+        private int maxAttempts = 0;
+
+        private Builder() { }
+
+        /**
+         * Set the delay before the first reconnect attempt.
+         *
+         * @param initialDelay the initial delay. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#DEFAULT_INITIAL_DELAY
+         */
+        @NotNull
+        public Builder initialDelay(@NotNull Duration initialDelay) {
+            Preconditions.checkArgument(initialDelay != null, "initialDelay must not be null");
+            Preconditions.checkArgument(!initialDelay.isNegative(), "initialDelay must not be negative");
+
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        /**
+         * Set the maximum delay between two reconnect attempts, before jitter is applied.
+         *
+         * @param maxDelay the maximum delay. Must not be negative
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#DEFAULT_MAX_DELAY
+         */
+        @NotNull
+        public Builder maxDelay(@NotNull Duration maxDelay) {
+            Preconditions.checkArgument(maxDelay != null, "maxDelay must not be null");
+            Preconditions.checkArgument(!maxDelay.isNegative(), "maxDelay must not be negative");
+
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Set the factor by which the delay grows after every failed attempt. A multiplier of
+         * 1 results in a constant delay.
+         *
+         * @param multiplier the multiplier. Must be at least 1
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#DEFAULT_MULTIPLIER
+         */
+        @NotNull
+        public Builder multiplier(double multiplier) {
+            Preconditions.checkArgument(multiplier >= 1, "multiplier must be at least 1");
+
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Set the fraction of each delay by which it may be randomly shortened. A jitter of 0
+         * disables randomization, whereas a jitter of 1 results in a delay anywhere between 0
+         * and the computed delay.
+         *
+         * @param jitter the jitter. Must be between 0 and 1 (inclusive)
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#DEFAULT_JITTER
+         */
+        @NotNull
+        public Builder jitter(double jitter) {
+            Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Set the maximum amount of reconnect attempts made after a connection was lost, after
+         * which the fan remains disconnected. 0 (the default) allows unlimited attempts and a
+         * negative value disables reconnecting altogether.
+         *
+         * @param maxAttempts the maximum amount of attempts
+         *
+         * @return this instance. Allows for chained method calls
+         *
+         * @see ReconnectPolicy#disabled()
+         */
+        @NotNull
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Build the {@link ReconnectPolicy}.
+         *
+         * @return the policy
+         */
+        @NotNull
+        public ReconnectPolicy build() {
+            return new ReconnectPolicy(this);
+        }
+
+    }
+
+}
@@ -1,36 +1,89 @@
 package wtf.choco.dyson4j;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
-import org.eclipse.paho.client.mqttv3.MqttException;
 import org.jetbrains.annotations.NotNull;
 
+import wtf.choco.dyson4j.event.DysonFanEvent;
+import wtf.choco.dyson4j.event.FanConnectionStateEvent;
+import wtf.choco.dyson4j.event.FanSensorDataEvent;
+import wtf.choco.dyson4j.event.FanStateChangeEvent;
+import wtf.choco.dyson4j.event.FanStatusEvent;
 import wtf.choco.dyson4j.exception.DysonConnectionException;
 import wtf.choco.dyson4j.mqtt.FanMqttConnectionHandler;
+import wtf.choco.dyson4j.mqtt.FanMqttConnectionHandler.InFlightSlot;
+import wtf.choco.dyson4j.mqtt.message.DysonDeviceStatus;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttIncomingMessage;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessage;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageDecoder;
 import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageRequestCurrentState;
 import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageRequestEnvironmentalSensorData;
 import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageSetState;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageSetStateConfirmed;
 import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.FanStateSet;
 import wtf.choco.dyson4j.setting.MqttStateValueProvider;
-import wtf.choco.dyson4j.util.ExceptionalSupplier;
 import wtf.choco.dyson4j.util.Preconditions;
+import wtf.choco.dyson4j.util.SerialExecutor;
 
 /**
  * A standard {@link DysonFan}.
  */
 public final class StandardDysonFan implements DysonFan {
 
-    private FanMqttConnectionHandler mqttConnection;
-    private final ExceptionalSupplier<FanMqttConnectionHandler, MqttException> mqttConnectionSupplier;
+    private volatile FanMqttConnectionHandler mqttConnection;
+    private final AtomicReference<CompletableFuture<FanMqttConnectionHandler>> mqttConnectionFuture = new AtomicReference<>();
+    private final Supplier<FanMqttConnectionHandler> mqttConnectionSupplier;
 
     private final FanModel model;
-    private final InetAddress address;
+    private volatile InetAddress address;
+    private final String serialNumber;
+    private final DysonFanOptions options;
+
+    private final SubmissionPublisher<DysonFanEvent> eventPublisher;
+    private final AtomicReference<CachedStatus> cachedStatus = new AtomicReference<>();
+
+    private final Executor commandLane;
+
+    private final Object pendingStateChangeLock = new Object();
+    private PendingStateChange pendingStateChange;
+
+    private final Object offlineStateLock = new Object();
+    private final Map<FanState<?>, BufferedState> offlineStates = new HashMap<>();
+    private final List<CompletableFuture<Void>> offlineStateFutures = new ArrayList<>();
+
+    private final Map<FanState<?>, MqttStateValueProvider> unconfirmedStates = new HashMap<>();
+
+    private final Object connectionStateLock = new Object();
+    private volatile FanConnectionState connectionState = FanConnectionState.DISCONNECTED;
+    private ScheduledFuture<?> reconnectTask;
+    private int reconnectAttempt;
+
+    private final Queue<FanConnectionStateEvent> connectionStateEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean publishingConnectionStateEvents = new AtomicBoolean();
 
     /**
      * Construct a new {@link StandardDysonFan}.
@@ -38,15 +91,43 @@ public final class StandardDysonFan implements DysonFan {
      * @param model the fan's model
      * @param address the address at which the Dyson fan may be located
      * @param credentials the fan credentials (as found on the fan's sticker or manual)
+     * @param options the options with which to configure this fan
      */
-    public StandardDysonFan(@NotNull FanModel model, @NotNull InetAddress address, @NotNull DysonFanCredentials credentials) {
+    public StandardDysonFan(@NotNull FanModel model, @NotNull InetAddress address, @NotNull DysonFanCredentials credentials, @NotNull DysonFanOptions options) {
         Preconditions.checkArgument(model != null, "model must not be null");
         Preconditions.checkArgument(address != null, "address must not be null");
         Preconditions.checkArgument(credentials != null, "credentials must not be null");
+        Preconditions.checkArgument(options != null, "options must not be null");
 
         this.model = model;
         this.address = address;
-        this.mqttConnectionSupplier = () -> new FanMqttConnectionHandler(this, credentials);
+        this.serialNumber = credentials.getUsername();
+        this.options = options;
+        this.eventPublisher = new SubmissionPublisher<>(options.getEventExecutor(), options.getEventBufferCapacity());
+        this.commandLane = new SerialExecutor(options.getCompletionExecutor());
+        this.mqttConnectionSupplier = () -> {
+            FanMqttConnectionHandler connection = new FanMqttConnectionHandler(this, credentials, options);
+            connection.addMessageListener(this::handleMessage);
+            connection.setConnectionLostListener(this::handleConnectionLost);
+            return connection;
+        };
+
+        if (options.isEagerConnectionHandler()) {
+            FanMqttConnectionHandler connection = mqttConnectionSupplier.get();
+            this.mqttConnection = connection;
+            this.mqttConnectionFuture.set(CompletableFuture.completedFuture(connection));
+        }
+    }
+
+    /**
+     * Construct a new {@link StandardDysonFan} with the {@link DysonFanOptions#defaults() default options}.
+     *
+     * @param model the fan's model
+     * @param address the address at which the Dyson fan may be located
+     * @param credentials the fan credentials (as found on the fan's sticker or manual)
+     */
+    public StandardDysonFan(@NotNull FanModel model, @NotNull InetAddress address, @NotNull DysonFanCredentials credentials) {
+        this(model, address, credentials, DysonFanOptions.defaults());
     }
 
     @Override
@@ -54,16 +135,209 @@ public final class StandardDysonFan implements DysonFan {
         Preconditions.checkArgument(timeout > 0, "timeout must be > 0");
         Preconditions.checkArgument(unit != null, "unit must not be null");
 
-        return getConnectionHandler().thenCompose(connection -> connection.connect(timeout, unit))
+        return options.getAdmissionController().submit(hasQueuedCommands(), () -> getConnectionHandler().thenCompose(connection -> connection.connect(timeout, unit)))
                 .exceptionally(e -> {
                     throw new DysonConnectionException("Could not connect to Dyson fan", e);
                 })
-                .thenApply(ignore -> this);
+                .thenApply(ignore -> {
+                    synchronized (connectionStateLock) {
+                        this.cancelReconnect();
+                        this.setConnectionState(FanConnectionState.CONNECTED, 0, null);
+                    }
+
+                    this.publishConnectionStateEvents();
+                    this.flushOfflineStates();
+
+                    // Seed the cached status
+                    this.refreshCachedStatus();
+                    return this;
+                });
+    }
+
+    @Override
+    public FanConnectionState getConnectionState() {
+        return connectionState;
+    }
+
+    private void handleConnectionLost(Throwable cause) {
+        synchronized (connectionStateLock) {
+            if (connectionState != FanConnectionState.CONNECTED) {
+                return;
+            }
+
+            this.reconnectAttempt = 0;
+            this.scheduleReconnect(cause);
+        }
+
+        this.publishConnectionStateEvents();
+
+        // Anything sent may have been lost with the connection
+        this.clearUnconfirmedStates();
+    }
+
+    // Must be called while holding the connection state lock
+    private void scheduleReconnect(Throwable cause) {
+        ReconnectPolicy reconnectPolicy = options.getReconnectPolicy();
+        int attempt = ++reconnectAttempt;
+
+        if (!reconnectPolicy.canAttempt(attempt)) {
+            this.setConnectionState(FanConnectionState.DISCONNECTED, 0, cause);
+            return;
+        }
+
+        this.setConnectionState(FanConnectionState.RECONNECTING, attempt, cause);
+        this.reconnectTask = options.getScheduler().schedule(() -> reconnect(attempt), reconnectPolicy.getDelay(attempt).toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Resolving the address may block, so it's done on the connection executor rather than the shared scheduler. If the
+     * fan has moved, the connection handler bound to its old address is destroyed and a new one created on demand. The
+     * connection state is checked again once the attempt completes as the fan may have been disconnected in the meantime.
+     */
+    private void reconnect(int attempt) {
+        Duration timeout = options.getResponseTimeout();
+
+        options.getAdmissionController().submit(hasQueuedCommands(), () -> CompletableFuture.runAsync(this::resolveAddress, options.getConnectionExecutor())
+                .thenCompose(ignore -> getConnectionHandler())
+                .thenCompose(connection -> connection.connect((int) Math.max(1, timeout.toSeconds()), TimeUnit.SECONDS)))
+                .whenComplete((ignore, e) -> {
+                    boolean reconnected = completeReconnect(attempt, e);
+                    this.publishConnectionStateEvents();
+
+                    if (!reconnected) {
+                        return;
+                    }
+
+                    this.flushOfflineStates();
+
+                    // We may have missed any number of state changes while disconnected
+                    this.refreshCachedStatus();
+                });
+    }
+
+    // Returns true if the fan is now connected, false if the attempt failed or was superseded
+    private boolean completeReconnect(int attempt, Throwable e) {
+        synchronized (connectionStateLock) {
+            if (connectionState != FanConnectionState.RECONNECTING || reconnectAttempt != attempt) {
+                // Disconnected (or connected manually) while this attempt was in progress
+                FanMqttConnectionHandler connection = mqttConnection;
+                if (e == null && connectionState == FanConnectionState.DISCONNECTED && connection != null) {
+                    connection.disconnect(false);
+                }
+
+                return false;
+            }
+
+            this.reconnectTask = null;
+
+            if (e != null) {
+                this.scheduleReconnect((e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+                return false;
+            }
+
+            this.reconnectAttempt = 0;
+            this.setConnectionState(FanConnectionState.CONNECTED, 0, null);
+            return true;
+        }
+    }
+
+    /*
+     * The response is cached as it's received, so there's nothing to handle here. The connection may have been lost again
+     * already, in which case the status is requested once reconnected, but that must not fail the connection just made.
+     */
+    private void refreshCachedStatus() {
+        try {
+            this.requestCurrentState().exceptionally(e -> null);
+        } catch (DysonConnectionException e) {
+            // Nothing to refresh until reconnected
+        }
+    }
+
+    // Whether or not commands are waiting to be sent, giving this fan priority when connecting
+    private boolean hasQueuedCommands() {
+        synchronized (pendingStateChangeLock) {
+            if (pendingStateChange != null) {
+                return true;
+            }
+        }
+
+        synchronized (offlineStateLock) {
+            if (!offlineStates.isEmpty()) {
+                return true;
+            }
+        }
+
+        FanMqttConnectionHandler connection = mqttConnection;
+        return connection != null && connection.getPendingMessages() > 0;
+    }
+
+    private void resolveAddress() {
+        InetAddress resolvedAddress;
+        try {
+            resolvedAddress = options.getAddressResolver().resolve(this);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+
+        if (resolvedAddress == null || resolvedAddress.equals(address)) {
+            return;
+        }
+
+        this.address = resolvedAddress;
+
+        FanMqttConnectionHandler previousConnection = mqttConnection;
+        this.mqttConnectionFuture.set(null);
+        this.mqttConnection = null;
+
+        if (previousConnection != null) {
+            previousConnection.setConnectionLostListener(null);
+            previousConnection.disconnect(true).exceptionally(e -> null);
+        }
+    }
+
+    // Must be called while holding the connection state lock
+    private void cancelReconnect() {
+        this.reconnectAttempt = 0;
+
+        if (reconnectTask != null) {
+            this.reconnectTask.cancel(false);
+            this.reconnectTask = null;
+        }
+    }
+
+    // Must be called while holding the connection state lock. The event is published by publishConnectionStateEvents()
+    private void setConnectionState(FanConnectionState newState, int attempt, Throwable cause) {
+        FanConnectionState previousState = connectionState;
+        if (previousState == newState && newState != FanConnectionState.RECONNECTING) {
+            return;
+        }
+
+        this.connectionState = newState;
+        this.connectionStateEvents.add(new FanConnectionStateEvent(this, Instant.now(), previousState, newState, attempt, cause));
+    }
+
+    /*
+     * Must be called after releasing the connection state lock. Publishing may block on slow subscribers (depending on the
+     * overflow policy), which must not hold up every other connection state change. Events are recorded in order under the
+     * lock and published by one thread at a time, so a thread finding another already publishing leaves its events to it.
+     */
+    private void publishConnectionStateEvents() {
+        while (!connectionStateEvents.isEmpty() && publishingConnectionStateEvents.compareAndSet(false, true)) {
+            try {
+                FanConnectionStateEvent event;
+                while ((event = connectionStateEvents.poll()) != null) {
+                    this.publishEvent(event);
+                }
+            } finally {
+                this.publishingConnectionStateEvents.set(false);
+            }
+        }
     }
 
     @Override
     public boolean isConnected() {
-        return mqttConnection != null && mqttConnection.isConnected();
+        FanMqttConnectionHandler connection = mqttConnection;
+        return connection != null && connection.isConnected();
     }
 
     @Override
@@ -76,6 +350,11 @@ public final class StandardDysonFan implements DysonFan {
         return address;
     }
 
+    @Override
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
     @Override
     public boolean supportsFeature(FanState<?> state) {
         Preconditions.checkArgument(state != null, "state must not be null");
@@ -87,104 +366,693 @@ public final class StandardDysonFan implements DysonFan {
         Preconditions.checkArgument(state != null, "state must not be null");
         Preconditions.checkArgument(value != null, "value must not be null");
 
-        if (!isConnected()) {
+        this.checkSupported(state);
+
+        if (!isConnected() && options.getOfflineBufferDeadline().isZero()) {
+            throw new DysonConnectionException("Not connected to Dyson fan.");
+        }
+
+        return sendStateChangeIfChanged(Map.of(state, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> setState(Consumer<MultiStateChange> change) {
+        Preconditions.checkArgument(change != null, "change must not be null");
+
+        if (!isConnected() && options.getOfflineBufferDeadline().isZero()) {
             throw new DysonConnectionException("Not connected to Dyson fan.");
         }
 
-        if (!model.supportsFeature(state)) {
+        Map<FanState<?>, MqttStateValueProvider> values = collectStates(change);
+        if (values.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
-        return getConnectionHandler().thenCompose(connection -> connection.sendMessage(new DysonMqttMessageSetState(state, value)));
+        return sendStateChangeIfChanged(values);
     }
 
     @Override
-    public CompletableFuture<Void> setState(Consumer<MultiStateChange> change) {
+    public CompletableFuture<Void> setState(StateChange change) {
         Preconditions.checkArgument(change != null, "change must not be null");
 
-        if (!isConnected()) {
+        if (!isConnected() && options.getOfflineBufferDeadline().isZero()) {
             throw new DysonConnectionException("Not connected to Dyson fan.");
         }
 
+        StateChange.CompiledStateChange compiledChange = change.compile(model);
+        if (compiledChange.getStates().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // The precompiled message can only be sent as is if it needn't be buffered, coalesced with or filtered against other changes
+        if (isConnected() && options.getStateCoalescingWindow().isZero() && !options.isSuppressRedundantStateChanges()) {
+            return sendCommand(compiledChange.getMessage(), reserveInFlightSlot());
+        }
+
+        return sendStateChangeIfChanged(compiledChange.getStates());
+    }
+
+    private void checkSupported(FanState<?> state) {
+        Preconditions.checkArgument(model.supportsFeature(state), () -> model.getFriendlyName() + " does not support " + state.getName());
+    }
+
+    private Map<FanState<?>, MqttStateValueProvider> collectStates(Consumer<MultiStateChange> change) {
         StandardMultiStateChange standardChange = new StandardMultiStateChange();
         change.accept(standardChange);
 
-        // Remove any unsupported states
-        standardChange.states.keySet().removeIf(state -> !model.supportsFeature(state));
+        // Check every state's support in one go
+        FanStateSet states = FanStateSet.fromBitMask(standardChange.stateMask);
+        FanStateSet unsupportedStates = states.difference(model.supportedStates());
+        Preconditions.checkArgument(unsupportedStates.isEmpty(), () -> model.getFriendlyName() + " does not support " + unsupportedStates.stream().map(FanState::getName).collect(Collectors.joining(", ")));
 
-        return getConnectionHandler().thenCompose(connection -> connection.sendMessage(new DysonMqttMessageSetState(standardChange.states)));
+        Map<FanState<?>, MqttStateValueProvider> values = new HashMap<>();
+        states.forEach(state -> values.put(state, standardChange.values[state.getOrdinal()]));
+        return values;
     }
 
     @Override
-    public CompletableFuture<DeviceStatus> requestCurrentState() {
+    public <T extends MqttStateValueProvider> CompletableFuture<DeviceStatus> setStateConfirmed(FanState<T> state, T value) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+        Preconditions.checkArgument(value != null, "value must not be null");
+
+        this.checkSupported(state);
+
         if (!isConnected()) {
             throw new DysonConnectionException("Not connected to Dyson fan.");
         }
 
-        return getConnectionHandler().thenCompose(connection -> connection.sendMessage(new DysonMqttMessageRequestCurrentState()));
+        return sendStateChangeConfirmed(Map.of(state, value));
     }
 
     @Override
-    public CompletableFuture<EnvironmentalSensorData> requestEnvironmentalSensorData() {
+    public CompletableFuture<DeviceStatus> setStateConfirmed(Consumer<MultiStateChange> change) {
+        Preconditions.checkArgument(change != null, "change must not be null");
+
         if (!isConnected()) {
-            throw new DysonConnectionException("Not connected to Dyson fan");
+            throw new DysonConnectionException("Not connected to Dyson fan.");
+        }
+
+        Map<FanState<?>, MqttStateValueProvider> values = collectStates(change);
+        if (values.isEmpty()) {
+            return getCurrentStatus();
+        }
+
+        return sendStateChangeConfirmed(values);
+    }
+
+    /*
+     * The fan confirms a state change by reporting the states that changed, which are applied on top of the cached status.
+     * The same message updates the cache, but only after its response has been handled, so the cache can't be read back.
+     * Without a cached status to build on (which is only the case until the fan first reports it), the status is requested.
+     */
+    private CompletableFuture<DeviceStatus> sendStateChangeConfirmed(Map<FanState<?>, MqttStateValueProvider> states) {
+        // Reserved before taking the lock, as a slot may only be freed up by a thread that needs it
+        InFlightSlot slot = reserveInFlightSlot();
+
+        CompletableFuture<Map<FanState<?>, MqttStateValueProvider>> future;
+        synchronized (unconfirmedStates) {
+            future = sendCommand(new DysonMqttMessageSetStateConfirmed(states), slot);
+            if (options.isSuppressRedundantStateChanges()) {
+                this.trackUnconfirmedStates(states, future);
+            }
+        }
+
+        return future.thenCompose(newStates -> {
+            CachedStatus status = cachedStatus.get();
+            if (status != null && status.status instanceof DysonDeviceStatus deviceStatus) {
+                return CompletableFuture.completedFuture(deviceStatus.withStates(newStates));
+            }
+
+            return requestCurrentState();
+        });
+    }
+
+    private CompletableFuture<DeviceStatus> getCurrentStatus() {
+        DeviceStatus status = getCachedStatus();
+        return (status != null) ? CompletableFuture.completedFuture(status) : requestCurrentState();
+    }
+
+    /*
+     * Values are compared against those the fan is expected to have once every change already sent has been applied. A
+     * value sent but not yet confirmed by the fan is remembered until the fan next reports that state (or until sending it
+     * fails), otherwise a value that the fan is about to overwrite could be mistaken for its current value. A report of a
+     * different value means the fan did not take the one sent, so it's forgotten all the same and may be sent again. The filtering
+     * and sending happen under the same lock so that the remembered values change in the same order as commands are sent.
+     */
+    private CompletableFuture<Void> sendStateChangeIfChanged(Map<FanState<?>, MqttStateValueProvider> states) {
+        // Reserved before taking the lock, as a slot may only be freed up by a thread that needs it. Coalesced changes are sent later on
+        InFlightSlot slot = options.getStateCoalescingWindow().isZero() ? reserveInFlightSlot() : null;
+
+        if (!options.isSuppressRedundantStateChanges()) {
+            return sendStateChange(states, slot);
+        }
+
+        CachedStatus status = cachedStatus.get();
+        Map<FanState<?>, MqttStateValueProvider> changedStates = new HashMap<>();
+        CompletableFuture<Void> future;
+
+        synchronized (unconfirmedStates) {
+            states.forEach((state, value) -> {
+                MqttStateValueProvider knownValue = unconfirmedStates.containsKey(state) ? unconfirmedStates.get(state) : (status != null) ? status.status.getState(state) : null;
+                if (!value.equals(knownValue)) {
+                    changedStates.put(state, value);
+                }
+            });
+
+            if (changedStates.isEmpty()) {
+                releaseSlot(slot);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            future = sendStateChange(changedStates, slot);
+            this.trackUnconfirmedStates(changedStates, future);
+        }
+
+        return future;
+    }
+
+    // Must be called while holding the unconfirmed states lock, in the same order as the states are sent
+    private void trackUnconfirmedStates(Map<FanState<?>, MqttStateValueProvider> states, CompletableFuture<?> future) {
+        this.unconfirmedStates.putAll(states);
+
+        future.whenComplete((ignore, e) -> {
+            if (e != null) {
+                synchronized (unconfirmedStates) {
+                    states.forEach(unconfirmedStates::remove);
+                }
+            }
+        });
+    }
+
+    private void clearUnconfirmedStates() {
+        synchronized (unconfirmedStates) {
+            this.unconfirmedStates.clear();
+        }
+    }
+
+    private CompletableFuture<Void> sendStateChange(Map<FanState<?>, MqttStateValueProvider> states, InFlightSlot slot) {
+        if (!isConnected() && !options.getOfflineBufferDeadline().isZero()) {
+            releaseSlot(slot);
+            return bufferOfflineStates(states);
+        }
+
+        Duration coalescingWindow = options.getStateCoalescingWindow();
+        if (coalescingWindow.isZero()) {
+            return sendCommand(new DysonMqttMessageSetState(states), slot);
+        }
+
+        /*
+         * Buffer the change until the coalescing window has elapsed. Changes made within the same window are merged into
+         * a single message where the last change to each state wins, and every caller is completed once it's been sent.
+         */
+        synchronized (pendingStateChangeLock) {
+            if (pendingStateChange == null) {
+                this.pendingStateChange = new PendingStateChange();
+                this.options.getScheduler().schedule(this::flushPendingStateChange, coalescingWindow.toNanos(), TimeUnit.NANOSECONDS);
+            }
+
+            this.pendingStateChange.states.putAll(states);
+            return pendingStateChange.future.copy();
+        }
+    }
+
+    private void flushPendingStateChange() {
+        PendingStateChange stateChange;
+        synchronized (pendingStateChangeLock) {
+            stateChange = pendingStateChange;
+            this.pendingStateChange = null;
+        }
+
+        if (stateChange == null) {
+            return;
         }
 
-        return getConnectionHandler().thenCompose(connection -> connection.sendMessage(new DysonMqttMessageRequestEnvironmentalSensorData()));
+        this.sendCommand(new DysonMqttMessageSetState(stateChange.states), null).whenComplete((result, e) -> {
+            if (e != null) {
+                stateChange.future.completeExceptionally(e);
+            } else {
+                stateChange.future.complete(result);
+            }
+        });
+    }
+
+    /*
+     * While not connected, only the latest value of each state is kept along with the time at which it expires. Every
+     * caller's future times out on its own once the deadline elapses, and any state that has not been overwritten since
+     * expires alongside it. Because the buffer holds at most one value per state, it can never grow beyond the amount
+     * of states a fan supports no matter how many changes are made during an outage.
+     */
+    private CompletableFuture<Void> bufferOfflineStates(Map<FanState<?>, MqttStateValueProvider> states) {
+        Duration deadline = options.getOfflineBufferDeadline();
+        long expiresAt = System.nanoTime() + deadline.toNanos();
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (offlineStateLock) {
+            states.forEach((state, value) -> offlineStates.put(state, new BufferedState(value, expiresAt)));
+            this.offlineStateFutures.removeIf(CompletableFuture::isDone);
+            this.offlineStateFutures.add(future);
+        }
+
+        future.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+
+        // The fan may have connected (and flushed the buffer) after we checked, in which case nothing else will flush it
+        if (isConnected()) {
+            this.flushOfflineStates();
+        }
+
+        return future;
+    }
+
+    // Sends every buffered state that has not yet expired as a single message
+    private void flushOfflineStates() {
+        Map<FanState<?>, MqttStateValueProvider> states = new HashMap<>();
+        List<CompletableFuture<Void>> futures;
+
+        synchronized (offlineStateLock) {
+            if (offlineStates.isEmpty()) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            this.offlineStates.forEach((state, bufferedState) -> {
+                if (bufferedState.expiresAt - now > 0) {
+                    states.put(state, bufferedState.value);
+                }
+            });
+
+            futures = new ArrayList<>(offlineStateFutures);
+            this.offlineStates.clear();
+            this.offlineStateFutures.clear();
+        }
+
+        // Anything left has expired and its callers will time out on their own
+        if (states.isEmpty()) {
+            return;
+        }
+
+        this.sendCommand(new DysonMqttMessageSetState(states), null).whenComplete((result, e) -> {
+            for (CompletableFuture<Void> future : futures) {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(result);
+                }
+            }
+        });
+    }
+
+    private void discardOfflineStates(Throwable cause) {
+        List<CompletableFuture<Void>> futures;
+        synchronized (offlineStateLock) {
+            futures = new ArrayList<>(offlineStateFutures);
+            this.offlineStates.clear();
+            this.offlineStateFutures.clear();
+        }
+
+        futures.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /*
+     * Commands are posted to this fan's command lane, a mailbox drained one command at a time by the shared completion
+     * executor, and are published in the order in which they were posted. Concurrent callers racing to publish directly
+     * could otherwise reach the fan in any order and leave it in the wrong final state. Posting is lock-free, and a fan
+     * with an empty mailbox occupies no thread at all.
+     *
+     * A command sent with a slot reserved in the window of messages in flight is published in that slot. Any slot not
+     * used for the command is released.
+     */
+    private <R> CompletableFuture<R> sendCommand(DysonMqttMessage<R> message, InFlightSlot slot) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+
+        this.commandLane.execute(() -> {
+            if (future.isDone()) {
+                releaseSlot(slot);
+                return;
+            }
+
+            FanMqttConnectionHandler connection = mqttConnection;
+            if (connection == null || !connection.isConnected()) {
+                releaseSlot(slot);
+                future.completeExceptionally(new DysonConnectionException("Not connected to Dyson fan."));
+                return;
+            }
+
+            try {
+                connection.sendMessage(message, options.getResponseTimeout(), slot).whenComplete((result, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            } catch (RuntimeException e) {
+                releaseSlot(slot);
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /*
+     * Under the BLOCK backpressure policy, callers wait for a slot in the window of messages in flight on their own thread
+     * before their message is handed off. Waiting any later would park a thread of the shared completion executor instead.
+     * Returns null under any other policy, or if there's no connection to reserve a slot on.
+     */
+    private InFlightSlot reserveInFlightSlot(FanMqttConnectionHandler connection, Duration timeout) {
+        if (connection == null || !connection.isConnected() || options.getBackpressurePolicy() != BackpressurePolicy.BLOCK) {
+            return null;
+        }
+
+        return connection.reserveInFlightSlot(timeout);
+    }
+
+    private InFlightSlot reserveInFlightSlot() {
+        return reserveInFlightSlot(mqttConnection, options.getResponseTimeout());
+    }
+
+    private static void releaseSlot(InFlightSlot slot) {
+        if (slot != null) {
+            slot.release();
+        }
+    }
+
+    // The connection handler is read once as reconnecting may replace or clear it at any time
+    private FanMqttConnectionHandler getConnectedHandler() {
+        FanMqttConnectionHandler connection = mqttConnection;
+        if (connection == null || !connection.isConnected()) {
+            throw new DysonConnectionException("Not connected to Dyson fan.");
+        }
+
+        return connection;
+    }
+
+    @Override
+    public CompletableFuture<DeviceStatus> requestCurrentState(Duration timeout) {
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+
+        /*
+         * Returning the connection handler's future directly allows cancellation to propagate. The request is coalesced, so
+         * at most one is ever in flight and it's never worth blocking for under the BLOCK policy. It's queued if need be.
+         */
+        return getConnectedHandler().sendMessage(new DysonMqttMessageRequestCurrentState(), timeout);
+    }
+
+    @Override
+    public CompletableFuture<DeviceStatus> requestCurrentState() {
+        return requestCurrentState(options.getResponseTimeout());
+    }
+
+    @Override
+    public CompletableFuture<EnvironmentalSensorData> requestEnvironmentalSensorData(Duration timeout) {
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+
+        // Coalesced as well, so never blocked for
+        return getConnectedHandler().sendMessage(new DysonMqttMessageRequestEnvironmentalSensorData(), timeout);
+    }
+
+    @Override
+    public CompletableFuture<EnvironmentalSensorData> requestEnvironmentalSensorData() {
+        return requestEnvironmentalSensorData(options.getResponseTimeout());
+    }
+
+    @Override
+    public CompletableFuture<DeviceSnapshot> requestSnapshot(Duration timeout) {
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+
+        // Both halves must be sent through the same connection handler, even if it's replaced in the meantime
+        FanMqttConnectionHandler connection = getConnectedHandler();
+        InFlightSlot slot = reserveInFlightSlot(connection, timeout);
+
+        /*
+         * The fan responds to a current state request with both its state and its sensor data, so we only need to send one.
+         * It's never coalesced with a request already in flight, as the sensor data sent in response to that request may
+         * have already been received. Both halves are awaited before the request is sent so that neither response is missed.
+         */
+        CompletableFuture<EnvironmentalSensorData> sensorDataFuture = connection.awaitResponse(new DysonMqttMessageRequestEnvironmentalSensorData(false), timeout);
+        CompletableFuture<DeviceStatus> statusFuture;
+        try {
+            statusFuture = connection.sendMessage(new DysonMqttMessageRequestCurrentState(false), timeout, slot);
+        } catch (RuntimeException e) {
+            releaseSlot(slot);
+            sensorDataFuture.cancel(false);
+            throw e;
+        }
+
+        CompletableFuture<DeviceSnapshot> future = statusFuture.thenCombine(sensorDataFuture, DysonDeviceSnapshot::new);
+        future.whenComplete((ignore, e) -> {
+            // If either half failed or the snapshot was cancelled, there's no reason to keep waiting on the other
+            if (e != null) {
+                statusFuture.cancel(false);
+                sensorDataFuture.cancel(false);
+            }
+        });
+
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<DeviceSnapshot> requestSnapshot() {
+        return requestSnapshot(options.getResponseTimeout());
+    }
+
+    @Override
+    public DeviceStatus getCachedStatus() {
+        CachedStatus status = cachedStatus.get();
+        return (status != null) ? status.status : null;
+    }
+
+    @Override
+    public <T extends MqttStateValueProvider> T getCachedState(FanState<T> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+
+        CachedStatus status = cachedStatus.get();
+        return (status != null) ? status.status.getState(state) : null;
+    }
+
+    @Override
+    public Instant getCachedStatusTimestamp() {
+        CachedStatus status = cachedStatus.get();
+        return (status != null) ? status.timestamp : null;
+    }
+
+    @Override
+    public Flow.Publisher<DysonFanEvent> getEventPublisher() {
+        return eventPublisher;
     }
 
     @Override
     public boolean hasPendingMessages() {
-        return isConnected() && mqttConnection.getPendingMessages() > 0;
+        return getPendingMessages() > 0;
     }
 
     @Override
     public int getPendingMessages() {
-        return isConnected() ? mqttConnection.getPendingMessages() : 0;
+        FanMqttConnectionHandler connection = mqttConnection;
+        return (connection != null && connection.isConnected()) ? connection.getPendingMessages() : 0;
     }
 
     @Override
     public CompletableFuture<Void> disconnect(boolean destroy) {
-        if (!isConnected()) {
-            return CompletableFuture.completedFuture(null);
+        synchronized (connectionStateLock) {
+            this.cancelReconnect();
+            this.setConnectionState(FanConnectionState.DISCONNECTED, 0, null);
         }
 
-        return mqttConnection.disconnect(destroy).exceptionally(e -> {
-            throw new DysonConnectionException("Could not disconnect from fan", e);
-        });
+        this.publishConnectionStateEvents();
+
+        this.discardOfflineStates(new DysonConnectionException("Disconnected from Dyson fan before buffered state changes were sent"));
+        this.clearUnconfirmedStates();
+
+        FanMqttConnectionHandler connection = mqttConnection;
+        CompletableFuture<Void> future;
+        if (connection != null && connection.isConnected()) {
+            future = connection.disconnect(destroy).exceptionally(e -> {
+                throw new DysonConnectionException("Could not disconnect from fan", e);
+            });
+        } else if (connection != null && destroy) {
+            // Not connected (such as while reconnecting or after failing to connect), but the handler must still be destroyed
+            future = connection.disconnect(true).exceptionally(e -> null);
+        } else {
+            future = CompletableFuture.completedFuture(null);
+        }
+
+        if (destroy) {
+            future = future.whenComplete((ignore, e) -> eventPublisher.close());
+        }
+
+        return future;
     }
 
-    private CompletableFuture<FanMqttConnectionHandler> getConnectionHandler() {
-        if (mqttConnection != null) {
-            return CompletableFuture.completedFuture(mqttConnection);
+    private void handleMessage(DysonMqttIncomingMessage message) {
+        DysonFanEvent event = decodeEvent(message);
+        if (event == null) {
+            return;
+        }
+
+        this.updateCachedStatus(event);
+        this.publishEvent(event);
+    }
+
+    private void publishEvent(DysonFanEvent event) {
+        if (!eventPublisher.hasSubscribers() || eventPublisher.isClosed()) {
+            return;
+        }
+
+        switch (options.getEventOverflowPolicy()) {
+            case DROP -> this.eventPublisher.offer(event, null);
+            case BLOCK -> this.eventPublisher.submit(event);
+        }
+    }
+
+    private void updateCachedStatus(DysonFanEvent event) {
+        if (event instanceof FanStatusEvent statusEvent) {
+            this.cachedStatus.set(new CachedStatus(statusEvent.getStatus(), event.getTimestamp()));
+            this.confirmStates(state -> statusEvent.getStatus().getState(state));
+        } else if (event instanceof FanStateChangeEvent stateChangeEvent) {
+            this.confirmStates(state -> stateChangeEvent.getStates().contains(state) ? stateChangeEvent.getNewValue(state) : null);
+            // State changes can only be applied on top of a full status. Until we have one, there's nothing to patch
+            this.cachedStatus.updateAndGet(status -> {
+                if (status == null || !(status.status instanceof DysonDeviceStatus deviceStatus)) {
+                    return status;
+                }
+
+                Map<FanState<?>, MqttStateValueProvider> newStates = new HashMap<>();
+                stateChangeEvent.getStates().forEach(state -> newStates.put(state, stateChangeEvent.getNewValue(state)));
+                return new CachedStatus(deviceStatus.withStates(newStates), event.getTimestamp());
+            });
+        }
+    }
+
+    // Forgets every unconfirmed value whose state the fan has now reported, whether or not it reported that value
+    private void confirmStates(Function<FanState<?>, MqttStateValueProvider> reportedValues) {
+        synchronized (unconfirmedStates) {
+            this.unconfirmedStates.keySet().removeIf(state -> reportedValues.apply(state) != null);
         }
+    }
+
+    private DysonFanEvent decodeEvent(DysonMqttIncomingMessage message) {
+        Instant now = Instant.now();
+        String messageId = message.getMessageId();
+
+        if (DysonMqttMessageDecoder.MESSAGE_ID_STATE_CHANGE.equals(messageId)) {
+            return new FanStateChangeEvent(this, now, message.getPreviousStates(), message.getNewStates());
+        } else if (DysonMqttMessageDecoder.MESSAGE_ID_CURRENT_STATE.equals(messageId) && message.getDeviceStatus() != null) {
+            return new FanStatusEvent(this, now, message.getDeviceStatus());
+        } else if (DysonMqttMessageDecoder.MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA.equals(messageId) && message.getSensorData() != null) {
+            return new FanSensorDataEvent(this, now, message.getSensorData());
+        }
+
+        return null;
+    }
+
+    /*
+     * Only one connection handler may ever exist at a time, so the first caller to find none installs a future which every
+     * concurrent caller shares. The handler's constructor may block (the default transport builds its MQTT client there),
+     * so it's run on the connection executor rather than on the caller's thread or the common pool. A failed creation is
+     * replaced by the next caller.
+     */
+    private CompletableFuture<FanMqttConnectionHandler> getConnectionHandler() {
+        while (true) {
+            CompletableFuture<FanMqttConnectionHandler> future = mqttConnectionFuture.get();
+            if (future != null && !future.isCompletedExceptionally()) {
+                return future;
+            }
+
+            CompletableFuture<FanMqttConnectionHandler> newFuture = new CompletableFuture<>();
+            if (!mqttConnectionFuture.compareAndSet(future, newFuture)) {
+                continue;
+            }
 
-        return CompletableFuture.supplyAsync(() -> {
             try {
-                return (mqttConnection = mqttConnectionSupplier.get());
-            } catch (MqttException e) {
-                throw new CompletionException(e);
+                this.options.getConnectionExecutor().execute(() -> {
+                    try {
+                        FanMqttConnectionHandler connection = mqttConnectionSupplier.get();
+                        this.mqttConnection = connection;
+                        newFuture.complete(connection);
+                    } catch (RuntimeException e) {
+                        newFuture.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                newFuture.completeExceptionally(e);
             }
-        });
+
+            return newFuture;
+        }
+    }
+
+    private static final class PendingStateChange {
+
+        private final Map<FanState<?>, MqttStateValueProvider> states = new HashMap<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
     }
 
-    private final class StandardMultiStateChange implements MultiStateChange {
+    private static final class BufferedState {
+
+        private final MqttStateValueProvider value;
+        private final long expiresAt;
+
+        private BufferedState(MqttStateValueProvider value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+    }
 
-        private Map<FanState<?>, MqttStateValueProvider> states = null;
+    private static final class CachedStatus {
+
+        private final DeviceStatus status;
+        private final Instant timestamp;
+
+        private CachedStatus(DeviceStatus status, Instant timestamp) {
+            this.status = status;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+    private static final class DysonDeviceSnapshot implements DeviceSnapshot {
+
+        private final DeviceStatus status;
+        private final EnvironmentalSensorData sensorData;
+
+        private DysonDeviceSnapshot(DeviceStatus status, EnvironmentalSensorData sensorData) {
+            this.status = status;
+            this.sensorData = sensorData;
+        }
+
+        @Override
+        public DeviceStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public EnvironmentalSensorData getSensorData() {
+            return sensorData;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("DysonDeviceSnapshot[status=%s, sensorData=%s]", status, sensorData);
+        }
+
+    }
+
+    private static final class StandardMultiStateChange implements MultiStateChange {
+
+        private final MqttStateValueProvider[] values = new MqttStateValueProvider[FanState.values().size()];
+        private long stateMask;
 
         @Override
         public <T extends MqttStateValueProvider> MultiStateChange setState(FanState<T> state, T value) {
             Preconditions.checkArgument(state != null, "state must not be null");
             Preconditions.checkArgument(value != null, "value must not be null");
 
-            if (model.supportsFeature(state)) {
-                if (states == null) {
-                    this.states = new HashMap<>();
-                }
-
-                this.states.put(state, value);
-            }
-
+            // Support is checked once for all states when the change is sent
+            this.values[state.getOrdinal()] = value;
+            this.stateMask |= 1L << state.getOrdinal();
             return this;
         }
 
@@ -0,0 +1,181 @@
+package wtf.choco.dyson4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageSetState;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.FanStateSet;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An immutable, reusable set of state changes, such as a "scene" applied to many fans or many
+ * times over. Instances of this class are created with a {@link #builder() builder} and applied
+ * with {@link DysonFan#setState(StateChange)} or {@link #applyTo(Iterable)}.
+ * <p>
+ * The first time a state change is applied to a fan of a given {@link FanModel}, the states not
+ * {@link FanModel#supportsFeature(FanState) supported} by that model are discarded and the
+ * message to send is encoded ahead of time. Every subsequent application to a fan of the same
+ * model reuses that message, only writing the time at which it is sent.
+ */
+public final class StateChange {
+
+    private final FanStateSet states;
+    private final MqttStateValueProvider[] values;
+    private final AtomicReferenceArray<CompiledStateChange> compiledStateChanges = new AtomicReferenceArray<>(FanModel.values().length);
+
+    private StateChange(Builder builder) {
+        this.states = FanStateSet.fromBitMask(builder.stateMask);
+        this.values = Arrays.copyOf(builder.values, builder.values.length);
+    }
+
+    /**
+     * Get the states changed by this state change.
+     *
+     * @return the changed states
+     */
+    @NotNull
+    public FanStateSet getStates() {
+        return states;
+    }
+
+    /**
+     * Get the value to which the given state is changed.
+     *
+     * @param <T> the state's value type
+     * @param state the state whose value to get
+     *
+     * @return the value, or null if the state is not changed by this state change
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T extends MqttStateValueProvider> T getValue(@NotNull FanState<T> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+        return (T) values[state.getOrdinal()];
+    }
+
+    /**
+     * Apply this state change to every given fan. Each fan is sent the states supported by its
+     * model, and the failure of one fan does not prevent any other from being sent its states.
+     *
+     * @param fans the fans to which this state change should be applied
+     *
+     * @return a completable future, completed when the states have been sent to every fan. If
+     * any fan failed, the future is completed exceptionally once every other fan has completed
+     *
+     * @see DysonFan#setState(StateChange)
+     */
+    @NotNull
+    public CompletableFuture<Void> applyTo(@NotNull Iterable<? extends @NotNull DysonFan> fans) {
+        Preconditions.checkArgument(fans != null, "fans must not be null");
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (DysonFan fan : fans) {
+            try {
+                futures.add(fan.setState(this));
+            } catch (RuntimeException e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    // Compiled at most once per model. Racing threads may both compile it, but will produce identical results
+    CompiledStateChange compile(FanModel model) {
+        CompiledStateChange compiledStateChange = compiledStateChanges.get(model.ordinal());
+        if (compiledStateChange != null) {
+            return compiledStateChange;
+        }
+
+        Map<FanState<?>, MqttStateValueProvider> supportedStates = new HashMap<>();
+        states.intersect(model.supportedStates()).forEach(state -> supportedStates.put(state, values[state.getOrdinal()]));
+
+        DysonMqttMessageSetState message = supportedStates.isEmpty() ? null : new DysonMqttMessageSetState(supportedStates).precompile();
+        compiledStateChange = new CompiledStateChange(Collections.unmodifiableMap(supportedStates), message);
+        return compiledStateChanges.compareAndSet(model.ordinal(), null, compiledStateChange) ? compiledStateChange : compiledStateChanges.get(model.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "StateChange[", "]");
+        states.forEach(state -> joiner.add(state.getId() + "=" + values[state.getOrdinal()].getStateValue()));
+        return joiner.toString();
+    }
+
+    /**
+     * Get a new {@link Builder}.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    static final class CompiledStateChange {
+
+        private final Map<FanState<?>, MqttStateValueProvider> states;
+        private final DysonMqttMessageSetState message;
+
+        private CompiledStateChange(Map<FanState<?>, MqttStateValueProvider> states, DysonMqttMessageSetState message) {
+            this.states = states;
+            this.message = message;
+        }
+
+        Map<FanState<?>, MqttStateValueProvider> getStates() {
+            return states;
+        }
+
+        DysonMqttMessageSetState getMessage() {
+            return message;
+        }
+
+    }
+
+    /**
+     * A builder for {@link StateChange} instances.
+     */
+    public static final class Builder implements MultiStateChange {
+
+        private final MqttStateValueProvider[] values = new MqttStateValueProvider[FanState.values().size()];
+        private long stateMask;
+
+        private Builder() { }
+
+        @NotNull
+        @Override
+        public <T extends MqttStateValueProvider> Builder setState(@NotNull FanState<T> state, @NotNull T value) {
+            Preconditions.checkArgument(state != null, "state must not be null");
+            Preconditions.checkArgument(value != null, "value must not be null");
+
+            this.values[state.getOrdinal()] = value;
+            this.stateMask |= 1L << state.getOrdinal();
+            return this;
+        }
+
+        /**
+         * Build the {@link StateChange}. The builder may continue to be used afterwards without
+         * affecting the built state change.
+         *
+         * @return the state change
+         */
+        @NotNull
+        public StateChange build() {
+            return new StateChange(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package wtf.choco.dyson4j.event;
+
+import java.time.Instant;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.DysonFan;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Represents an event published by a {@link DysonFan}.
+ *
+ * @see DysonFan#getEventPublisher()
+ */
+public abstract class DysonFanEvent {
+
+    private final DysonFan fan;
+    private final Instant timestamp;
+
+    /**
+     * Construct a new {@link DysonFanEvent}.
+     *
+     * @param fan the fan that published this event
+     * @param timestamp the time at which this event occurred
+     */
+    protected DysonFanEvent(@NotNull DysonFan fan, @NotNull Instant timestamp) {
+        Preconditions.checkArgument(fan != null, "fan must not be null");
+        Preconditions.checkArgument(timestamp != null, "timestamp must not be null");
+
+        this.fan = fan;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Get the {@link DysonFan} that published this event.
+     *
+     * @return the fan
+     */
+    @NotNull
+    public final DysonFan getFan() {
+        return fan;
+    }
+
+    /**
+     * Get the time at which this event occurred.
+     *
+     * @return the timestamp
+     */
+    @NotNull
+    public final Instant getTimestamp() {
+        return timestamp;
+    }
+
+}
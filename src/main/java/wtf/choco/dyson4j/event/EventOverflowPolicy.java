@@ -0,0 +1,29 @@
+package wtf.choco.dyson4j.event;
+
+import wtf.choco.dyson4j.DysonFanOptions;
+
+/**
+ * A policy determining how events should be handled when a subscriber to a fan's events
+ * is not consuming them fast enough and its buffer is full.
+ *
+ * @see DysonFanOptions.Builder#eventOverflowPolicy(EventOverflowPolicy)
+ */
+public enum EventOverflowPolicy {
+
+    /**
+     * The event will not be delivered to any subscriber whose buffer is full. Subscribers
+     * with room in their buffer are unaffected. This will never block the thread on which
+     * messages received from the fan are handled.
+     */
+    DROP,
+
+    /**
+     * The thread on which messages received from the fan are handled will block until every
+     * subscriber has room in its buffer for the event. No events are lost, but a slow subscriber
+     * will delay the handling of all further messages from the fan. Messages are handled on the
+     * fan's {@link wtf.choco.dyson4j.DysonFanOptions#getCompletionExecutor() completion executor},
+     * so other fans are unaffected unless they share an exhausted executor.
+     */
+    BLOCK;
+
+}
@@ -0,0 +1,92 @@
+package wtf.choco.dyson4j.event;
+
+import java.time.Instant;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.DysonFan;
+import wtf.choco.dyson4j.FanConnectionState;
+import wtf.choco.dyson4j.ReconnectPolicy;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Called when the {@link FanConnectionState} of a {@link DysonFan} changes, as well as before
+ * every attempt made to reconnect to the fan as per its {@link ReconnectPolicy}.
+ */
+public final class FanConnectionStateEvent extends DysonFanEvent {
+
+    private final FanConnectionState previousState, newState;
+    private final int attempt;
+    private final Throwable cause;
+
+    /**
+     * Construct a new {@link FanConnectionStateEvent}.
+     *
+     * @param fan the fan that published this event
+     * @param timestamp the time at which this event occurred
+     * @param previousState the connection state before this event
+     * @param newState the connection state after this event
+     * @param attempt the reconnect attempt about to be made, or 0 if not reconnecting
+     * @param cause the reason for which the connection was lost or a reconnect attempt failed,
+     * if any
+     */
+    public FanConnectionStateEvent(@NotNull DysonFan fan, @NotNull Instant timestamp, @NotNull FanConnectionState previousState, @NotNull FanConnectionState newState, int attempt, @Nullable Throwable cause) {
+        super(fan, timestamp);
+        Preconditions.checkArgument(previousState != null, "previousState must not be null");
+        Preconditions.checkArgument(newState != null, "newState must not be null");
+        Preconditions.checkArgument(attempt >= 0, "attempt must not be negative");
+
+        this.previousState = previousState;
+        this.newState = newState;
+        this.attempt = attempt;
+        this.cause = cause;
+    }
+
+    /**
+     * Get the connection state before this event.
+     *
+     * @return the previous state
+     */
+    @NotNull
+    public FanConnectionState getPreviousState() {
+        return previousState;
+    }
+
+    /**
+     * Get the connection state after this event.
+     *
+     * @return the new state
+     */
+    @NotNull
+    public FanConnectionState getNewState() {
+        return newState;
+    }
+
+    /**
+     * Get the reconnect attempt about to be made, starting at 1. If the new state is not
+     * {@link FanConnectionState#RECONNECTING}, this is 0.
+     *
+     * @return the reconnect attempt
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Get the reason for which the connection was lost or the previous reconnect attempt
+     * failed, if any.
+     *
+     * @return the cause, or null if none
+     */
+    @Nullable
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FanConnectionStateEvent[fan=%s, timestamp=%s, previousState=%s, newState=%s, attempt=%s, cause=%s]", getFan().getAddress(), getTimestamp(), previousState, newState, attempt, cause);
+    }
+
+}
@@ -0,0 +1,48 @@
+package wtf.choco.dyson4j.event;
+
+import java.time.Instant;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.DysonFan;
+import wtf.choco.dyson4j.EnvironmentalSensorData;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Called when a {@link DysonFan} has sent its {@link EnvironmentalSensorData}, either in
+ * response to a request or periodically on its own accord.
+ */
+public final class FanSensorDataEvent extends DysonFanEvent {
+
+    private final EnvironmentalSensorData sensorData;
+
+    /**
+     * Construct a new {@link FanSensorDataEvent}.
+     *
+     * @param fan the fan that published this event
+     * @param timestamp the time at which this event occurred
+     * @param sensorData the sensor data sent by the fan
+     */
+    public FanSensorDataEvent(@NotNull DysonFan fan, @NotNull Instant timestamp, @NotNull EnvironmentalSensorData sensorData) {
+        super(fan, timestamp);
+        Preconditions.checkArgument(sensorData != null, "sensorData must not be null");
+
+        this.sensorData = sensorData;
+    }
+
+    /**
+     * Get the {@link EnvironmentalSensorData} sent by the fan.
+     *
+     * @return the sensor data
+     */
+    @NotNull
+    public EnvironmentalSensorData getSensorData() {
+        return sensorData;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FanSensorDataEvent[fan=%s, timestamp=%s, sensorData=%s]", getFan().getAddress(), getTimestamp(), sensorData);
+    }
+
+}
@@ -0,0 +1,102 @@
+package wtf.choco.dyson4j.event;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.DysonFan;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Called when one or more of a {@link DysonFan DysonFan's} {@link FanState states} have changed,
+ * either as a result of a state change requested by this library, or by some other means (such
+ * as the fan's remote or another application).
+ */
+public final class FanStateChangeEvent extends DysonFanEvent {
+
+    private final Map<FanState<?>, MqttStateValueProvider> previousStates, newStates;
+
+    /**
+     * Construct a new {@link FanStateChangeEvent}.
+     *
+     * @param fan the fan that published this event
+     * @param timestamp the time at which this event occurred
+     * @param previousStates the values of each changed state before the change
+     * @param newStates the values of each changed state after the change
+     */
+    public FanStateChangeEvent(@NotNull DysonFan fan, @NotNull Instant timestamp, @NotNull Map<FanState<?>, MqttStateValueProvider> previousStates, @NotNull Map<FanState<?>, MqttStateValueProvider> newStates) {
+        super(fan, timestamp);
+        Preconditions.checkArgument(previousStates != null, "previousStates must not be null");
+        Preconditions.checkArgument(newStates != null, "newStates must not be null");
+
+        this.previousStates = new HashMap<>(previousStates);
+        this.newStates = new HashMap<>(newStates);
+    }
+
+    /**
+     * Get an unmodifiable set of all states included in this change. Note that a state may be
+     * included even if its value has not changed. To check whether or not a state's value has
+     * changed, see {@link #hasChanged(FanState)}.
+     *
+     * @return the states included in this change
+     */
+    @NotNull
+    public Set<FanState<?>> getStates() {
+        return Collections.unmodifiableSet(newStates.keySet());
+    }
+
+    /**
+     * Check whether or not the value of the given {@link FanState} was changed.
+     *
+     * @param state the state to check
+     *
+     * @return true if the state's value changed, false otherwise
+     */
+    public boolean hasChanged(@NotNull FanState<?> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+
+        MqttStateValueProvider newValue = newStates.get(state);
+        return newValue != null && !newValue.equals(previousStates.get(state));
+    }
+
+    /**
+     * Get the value of the given {@link FanState} before this change.
+     *
+     * @param <T> the state value type
+     * @param state the state to get
+     *
+     * @return the previous value, or null if the state was not included in this change
+     */
+    @Nullable
+    public <T extends MqttStateValueProvider> T getPreviousValue(@NotNull FanState<T> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+        return state.getValueType().cast(previousStates.get(state));
+    }
+
+    /**
+     * Get the value of the given {@link FanState} after this change.
+     *
+     * @param <T> the state value type
+     * @param state the state to get
+     *
+     * @return the new value, or null if the state was not included in this change
+     */
+    @Nullable
+    public <T extends MqttStateValueProvider> T getNewValue(@NotNull FanState<T> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+        return state.getValueType().cast(newStates.get(state));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FanStateChangeEvent[fan=%s, timestamp=%s, previousStates=%s, newStates=%s]", getFan().getAddress(), getTimestamp(), previousStates, newStates);
+    }
+
+}
@@ -0,0 +1,48 @@
+package wtf.choco.dyson4j.event;
+
+import java.time.Instant;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.DeviceStatus;
+import wtf.choco.dyson4j.DysonFan;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * Called when a {@link DysonFan} has sent its full {@link DeviceStatus}, either in response
+ * to a request or on its own accord.
+ */
+public final class FanStatusEvent extends DysonFanEvent {
+
+    private final DeviceStatus status;
+
+    /**
+     * Construct a new {@link FanStatusEvent}.
+     *
+     * @param fan the fan that published this event
+     * @param timestamp the time at which this event occurred
+     * @param status the status sent by the fan
+     */
+    public FanStatusEvent(@NotNull DysonFan fan, @NotNull Instant timestamp, @NotNull DeviceStatus status) {
+        super(fan, timestamp);
+        Preconditions.checkArgument(status != null, "status must not be null");
+
+        this.status = status;
+    }
+
+    /**
+     * Get the {@link DeviceStatus} sent by the fan.
+     *
+     * @return the status
+     */
+    @NotNull
+    public DeviceStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FanStatusEvent[fan=%s, timestamp=%s, status=%s]", getFan().getAddress(), getTimestamp(), status);
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Events published by a Dyson fan as it sends messages to its subscribers. All classes in
+ * this package are considered API.
+ */
+package wtf.choco.dyson4j.event;
@@ -0,0 +1,25 @@
+package wtf.choco.dyson4j.exception;
+
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.BackpressurePolicy;
+import wtf.choco.dyson4j.DysonFan;
+
+/**
+ * Thrown when a message could not be sent to a {@link DysonFan} because too many messages are
+ * already in flight or queued, as per the fan's {@link BackpressurePolicy}.
+ */
+public class DysonBackpressureException extends DysonConnectionException {
+
+    private static final long serialVersionUID = 2874610284175342931L;
+
+    /**
+     * Construct a new {@link DysonBackpressureException}.
+     *
+     * @param message the message to provide
+     */
+    public DysonBackpressureException(@Nullable String message) {
+        super(message);
+    }
+
+}
@@ -1,34 +1,48 @@
 package wtf.choco.dyson4j.mqtt;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.util.Objects;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
-import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
-import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.dyson4j.BackpressurePolicy;
 import wtf.choco.dyson4j.DysonFan;
 import wtf.choco.dyson4j.DysonFanCredentials;
+import wtf.choco.dyson4j.DysonFanOptions;
 import wtf.choco.dyson4j.StandardDysonFan;
+import wtf.choco.dyson4j.exception.DysonBackpressureException;
 import wtf.choco.dyson4j.exception.DysonConnectionException;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttIncomingMessage;
 import wtf.choco.dyson4j.mqtt.message.DysonMqttMessage;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageDecoder;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageEncoder;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageRequestCurrentState;
+import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageRequestEnvironmentalSensorData;
 import wtf.choco.dyson4j.mqtt.message.DysonMqttMessageRespondable;
+import wtf.choco.dyson4j.mqtt.transport.MqttConnectionSettings;
+import wtf.choco.dyson4j.mqtt.transport.MqttMessageHandler;
+import wtf.choco.dyson4j.mqtt.transport.MqttTransportConnection;
 import wtf.choco.dyson4j.util.Preconditions;
+import wtf.choco.dyson4j.util.SerialExecutor;
 
 /**
  * An internal MQTT connection client handler. Not meant for external use. It is strongly
@@ -39,50 +53,73 @@ public final class FanMqttConnectionHandler {
     private final String topicCommand, topicStatusCurrent;
 
     private final UUID clientId;
-    private final IMqttAsyncClient client;
-    private final MqttConnectOptions connectionOptions;
+    private final MqttTransportConnection connection;
     private final MqttStatusMessageListener statusListener = new MqttStatusMessageListener();
 
     private final AtomicInteger pendingMessages = new AtomicInteger();
+    private final ConcurrentMap<Class<?>, InFlightRequest<?>> inFlightRequests = new ConcurrentHashMap<>();
+    private final Duration responseTimeout;
+    private final Executor completionExecutor;
+    private final InFlightWindow inFlightWindow;
+
+    private volatile Consumer<Throwable> connectionLostListener;
 
     /**
-     * Construct a new {@link FanMqttConnectionHandler}.
+     * Construct a new {@link FanMqttConnectionHandler}. The connection is created by the
+     * {@link DysonFanOptions#getTransport() transport} of the given options.
      *
      * @param fan the {@link DysonFan} instance to which this connection handler belongs
      * @param credentials the fan credentials used to connect to its MQTT server
-     *
-     * @throws MqttException if an MQTT exception occurred while connecting
+     * @param options the options with which to configure this connection handler
      */
-    public FanMqttConnectionHandler(@NotNull DysonFan fan, @NotNull DysonFanCredentials credentials) throws MqttException {
+    public FanMqttConnectionHandler(@NotNull DysonFan fan, @NotNull DysonFanCredentials credentials, @NotNull DysonFanOptions options) {
         Preconditions.checkArgument(fan != null, "fan must not be null");
         Preconditions.checkArgument(credentials != null, "credentials must not be null");
+        Preconditions.checkArgument(options != null, "options must not be null");
 
         this.clientId = UUID.randomUUID();
+        this.responseTimeout = options.getResponseTimeout();
+        this.completionExecutor = new SerialExecutor(options.getCompletionExecutor());
+        this.inFlightWindow = new InFlightWindow(options.getMaxInFlightMessages(), options.getMaxQueuedMessages(), options.getBackpressurePolicy());
 
         /*
          * A Dyson fan's MQTT server can be located under the TCP protocol on port 1883. We can
-         * use a random client id though as this does not matter to us. Additionally, we do not
-         * need any persistent storage, so null will suffice as per the library's specification.
+         * use a random client id though as this does not matter to us.
          */
-        this.client = new MqttAsyncClient("tcp://" + fan.getAddress().getHostAddress() + ":1883", clientId.toString(), null);
+        MqttConnectionSettings settings = new MqttConnectionSettings(
+                fan.getAddress().getHostAddress(), 1883, clientId.toString(),
+                credentials.getUsername(), credentials.getPasswordHashed(),
+                getStaggeredKeepAliveInterval(options)
+        );
 
-        this.connectionOptions = new MqttConnectOptions();
-        this.connectionOptions.setCleanSession(true);
-        this.connectionOptions.setUserName(credentials.getUsername());
-        this.connectionOptions.setPassword(credentials.getPasswordHashed().toCharArray());
+        this.connection = options.getTransport().createConnection(settings);
+        this.connection.setConnectionLostHandler(this::handleConnectionLost);
 
         String topicPrefix = fan.getModel().getProductCode() + "/" + credentials.getUsername();
         this.topicCommand = topicPrefix + "/command";
         this.topicStatusCurrent = topicPrefix + "/status/current";
     }
 
+    // Shortens the keepalive interval by a random amount of the jitter so that fans connected together don't ping together
+    private static int getStaggeredKeepAliveInterval(DysonFanOptions options) {
+        long keepAliveInterval = options.getKeepAliveInterval().getSeconds();
+        if (keepAliveInterval == 0) {
+            return 0; // Disabled, so there are no pings to stagger
+        }
+
+        long maxJitter = Math.min(options.getKeepAliveJitter().getSeconds(), keepAliveInterval - 1);
+        long jitter = (maxJitter > 0) ? ThreadLocalRandom.current().nextLong(maxJitter + 1) : 0;
+
+        return (int) Math.min(0xFFFF, keepAliveInterval - jitter);
+    }
+
     /**
      * Check whether or not the internal MQTT client is connected.
      *
      * @return true if connected, false otherwise
      */
     public boolean isConnected() {
-        return client.isConnected();
+        return connection.isConnected();
     }
 
     /**
@@ -104,33 +141,13 @@ public final class FanMqttConnectionHandler {
         Preconditions.checkArgument(timeout > 0, "timeout must be > 0");
         Preconditions.checkArgument(unit != null, "unit must not be null");
 
-        CompletableFuture<Void> future = new CompletableFuture<>();
-
-        try {
-            this.connectionOptions.setConnectionTimeout((int) unit.toSeconds(timeout));
-
-            this.client.connect(connectionOptions, null, ICompoundMqttActionListener.of((token, optionalException) -> {
-                optionalException.ifPresentOrElse(
-                        future::completeExceptionally,
-                        () -> {
-                            try {
-                                this.client.subscribe(topicStatusCurrent, 0, statusListener);
-                                future.complete(null);
-                            } catch (MqttException e) {
-                                future.completeExceptionally(e);
-                            }
-                        }
-                );
-            }));
-        } catch (MqttException e) {
-            future.completeExceptionally(e);
-        }
-
-        return future;
+        return completeOnCompletionExecutor(connection.connect(Duration.of(timeout, unit.toChronoUnit()))
+                .thenCompose(ignore -> connection.subscribe(topicStatusCurrent, statusListener)));
     }
 
     /**
-     * Disconnect the MQTT client from the fan.
+     * Disconnect the MQTT client from the fan. Any messages still awaiting a response will
+     * be completed exceptionally with a {@link DysonConnectionException}.
      *
      * @param destroy whether or not to destroy the connection. If true, the client is no longer
      * usable and a new connection handler needs to be created. If false, {@link #connect(int, TimeUnit)}
@@ -143,55 +160,195 @@ public final class FanMqttConnectionHandler {
      */
     @NotNull
     public CompletableFuture<Void> disconnect(boolean destroy) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+        this.statusListener.failAll(new DysonConnectionException("Disconnected from Dyson fan before a response was received"));
 
-        try {
-            // TODO: Unsubscribe from the client's status topic
-            this.client.disconnect(null, ICompoundMqttActionListener.of((token, optionalException) -> {
-                optionalException.ifPresentOrElse(
-                    future::completeExceptionally,
-                    () -> future.complete(null)
-                );
-            }));
-        } catch (MqttException e) {
-            future.completeExceptionally(e);
-        }
+        // TODO: Unsubscribe from the client's status topic
+        CompletableFuture<Void> future = completeOnCompletionExecutor(connection.disconnect());
 
-        // If we want to destroy the connection, we need to append another stage
+        // If we want to destroy the connection, we need to append another stage. It's closed even if it failed to disconnect
         if (destroy) {
-            /*
-             * Have to early return because of the use of the lambda above in the optionalException.
-             * This is fine though because we're not doing anything after this anyways
-             */
-            return future.thenRun(() -> {
-                try {
-                    this.client.close();
-                } catch (MqttException e) {
-                    /*
-                     * Should never happen because we know we're disconnected by this point, but
-                     * we'll be ABSOLUTELY CERTAIN, and handle the exception.
-                     */
-                    throw new CompletionException(e);
-                }
-            });
+            return future.whenComplete((ignore, e) -> connection.close());
         }
 
         return future;
     }
 
+    /**
+     * Add a listener to be notified of every message received from the fan's MQTT server,
+     * including those that were handled as a response to a sent message. Listeners are
+     * called on the {@link DysonFanOptions#getCompletionExecutor() completion executor}, one
+     * message at a time and in the order in which messages were received.
+     *
+     * @param listener the listener to add
+     */
+    public void addMessageListener(@NotNull Consumer<@NotNull DysonMqttIncomingMessage> listener) {
+        Preconditions.checkArgument(listener != null, "listener must not be null");
+        this.statusListener.messageListeners.add(listener);
+    }
+
+    /**
+     * Set the listener to be notified when the established connection to the fan's MQTT server
+     * is lost for any reason other than a call to {@link #disconnect(boolean)}. Any messages still
+     * awaiting a response are completed exceptionally before the listener is notified. The
+     * connection may be re-established with {@link #connect(int, TimeUnit)}, which resubscribes
+     * to the fan's status.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setConnectionLostListener(@Nullable Consumer<@NotNull Throwable> listener) {
+        this.connectionLostListener = listener;
+    }
+
+    private void handleConnectionLost(Throwable cause) {
+        this.completionExecutor.execute(() -> {
+            this.statusListener.failAll(new DysonConnectionException("Lost connection to Dyson fan before a response was received", cause));
+
+            Consumer<Throwable> listener = connectionLostListener;
+            if (listener != null) {
+                listener.accept(cause);
+            }
+        });
+    }
+
+    // Keeps dependent stages off the transport's network thread
+    private <T> CompletableFuture<T> completeOnCompletionExecutor(CompletableFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenCompleteAsync((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        }, completionExecutor);
+        return result;
+    }
+
     /**
      * Get the amount of pending MQTT messages in the pipeline waiting to be received
-     * by the fan's MQTT server.
+     * by the fan's MQTT server. This includes both messages in flight and messages queued
+     * behind them, and may be used as a backpressure signal by callers sending messages.
      *
      * @return the amount of pending messages
+     *
+     * @see #getInFlightMessages()
+     * @see #getQueuedMessages()
      */
     public int getPendingMessages() {
         return pendingMessages.get();
     }
 
+    /**
+     * Get the amount of MQTT messages that have been published to the fan's MQTT server and
+     * are awaiting either a response or confirmation that they were received. This will never
+     * exceed {@link DysonFanOptions#getMaxInFlightMessages()}.
+     *
+     * @return the amount of in flight messages
+     */
+    public int getInFlightMessages() {
+        return inFlightWindow.getInFlight();
+    }
+
+    /**
+     * Get the amount of MQTT messages waiting to be published until an in flight message
+     * completes.
+     *
+     * @return the amount of queued messages
+     *
+     * @see BackpressurePolicy#QUEUE
+     */
+    public int getQueuedMessages() {
+        return inFlightWindow.getQueued();
+    }
+
     /**
      * Send a {@link DysonMqttMessage} to the fan's MQTT server and possibly receive
      * a response.
+     * <p>
+     * If the returned future is cancelled, or the fan does not respond within the given
+     * timeout, the message will no longer await a response and will no longer be tallied
+     * as a pending message.
+     *
+     * @param <R> the message's response type
+     * @param message the message to send
+     * @param timeout the maximum amount of time to wait for the message to be received
+     * (or responded to if the message expects a response). Must be positive
+     *
+     * @return a completable future, completed when a response has been received and
+     * was handled by the message implementation containing the response object, or
+     * completed when the fan receive's the message if the message does not expect
+     * a response from the MQTT server. If the timeout elapses first, the future is
+     * completed exceptionally with a {@link java.util.concurrent.TimeoutException}. If the
+     * message could not be sent due to the {@link DysonFanOptions#getBackpressurePolicy()
+     * backpressure policy}, the future is completed exceptionally with a
+     * {@link DysonBackpressureException}
+     *
+     * @see DysonMqttMessageRespondable#isCoalescable()
+     */
+    @NotNull
+    public <R> CompletableFuture<R> sendMessage(@NotNull DysonMqttMessage<R> message, @NotNull Duration timeout) {
+        return sendMessage(message, timeout, null);
+    }
+
+    /**
+     * Send a {@link DysonMqttMessage} to the fan's MQTT server in a slot previously reserved with
+     * {@link #reserveInFlightSlot(Duration)}, and possibly receive a response. The message is published
+     * immediately in the reserved slot rather than being subject to the backpressure policy. If the
+     * message is coalesced with an identical request already in flight, the slot is released instead.
+     * A slot reserved on another connection handler, or one that was already used or released, is
+     * ignored.
+     *
+     * @param <R> the message's response type
+     * @param message the message to send
+     * @param timeout the maximum amount of time to wait for the message to be received
+     * (or responded to if the message expects a response). Must be positive
+     * @param slot the slot in which to send the message, or null to send it as per the
+     * backpressure policy
+     *
+     * @return a completable future, completed as per {@link #sendMessage(DysonMqttMessage, Duration)}
+     */
+    @NotNull
+    public <R> CompletableFuture<R> sendMessage(@NotNull DysonMqttMessage<R> message, @NotNull Duration timeout, @Nullable InFlightSlot slot) {
+        Preconditions.checkArgument(message != null, "message must not be null");
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+
+        if (message instanceof DysonMqttMessageRespondable<R> respondableMessage && respondableMessage.isCoalescable()) {
+            return sendCoalesced(respondableMessage, timeout, true, slot);
+        }
+
+        CompletableFuture<R> future = new CompletableFuture<>();
+        this.publish(message, future, timeout, slot);
+        return future;
+    }
+
+    /**
+     * Reserve a slot in the window of messages in flight to the fan, blocking the calling thread
+     * until one is available. This is how messages are sent under {@link BackpressurePolicy#BLOCK},
+     * waiting on the thread of the caller sending them rather than a thread of the completion
+     * executor. The returned slot must then either be passed to
+     * {@link #sendMessage(DysonMqttMessage, Duration, InFlightSlot)} or be
+     * {@link InFlightSlot#release() released}.
+     *
+     * @param timeout the maximum amount of time to wait for a slot. Must be positive
+     *
+     * @return the reserved slot
+     *
+     * @throws DysonBackpressureException if no slot became available within the timeout, or the
+     * calling thread was interrupted while waiting
+     */
+    @NotNull
+    public InFlightSlot reserveInFlightSlot(@NotNull Duration timeout) {
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+
+        this.inFlightWindow.reserve(timeout);
+        return new InFlightSlot(inFlightWindow);
+    }
+
+    /**
+     * Send a {@link DysonMqttMessage} to the fan's MQTT server and possibly receive
+     * a response, waiting at most the default response timeout as defined by the
+     * {@link DysonFanOptions} with which this handler was created.
      *
      * @param <R> the message's response type
      * @param message the message to send
@@ -200,38 +357,366 @@ public final class FanMqttConnectionHandler {
      * was handled by the message implementation containing the response object, or
      * completed when the fan receive's the message if the message does not expect
      * a response from the MQTT server.
+     *
+     * @see #sendMessage(DysonMqttMessage, Duration)
      */
     @NotNull
     public <R> CompletableFuture<R> sendMessage(@NotNull DysonMqttMessage<R> message) {
+        return sendMessage(message, responseTimeout);
+    }
+
+    /**
+     * Await the response to a {@link DysonMqttMessageRespondable} without sending the message
+     * itself. This is useful when a single message sent to the fan is known to result in more
+     * than one response, such as {@link DysonMqttMessageRequestCurrentState} which will also
+     * result in the response awaited by {@link DysonMqttMessageRequestEnvironmentalSensorData}.
+     * <p>
+     * The message that results in the awaited response should be sent only after this method has
+     * been called so that its response is not missed. If the message is
+     * {@link DysonMqttMessageRespondable#isCoalescable() coalescable} and an identical request is
+     * already awaiting its response, the returned future is completed by that same response.
+     *
+     * @param <R> the message's response type
+     * @param message the message whose response to await
+     * @param timeout the maximum amount of time to wait for the response. Must be positive
+     *
+     * @return a completable future, completed when a response has been received and was handled
+     * by the message implementation containing the response object. If the timeout elapses first,
+     * the future is completed exceptionally with a {@link java.util.concurrent.TimeoutException}
+     */
+    @NotNull
+    public <R> CompletableFuture<R> awaitResponse(@NotNull DysonMqttMessageRespondable<R> message, @NotNull Duration timeout) {
         Preconditions.checkArgument(message != null, "message must not be null");
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+
+        if (message.isCoalescable()) {
+            return sendCoalesced(message, timeout, false, null);
+        }
+
+        CompletableFuture<R> future = new CompletableFuture<>();
+        this.track(message, future, timeout);
+        return future;
+    }
+
+    /*
+     * Coalescable messages are only ever published once at a time per message type. While a request is in flight,
+     * any further callers attach to it and are completed by the same response. Every caller receives its own copy
+     * of the shared future so that one caller giving up (by cancelling or timing out) does not affect the others.
+     * Only once every caller has given up will the in flight request itself be cancelled. The shared future has no
+     * deadline of its own for that reason, as a later caller may well be willing to wait longer than the first.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> CompletableFuture<R> sendCoalesced(DysonMqttMessageRespondable<R> message, Duration timeout, boolean publish, InFlightSlot slot) {
+        Class<?> key = message.getClass();
+
+        while (true) {
+            InFlightRequest<R> inFlightRequest = (InFlightRequest<R>) inFlightRequests.get(key);
+            if (inFlightRequest != null) {
+                CompletableFuture<R> future = inFlightRequest.attach(timeout);
+                if (future != null) {
+                    // Nothing more is published, so the slot is of no use to this caller
+                    if (slot != null) {
+                        slot.release();
+                    }
+
+                    return future;
+                }
+
+                // Every caller of this request has given up and it was cancelled. Clear it out and try again
+                this.inFlightRequests.remove(key, inFlightRequest);
+                continue;
+            }
+
+            InFlightRequest<R> newRequest = new InFlightRequest<>();
+            if (inFlightRequests.putIfAbsent(key, newRequest) != null) {
+                continue;
+            }
+
+            CompletableFuture<R> future = newRequest.attach(timeout);
+            newRequest.future.whenComplete((ignore, e) -> inFlightRequests.remove(key, newRequest));
+
+            if (publish) {
+                this.publish(message, newRequest.future, null, slot);
+            } else {
+                this.track(message, newRequest.future, null);
+            }
+
+            return future;
+        }
+    }
+
+    /*
+     * Registers the message's pending response (if it expects one) and ensures it is cleaned up regardless of how
+     * the future is completed (response, failure, timeout or cancellation). Responses are removed from the registry
+     * when they're received, so we only need to unregister them if they were completed in any other way. A null timeout
+     * leaves it up to the caller to eventually complete the future.
+     */
+    private <R> PendingResponse<R> track(DysonMqttMessage<R> message, CompletableFuture<R> future, Duration timeout) {
+        PendingResponse<R> pendingResponse = (message instanceof DysonMqttMessageRespondable<R> respondableMessage)
+                ? new PendingResponse<>(respondableMessage, future)
+                : null;
+
+        if (pendingResponse != null) {
+            this.statusListener.register(pendingResponse);
+            future.whenComplete((ignore, e) -> {
+                if (e != null) {
+                    this.statusListener.unregister(pendingResponse);
+                }
+            });
+        }
 
-        MqttMessage mqttMessage = message.asMqttMessage();
-        mqttMessage.setQos(0);
+        if (timeout != null) {
+            future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        return pendingResponse;
+    }
+
+    private <R> void publish(DysonMqttMessage<R> message, CompletableFuture<R> future, Duration timeout, InFlightSlot slot) {
+        byte[] payload = DysonMqttMessageEncoder.encode(message);
+
+        /*
+         * The pending response must be registered before publishing so that a response arriving on the
+         * receive thread before the transport notifies us of a successful publish is not missed.
+         */
+        PendingResponse<R> pendingResponse = track(message, future, timeout);
 
         this.pendingMessages.incrementAndGet();
+        future.whenComplete((ignore, e) -> pendingMessages.decrementAndGet());
 
-        CompletableFuture<R> future = new CompletableFuture<R>()
-                .whenComplete((ignore, e) -> pendingMessages.decrementAndGet());
+        this.inFlightWindow.submit(future, claim(slot), () -> connection.publish(topicCommand, payload).whenCompleteAsync((ignore, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else if (pendingResponse == null) {
+                future.complete(null);
+            }
+        }, completionExecutor));
+    }
 
-        try {
-            this.client.publish(topicCommand, mqttMessage, null, ICompoundMqttActionListener.of((token, optionalException) -> {
-                optionalException.ifPresentOrElse(
-                        future::completeExceptionally,
-                        () -> {
-                            if (!(message instanceof DysonMqttMessageRespondable<R> respondableMessage)) {
-                                future.complete(null);
-                                return;
-                            }
+    // Returns true if the slot was reserved in this handler's window and may now be used. Any other slot is released
+    private boolean claim(InFlightSlot slot) {
+        if (slot == null) {
+            return false;
+        }
 
-                            this.statusListener.pendingResponses.add(new PendingResponse<>(respondableMessage, future));
-                        }
-                );
-            }));
-        } catch (MqttException e) {
-            throw new CompletionException(e);
+        if (slot.window != inFlightWindow) {
+            slot.release();
+            return false;
+        }
+
+        return slot.claimed.compareAndSet(false, true);
+    }
+
+    /*
+     * Bounds the amount of messages published to the fan but not yet completed. A message holds its slot in the
+     * window until its future is completed, however that may be, at which point the slot is handed directly to the
+     * oldest queued message that is still waiting. Queued messages that give up (time out or are cancelled) before
+     * being published are removed from the queue and never published at all.
+     *
+     * Submitting a message never blocks, as messages are generally submitted from the completion executor. Callers
+     * wanting to block until a slot is available reserve one on their own thread beforehand instead.
+     */
+    private static final class InFlightWindow {
+
+        private final int maxInFlight, maxQueued;
+        private final BackpressurePolicy policy;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private final Deque<QueuedMessage> queue = new ArrayDeque<>();
+        private int inFlight;
+
+        private InFlightWindow(int maxInFlight, int maxQueued, BackpressurePolicy policy) {
+            this.maxInFlight = maxInFlight;
+            this.maxQueued = maxQueued;
+            this.policy = policy;
+        }
+
+        private int getInFlight() {
+            this.lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private int getQueued() {
+            this.lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void submit(CompletableFuture<?> future, boolean reserved, Runnable publish) {
+            if (!reserved) {
+                this.lock.lock();
+                try {
+                    if (inFlight >= maxInFlight) {
+                        this.overflow(future, publish);
+                        return;
+                    }
+
+                    this.inFlight++;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            this.start(new QueuedMessage(future, publish));
+        }
+
+        private void reserve(Duration timeout) {
+            this.lock.lock();
+            try {
+                long remainingNanos = timeout.toNanos();
+                while (inFlight >= maxInFlight) {
+                    if (remainingNanos <= 0) {
+                        throw new DysonBackpressureException("Timed out waiting for messages in flight to Dyson fan (" + inFlight + ")");
+                    }
+
+                    remainingNanos = available.awaitNanos(remainingNanos);
+                }
+
+                this.inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DysonBackpressureException("Interrupted while waiting for messages in flight to Dyson fan");
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        // Called with the lock held. Under BLOCK, only messages sent without a reserved slot get here, with no thread to block
+        private void overflow(CompletableFuture<?> future, Runnable publish) {
+            if (policy == BackpressurePolicy.FAIL_FAST) {
+                future.completeExceptionally(new DysonBackpressureException("Too many messages in flight to Dyson fan (" + inFlight + ")"));
+                return;
+            }
+
+            if (queue.size() >= maxQueued) {
+                future.completeExceptionally(new DysonBackpressureException("Too many messages queued for Dyson fan (" + queue.size() + ")"));
+                return;
+            }
+
+            QueuedMessage queuedMessage = new QueuedMessage(future, publish);
+            this.queue.add(queuedMessage);
+            future.whenComplete((ignore, e) -> dequeue(queuedMessage));
+        }
+
+        private void start(QueuedMessage message) {
+            message.future.whenComplete((ignore, e) -> release());
+
+            // A queued message may have given up since it was polled, in which case its slot was just released again
+            if (!message.future.isDone()) {
+                message.publish.run();
+            }
+        }
+
+        private void dequeue(QueuedMessage message) {
+            this.lock.lock();
+            try {
+                this.queue.remove(message);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void release() {
+            QueuedMessage next;
+
+            this.lock.lock();
+            try {
+                do {
+                    next = queue.poll();
+                } while (next != null && next.future.isDone());
+
+                // Nothing is waiting, so free up the slot. Otherwise it's handed over to the next message as is
+                if (next == null) {
+                    this.inFlight--;
+                    this.available.signal();
+                    return;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+
+            this.start(next);
+        }
+
+        private static final class QueuedMessage {
+
+            private final CompletableFuture<?> future;
+            private final Runnable publish;
+
+            private QueuedMessage(CompletableFuture<?> future, Runnable publish) {
+                this.future = future;
+                this.publish = publish;
+            }
+
+        }
+
+    }
+
+    /**
+     * A slot in a {@link FanMqttConnectionHandler}'s window of messages in flight, reserved ahead of
+     * sending a message.
+     *
+     * @see FanMqttConnectionHandler#reserveInFlightSlot(Duration)
+     * @see FanMqttConnectionHandler#sendMessage(DysonMqttMessage, Duration, InFlightSlot)
+     */
+    public static final class InFlightSlot {
+
+        private final InFlightWindow window;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private InFlightSlot(InFlightWindow window) {
+            this.window = window;
+        }
+
+        /**
+         * Release this slot without sending a message in it. This has no effect if the slot has
+         * already been released or used to send a message.
+         */
+        public void release() {
+            if (claimed.compareAndSet(false, true)) {
+                this.window.release();
+            }
+        }
+
+    }
+
+    private static final class InFlightRequest<R> {
+
+        private static final int CANCELLED = -1;
+
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger();
+
+        private CompletableFuture<R> attach(Duration timeout) {
+            int currentCallers;
+            do {
+                currentCallers = callers.get();
+                if (currentCallers == CANCELLED) {
+                    return null;
+                }
+            } while (!callers.compareAndSet(currentCallers, currentCallers + 1));
+
+            CompletableFuture<R> callerFuture = future.copy();
+            callerFuture.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            callerFuture.whenComplete((ignore, e) -> {
+                // The caller has given up before the request was completed
+                if (!future.isDone() && callers.decrementAndGet() == 0 && callers.compareAndSet(0, CANCELLED)) {
+                    this.future.cancel(false);
+                }
+            });
+
+            return callerFuture;
         }
 
-        return future;
     }
 
     /*
@@ -244,6 +729,10 @@ public final class FanMqttConnectionHandler {
      * that needs to be completed once a response has been received from the MQTT server. If there are any
      * incoming messages that match the message's expected response message id (e.g. "CURRENT-STATE" for any
      * "STATE-SET" messages), then we'll just assume it's for this message even though it technically may not be.
+     * Pending responses are queued per expected response message id in the order in which they were sent, so
+     * the oldest request waiting on a given message id will always be the first to be completed. Messages that can
+     * tell their response apart (such as a confirmed "STATE-SET", which checks the reported states) may decline an
+     * incoming message, in which case it is offered to the next oldest request instead.
      *
      * If someone can come up with a better way to handle this more reliably via MQTT, a pull request would be
      * appreciated. I'm not sure Dyson nor Eclipse Paho exposes a way to retain this sort of information between
@@ -259,53 +748,93 @@ public final class FanMqttConnectionHandler {
             this.future = future;
         }
 
-        private boolean handleResponse(String messageId, JsonObject response) {
-            String expectedMessageId = message.getExpectedResponseMessageId();
-            if (!Objects.equals(expectedMessageId, messageId)) {
-                return false;
-            }
+        private String getExpectedResponseMessageId() {
+            return message.getExpectedResponseMessageId();
+        }
+
+        private boolean isResponse(DysonMqttIncomingMessage response) {
+            return message.isResponse(response);
+        }
 
+        private void fail(Throwable exception) {
+            this.future.completeExceptionally(exception);
+        }
+
+        private void handleResponse(DysonMqttIncomingMessage response) {
             R responseObject;
             try {
                 responseObject = message.handleResponse(response);
             } catch (Exception e) {
                 this.future.completeExceptionally(e);
-                return true;
+                return;
             }
 
             this.future.complete(responseObject);
-            return true;
         }
 
     }
 
-    private final class MqttStatusMessageListener implements IMqttMessageListener {
+    private final class MqttStatusMessageListener implements MqttMessageHandler {
 
-        private final Gson gson = new Gson();
-        private final List<PendingResponse<?>> pendingResponses = new ArrayList<>(8);
+        private final ConcurrentMap<String, Queue<PendingResponse<?>>> pendingResponses = new ConcurrentHashMap<>();
+        private final List<Consumer<DysonMqttIncomingMessage>> messageListeners = new CopyOnWriteArrayList<>();
+
+        private void register(PendingResponse<?> response) {
+            this.pendingResponses.computeIfAbsent(response.getExpectedResponseMessageId(), ignore -> new ConcurrentLinkedQueue<>()).add(response);
+        }
+
+        private void unregister(PendingResponse<?> response) {
+            Queue<PendingResponse<?>> responses = pendingResponses.get(response.getExpectedResponseMessageId());
+            if (responses != null) {
+                responses.remove(response);
+            }
+        }
+
+        private void failAll(Throwable exception) {
+            for (Queue<PendingResponse<?>> responses : pendingResponses.values()) {
+                PendingResponse<?> response;
+                while ((response = responses.poll()) != null) {
+                    response.fail(exception);
+                }
+            }
+        }
 
         @Override
-        public void messageArrived(String topic, MqttMessage message) throws Exception {
-            String messageContents = new String(message.getPayload(), StandardCharsets.UTF_8);
+        public void messageArrived(@NotNull String topic, @NotNull byte[] payload) {
+            // Decoding, responses and listeners are all handled off the network thread, in order of receipt
+            completionExecutor.execute(() -> handleMessage(payload));
+        }
 
-            JsonObject object;
+        private void handleMessage(byte[] payload) {
+            DysonMqttIncomingMessage incomingMessage;
             try {
-                object = gson.fromJson(messageContents, JsonObject.class);
-            } catch (JsonParseException e) {
-                System.err.println("Failed to parse incoming MQTT message: \"" + messageContents + "\"");
+                incomingMessage = DysonMqttMessageDecoder.decode(payload);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Failed to parse incoming MQTT message: \"" + new String(payload, StandardCharsets.UTF_8) + "\"");
                 return;
             }
 
-            String messageId = object.get("msg").getAsString();
+            if (incomingMessage == null) {
+                return;
+            }
 
-            for (int i = 0; i < pendingResponses.size(); i++) {
-                PendingResponse<?> response = pendingResponses.get(i);
-                if (!response.handleResponse(messageId, object)) {
-                    continue;
+            Queue<PendingResponse<?>> responses = pendingResponses.get(incomingMessage.getMessageId());
+            if (responses != null) {
+                for (PendingResponse<?> response : responses) {
+                    // Removal may fail if the response was given up on concurrently, in which case the next one gets a chance
+                    if (response.isResponse(incomingMessage) && responses.remove(response)) {
+                        response.handleResponse(incomingMessage);
+                        break;
+                    }
                 }
+            }
 
-                this.pendingResponses.remove(i);
-                break;
+            for (Consumer<DysonMqttIncomingMessage> listener : messageListeners) {
+                try {
+                    listener.accept(incomingMessage);
+                } catch (RuntimeException e) {
+                    System.err.println("Message listener failed to handle MQTT message on " + topicStatusCurrent + " (" + e + "): \"" + new String(payload, StandardCharsets.UTF_8) + "\"");
+                }
             }
         }
 
@@ -0,0 +1,132 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.DeviceStatus;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An immutable {@link DeviceStatus} implementation as decoded from a Dyson fan's "CURRENT-STATE"
+ * message. State values are held in an array indexed by {@link FanState#getOrdinal() ordinal}.
+ */
+public final class DysonDeviceStatus implements DeviceStatus {
+
+    private final MqttStateValueProvider[] states;
+
+    private final String errorCode, warningCode;
+    private final int remainingFilterLife;
+
+    // The states array is owned by this instance from here on and must not be modified by the caller
+    DysonDeviceStatus(String errorCode, String warningCode, int remainingFilterLife, MqttStateValueProvider[] states) {
+        this.errorCode = errorCode;
+        this.warningCode = warningCode;
+        this.remainingFilterLife = remainingFilterLife;
+        this.states = states;
+    }
+
+    @Override
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    @Override
+    public String getWarningCode() {
+        return warningCode;
+    }
+
+    @Override
+    public int getRemainingFilterLife() {
+        return remainingFilterLife;
+    }
+
+    /**
+     * Get a copy of this {@link DysonDeviceStatus} with the given state values applied on top
+     * of the values in this status. This instance is not modified.
+     *
+     * @param states the state values to apply
+     *
+     * @return the new device status
+     */
+    @NotNull
+    public DysonDeviceStatus withStates(@NotNull Map<FanState<?>, MqttStateValueProvider> states) {
+        Preconditions.checkArgument(states != null, "states must not be null");
+
+        MqttStateValueProvider[] newStates = Arrays.copyOf(this.states, this.states.length);
+        states.forEach((state, value) -> {
+            Preconditions.checkArgument(state.getValueType().isInstance(value), () -> "value for state " + state.getName() + " must be of type " + state.getValueType().getName());
+            newStates[state.getOrdinal()] = value;
+        });
+
+        return new DysonDeviceStatus(errorCode, warningCode, remainingFilterLife, newStates);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends MqttStateValueProvider> T getState(FanState<T> state) {
+        Preconditions.checkArgument(state != null, "state must not be null");
+
+        // Values are type-checked on the way in, so the cast is safe
+        return (T) states[state.getOrdinal()];
+    }
+
+    @Override
+    public Set<FanState<?>> getChangedStates(DeviceStatus other) {
+        if (!(other instanceof DysonDeviceStatus otherStatus)) {
+            return DeviceStatus.super.getChangedStates(other);
+        }
+
+        Set<FanState<?>> changedStates = null;
+        for (int i = 0; i < states.length; i++) {
+            if (Objects.equals(states[i], otherStatus.states[i])) {
+                continue;
+            }
+
+            if (changedStates == null) {
+                changedStates = new HashSet<>();
+            }
+
+            changedStates.add(FanState.values().get(i));
+        }
+
+        return (changedStates != null) ? Collections.unmodifiableSet(changedStates) : Collections.emptySet();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(errorCode, warningCode, remainingFilterLife, Arrays.hashCode(states));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || (obj instanceof DysonDeviceStatus other
+                && remainingFilterLife == other.remainingFilterLife
+                && errorCode.equals(other.errorCode)
+                && warningCode.equals(other.warningCode)
+                && Arrays.equals(states, other.states));
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner statesStringJoiner = new StringJoiner(",");
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != null) {
+                statesStringJoiner.add("\"" + FanState.values().get(i).getName() + "\":\"" + states[i].getStateValue() + "\"");
+            }
+        }
+
+        return String.format("DysonDeviceStatus[errorCode=%s, warningCode=%s, remainingFilterLife=%s, states:[ %s ]]",
+                errorCode, warningCode, remainingFilterLife, statesStringJoiner
+        );
+    }
+
+}
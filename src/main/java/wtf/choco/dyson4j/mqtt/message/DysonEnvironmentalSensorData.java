@@ -0,0 +1,56 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import wtf.choco.dyson4j.EnvironmentalSensorData;
+import wtf.choco.dyson4j.setting.SleepTimer;
+
+/**
+ * An {@link EnvironmentalSensorData} implementation as decoded from a Dyson fan's
+ * "ENVIRONMENTAL-CURRENT-SENSOR-DATA" message.
+ */
+final class DysonEnvironmentalSensorData implements EnvironmentalSensorData {
+
+    private final double temperature;
+    private final int relativeHumidity, particles, volatileCompounds;
+    private final SleepTimer sleepTimer;
+
+    DysonEnvironmentalSensorData(double temperature, int relativeHumidify, int particles, int volatileCompounds, SleepTimer sleepTimer) {
+        this.temperature = temperature;
+        this.relativeHumidity = relativeHumidify;
+        this.particles = particles;
+        this.volatileCompounds = volatileCompounds;
+        this.sleepTimer = sleepTimer;
+    }
+
+    @Override
+    public double getTemperature() {
+        return temperature;
+    }
+
+    @Override
+    public int getRelativeHumidity() {
+        return relativeHumidity;
+    }
+
+    @Override
+    public int getParticles() {
+        return particles;
+    }
+
+    @Override
+    public int getVolatileCompounds() {
+        return volatileCompounds;
+    }
+
+    @Override
+    public SleepTimer getSleepTimer() {
+        return sleepTimer;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DysonEnvironmentalSensorData[temperature=%s, relativeHumidity=%s, particles=%s, volatileCompounds=%s, sleepTimer=%s]",
+                temperature, relativeHumidity, particles, volatileCompounds, sleepTimer
+        );
+    }
+
+}
@@ -0,0 +1,95 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.DeviceStatus;
+import wtf.choco.dyson4j.EnvironmentalSensorData;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+
+/**
+ * Represents a message received from a Dyson fan's MQTT server, as decoded by a
+ * {@link DysonMqttMessageDecoder}. Depending on the type of message, only some of its
+ * contents will be present.
+ */
+public final class DysonMqttIncomingMessage {
+
+    private final String messageId;
+    private final DeviceStatus deviceStatus;
+    private final EnvironmentalSensorData sensorData;
+    private final Map<FanState<?>, MqttStateValueProvider> previousStates, newStates;
+
+    DysonMqttIncomingMessage(String messageId, DeviceStatus deviceStatus, EnvironmentalSensorData sensorData, Map<FanState<?>, MqttStateValueProvider> previousStates, Map<FanState<?>, MqttStateValueProvider> newStates) {
+        this.messageId = messageId;
+        this.deviceStatus = deviceStatus;
+        this.sensorData = sensorData;
+        this.previousStates = Collections.unmodifiableMap(previousStates);
+        this.newStates = Collections.unmodifiableMap(newStates);
+    }
+
+    /**
+     * Get the id of this message.
+     *
+     * @return the message id
+     */
+    @NotNull
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Get the {@link DeviceStatus} sent in this message. Present only for
+     * {@link DysonMqttMessageDecoder#MESSAGE_ID_CURRENT_STATE} messages.
+     *
+     * @return the device status, or null if not present
+     */
+    @Nullable
+    public DeviceStatus getDeviceStatus() {
+        return deviceStatus;
+    }
+
+    /**
+     * Get the {@link EnvironmentalSensorData} sent in this message. Present only for
+     * {@link DysonMqttMessageDecoder#MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA} messages.
+     *
+     * @return the sensor data, or null if not present
+     */
+    @Nullable
+    public EnvironmentalSensorData getSensorData() {
+        return sensorData;
+    }
+
+    /**
+     * Get an unmodifiable map of the values of each changed state before the change.
+     * Empty unless this is a {@link DysonMqttMessageDecoder#MESSAGE_ID_STATE_CHANGE} message.
+     *
+     * @return the previous state values
+     */
+    @NotNull
+    public Map<FanState<?>, MqttStateValueProvider> getPreviousStates() {
+        return previousStates;
+    }
+
+    /**
+     * Get an unmodifiable map of the values of each changed state after the change.
+     * Empty unless this is a {@link DysonMqttMessageDecoder#MESSAGE_ID_STATE_CHANGE} message.
+     *
+     * @return the new state values
+     */
+    @NotNull
+    public Map<FanState<?>, MqttStateValueProvider> getNewStates() {
+        return newStates;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DysonMqttIncomingMessage[messageId=%s, deviceStatus=%s, sensorData=%s, previousStates=%s, newStates=%s]",
+                messageId, deviceStatus, sensorData, previousStates, newStates
+        );
+    }
+
+}
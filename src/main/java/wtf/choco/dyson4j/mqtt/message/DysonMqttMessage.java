@@ -2,9 +2,7 @@ package wtf.choco.dyson4j.mqtt.message;
 
 import com.google.gson.JsonObject;
 
-import java.nio.charset.StandardCharsets;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -40,13 +38,35 @@ public abstract class DysonMqttMessage<R> {
         this.messageId = messageId;
     }
 
+    /**
+     * Get the id of this message.
+     *
+     * @return the message id
+     */
+    @NotNull
+    public final String getMessageId() {
+        return messageId;
+    }
+
     /**
      * Populate the message payload with additional JSON data.
+     * <p>
+     * Implementations adding data here must also write the same data in
+     * {@link #encodeAdditionalData(DysonMqttMessageEncoder)}.
      *
      * @param object the payload object
      */
     protected void populateAdditionalData(@NotNull JsonObject object) { }
 
+    /**
+     * Write additional JSON data to the message payload with the given encoder. This is used
+     * when the message is sent to the fan and should write the same data as
+     * {@link #populateAdditionalData(JsonObject)}.
+     *
+     * @param encoder the encoder to which data should be written
+     */
+    protected void encodeAdditionalData(@NotNull DysonMqttMessageEncoder encoder) { }
+
     /**
      * Get this message as a {@link JsonObject}.
      *
@@ -64,17 +84,18 @@ public abstract class DysonMqttMessage<R> {
     }
 
     /**
-     * Get this message as a {@link MqttMessage}.
+     * Get this message as a {@link MqttMessage}. The message is encoded directly to bytes
+     * by a {@link DysonMqttMessageEncoder} rather than via {@link #asJsonObject()}.
      *
      * @return the MQTT message
      */
     @NotNull
     public final MqttMessage asMqttMessage() {
-        return new MqttMessage(asJsonObject().toString().getBytes(StandardCharsets.UTF_8));
+        return new MqttMessage(DysonMqttMessageEncoder.encode(this));
     }
 
     private String getNowTimestamp() {
-        return ZonedDateTime.now(ZoneId.of("GMT")).format(DateTimeFormatter.ISO_INSTANT);
+        return DateTimeFormatter.ISO_INSTANT.format(Instant.now());
     }
 
 }
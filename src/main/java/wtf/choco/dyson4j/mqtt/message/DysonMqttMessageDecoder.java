@@ -0,0 +1,551 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dyson4j.DeviceStatus;
+import wtf.choco.dyson4j.EnvironmentalSensorData;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.setting.ResetFilterState;
+import wtf.choco.dyson4j.setting.SleepTimer;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * A utility class to decode messages sent by a Dyson fan's MQTT server into their respective
+ * API representations.
+ * <p>
+ * Payloads are decoded in a single pass directly from their UTF-8 encoded bytes. No intermediate
+ * JSON tree is built, keys are matched without being copied into strings, and numeric fields are
+ * parsed in place. Only the values that end up in the decoded message are ever materialized.
+ */
+public final class DysonMqttMessageDecoder {
+
+    /**
+     * Dyson MQTT message id for "CURRENT-STATE", sent in response to a request for the
+     * fan's current state.
+     */
+    public static final String MESSAGE_ID_CURRENT_STATE = "CURRENT-STATE";
+    /**
+     * Dyson MQTT message id for "ENVIRONMENTAL-CURRENT-SENSOR-DATA", sent in response to a
+     * request for the fan's current state, as well as periodically by the fan.
+     */
+    public static final String MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA = "ENVIRONMENTAL-CURRENT-SENSOR-DATA";
+    /**
+     * Dyson MQTT message id for "STATE-CHANGE", sent by the fan whenever one or more of its
+     * states has changed.
+     */
+    public static final String MESSAGE_ID_STATE_CHANGE = "STATE-CHANGE";
+
+    private static final String[] KNOWN_MESSAGE_IDS = {MESSAGE_ID_CURRENT_STATE, MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA, MESSAGE_ID_STATE_CHANGE};
+    private static final byte[][] ENCODED_KNOWN_MESSAGE_IDS = encodeAll(KNOWN_MESSAGE_IDS);
+
+    // Indexed by FanState ordinal
+    private static final byte[][] ENCODED_STATE_IDS = encodeAll(FanState.values().stream().map(FanState::getId).toArray(String[]::new));
+
+    private static final byte[] KEY_MESSAGE_ID = encode("msg");
+    private static final byte[] KEY_PRODUCT_STATE = encode("product-state");
+    private static final byte[] KEY_DATA = encode("data");
+
+    private static final byte[] KEY_ERROR_CODE = encode("ercd");
+    private static final byte[] KEY_WARNING_CODE = encode("wacd");
+    private static final byte[] KEY_FILTER_LIFE = encode("filf");
+
+    private static final byte[] KEY_TEMPERATURE = encode("tact");
+    private static final byte[] KEY_HUMIDITY = encode("hact");
+    private static final byte[] KEY_PARTICLES = encode("pact");
+    private static final byte[] KEY_VOLATILE_COMPOUNDS = encode("vact");
+    private static final byte[] KEY_SLEEP_TIMER = encode("sltm");
+
+    private static final byte[] TEMPERATURE_OFF = encode("OFF");
+    private static final byte[] VOLATILE_COMPOUNDS_INITIALIZING = encode("INIT");
+
+    // Bits set for each of the sensor data fields read from a message. All must be present for sensor data to be decoded
+    private static final int SENSOR_TEMPERATURE = 1, SENSOR_HUMIDITY = 1 << 1, SENSOR_PARTICLES = 1 << 2, SENSOR_VOLATILE_COMPOUNDS = 1 << 3, SENSOR_SLEEP_TIMER = 1 << 4;
+    private static final int SENSOR_ALL = SENSOR_TEMPERATURE | SENSOR_HUMIDITY | SENSOR_PARTICLES | SENSOR_VOLATILE_COMPOUNDS | SENSOR_SLEEP_TIMER;
+
+    // Skipped values are skipped recursively, so their nesting must be bounded to not overflow the stack on hostile payloads
+    private static final int MAX_SKIPPED_DEPTH = 32;
+
+    private DysonMqttMessageDecoder() { }
+
+    /**
+     * Decode a message from its UTF-8 encoded JSON payload.
+     * <p>
+     * The contents of the returned message depend on its id. A {@link #MESSAGE_ID_CURRENT_STATE}
+     * message will hold a {@link DeviceStatus}, a {@link #MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA}
+     * message will hold {@link EnvironmentalSensorData}, and a {@link #MESSAGE_ID_STATE_CHANGE}
+     * message will hold the previous and new values of each changed state. If the payload is missing
+     * any of the fields required for its respective contents, the contents will not be present.
+     * States with values that could not be parsed or are not known will be ignored.
+     *
+     * @param payload the payload to decode
+     *
+     * @return the decoded message, or null if the message has no id
+     *
+     * @throws IllegalArgumentException if the payload is not a valid JSON object
+     */
+    @Nullable
+    public static DysonMqttIncomingMessage decode(@NotNull byte[] payload) {
+        Preconditions.checkArgument(payload != null, "payload must not be null");
+
+        PayloadReader reader = new PayloadReader(payload);
+        DecodedFields fields = new DecodedFields();
+
+        reader.beginObject();
+        for (boolean first = true; reader.nextKey(first); first = false) {
+            if (reader.tokenEquals(KEY_MESSAGE_ID) && reader.peek() == '"') {
+                reader.readString();
+                fields.messageId = reader.tokenAsKnownString(KNOWN_MESSAGE_IDS, ENCODED_KNOWN_MESSAGE_IDS);
+            } else if (reader.tokenEquals(KEY_PRODUCT_STATE) && reader.peek() == '{') {
+                readProductState(reader, fields);
+            } else if (reader.tokenEquals(KEY_DATA) && reader.peek() == '{') {
+                readSensorData(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endDocument();
+
+        if (fields.messageId == null) {
+            return null;
+        }
+
+        DeviceStatus deviceStatus = null;
+        if (MESSAGE_ID_CURRENT_STATE.equals(fields.messageId) && fields.errorCode != null && fields.warningCode != null && fields.filterLife >= 0) {
+            // This must be done manually so that the state can be set appropriately. This is displayed in an error code
+            if (DeviceStatus.ERROR_CODE_REPLACE_FILTER.equals(fields.errorCode)) {
+                fields.states[FanState.RESET_FILTER_STATE.getOrdinal()] = ResetFilterState.RESET;
+            }
+
+            deviceStatus = new DysonDeviceStatus(fields.errorCode, fields.warningCode, fields.filterLife, fields.states);
+        }
+
+        EnvironmentalSensorData sensorData = null;
+        if (MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA.equals(fields.messageId) && fields.sensorFields == SENSOR_ALL) {
+            sensorData = new DysonEnvironmentalSensorData(fields.temperature, fields.relativeHumidity, fields.particles, fields.volatileCompounds, fields.sleepTimer);
+        }
+
+        if (!MESSAGE_ID_STATE_CHANGE.equals(fields.messageId)) {
+            return new DysonMqttIncomingMessage(fields.messageId, deviceStatus, sensorData, Collections.emptyMap(), Collections.emptyMap());
+        }
+
+        return new DysonMqttIncomingMessage(fields.messageId, null, null, fields.previousStates, fields.newStates);
+    }
+
+    /*
+     * A "CURRENT-STATE" message sends each state as a single string value whereas a "STATE-CHANGE" message sends each
+     * state as an array of its previous and new value. Both are read here, and which of the two is used is decided once
+     * the message id is known since the fan makes no guarantees that "msg" comes first.
+     */
+    private static void readProductState(PayloadReader reader, DecodedFields fields) {
+        reader.beginObject();
+
+        for (boolean first = true; reader.nextKey(first); first = false) {
+            int next = reader.peek();
+
+            if (next == '"') {
+                if (reader.tokenEquals(KEY_ERROR_CODE)) {
+                    reader.readString();
+                    fields.errorCode = reader.tokenAsString();
+                } else if (reader.tokenEquals(KEY_WARNING_CODE)) {
+                    reader.readString();
+                    fields.warningCode = reader.tokenAsString();
+                } else if (reader.tokenEquals(KEY_FILTER_LIFE)) {
+                    reader.readString();
+                    fields.filterLife = reader.tokenAsInt();
+                } else {
+                    FanState<?> state = reader.tokenAsKnownState();
+                    reader.readString();
+
+                    MqttStateValueProvider value = (state != null) ? state.parseValue(reader.tokenAsString()) : null;
+                    if (value != null) {
+                        fields.states[state.getOrdinal()] = value;
+                    }
+                }
+            } else if (next == '[') {
+                FanState<?> state = reader.tokenAsKnownState();
+                if (state == null) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                readStateChange(reader, fields, state);
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    private static void readStateChange(PayloadReader reader, DecodedFields fields, FanState<?> state) {
+        reader.beginArray();
+
+        MqttStateValueProvider previousValue = null, newValue = null;
+        int index = 0;
+
+        for (boolean first = true; reader.nextElement(first); first = false, index++) {
+            if (index > 1 || reader.peek() != '"') {
+                reader.skipValue();
+                index = 2; // Anything but a pair of strings is not a valid state change
+                continue;
+            }
+
+            reader.readString();
+            MqttStateValueProvider value = state.parseValue(reader.tokenAsString());
+            if (index == 0) {
+                previousValue = value;
+            } else {
+                newValue = value;
+            }
+        }
+
+        if (index != 2 || previousValue == null || newValue == null) {
+            return;
+        }
+
+        fields.previousStates.put(state, previousValue);
+        fields.newStates.put(state, newValue);
+    }
+
+    private static void readSensorData(PayloadReader reader, DecodedFields fields) {
+        reader.beginObject();
+
+        for (boolean first = true; reader.nextKey(first); first = false) {
+            if (reader.peek() != '"') {
+                reader.skipValue();
+                continue;
+            }
+
+            if (reader.tokenEquals(KEY_TEMPERATURE)) {
+                reader.readString();
+
+                if (reader.tokenEquals(TEMPERATURE_OFF)) {
+                    fields.temperature = -1.0;
+                    fields.sensorFields |= SENSOR_TEMPERATURE;
+                } else {
+                    int temperature = reader.tokenAsInt();
+                    if (temperature >= 0) {
+                        fields.temperature = temperature / 10.0;
+                        fields.sensorFields |= SENSOR_TEMPERATURE;
+                    }
+                }
+            } else if (reader.tokenEquals(KEY_HUMIDITY)) {
+                reader.readString();
+                fields.relativeHumidity = reader.tokenAsInt();
+                fields.sensorFields |= (fields.relativeHumidity >= 0) ? SENSOR_HUMIDITY : 0;
+            } else if (reader.tokenEquals(KEY_PARTICLES)) {
+                reader.readString();
+                fields.particles = reader.tokenAsInt();
+                fields.sensorFields |= (fields.particles >= 0) ? SENSOR_PARTICLES : 0;
+            } else if (reader.tokenEquals(KEY_VOLATILE_COMPOUNDS)) {
+                reader.readString();
+
+                if (reader.tokenEquals(VOLATILE_COMPOUNDS_INITIALIZING)) {
+                    fields.volatileCompounds = -1;
+                    fields.sensorFields |= SENSOR_VOLATILE_COMPOUNDS;
+                } else {
+                    fields.volatileCompounds = reader.tokenAsInt();
+                    fields.sensorFields |= (fields.volatileCompounds >= 0) ? SENSOR_VOLATILE_COMPOUNDS : 0;
+                }
+            } else if (reader.tokenEquals(KEY_SLEEP_TIMER)) {
+                reader.readString();
+
+                SleepTimer sleepTimer = SleepTimer.getById(reader.tokenAsString());
+                fields.sleepTimer = (sleepTimer != null) ? sleepTimer : SleepTimer.OFF;
+                fields.sensorFields |= SENSOR_SLEEP_TIMER;
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] encodeAll(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = encode(values[i]);
+        }
+
+        return encoded;
+    }
+
+    // Mutable holder for everything read from a payload before it's known which of it is relevant
+    private static final class DecodedFields {
+
+        private String messageId;
+
+        private String errorCode, warningCode;
+        private int filterLife = -1;
+        private final MqttStateValueProvider[] states = new MqttStateValueProvider[FanState.values().size()];
+        private final Map<FanState<?>, MqttStateValueProvider> previousStates = new HashMap<>(), newStates = new HashMap<>();
+
+        private int sensorFields;
+        private double temperature;
+        private int relativeHumidity, particles, volatileCompounds;
+        private SleepTimer sleepTimer;
+
+    }
+
+    /*
+     * A minimal pull reader over a UTF-8 encoded JSON payload. The most recently read key or string is held as a token
+     * referencing its bounds in the payload so that it can be compared and parsed without being copied. Dyson payloads
+     * are plain ASCII in practice, so strings without escapes or multi-byte characters are decoded directly as Latin-1.
+     */
+    private static final class PayloadReader {
+
+        private final byte[] payload;
+        private int position;
+
+        private int tokenStart, tokenEnd;
+        private boolean tokenSimple;
+
+        private PayloadReader(byte[] payload) {
+            this.payload = payload;
+        }
+
+        private int peek() {
+            while (position < payload.length) {
+                byte next = payload[position];
+                if (next != ' ' && next != '\t' && next != '\n' && next != '\r') {
+                    return next;
+                }
+
+                this.position++;
+            }
+
+            return -1;
+        }
+
+        private void consume(char expected) {
+            if (peek() != expected) {
+                throw malformed("expected '" + expected + "'");
+            }
+
+            this.position++;
+        }
+
+        private void beginObject() {
+            this.consume('{');
+        }
+
+        private void beginArray() {
+            this.consume('[');
+        }
+
+        private boolean nextKey(boolean first) {
+            if (peek() == '}') {
+                this.position++;
+                return false;
+            }
+
+            if (!first) {
+                this.consume(',');
+            }
+
+            this.readString();
+            this.consume(':');
+            return true;
+        }
+
+        private boolean nextElement(boolean first) {
+            if (peek() == ']') {
+                this.position++;
+                return false;
+            }
+
+            if (!first) {
+                this.consume(',');
+            }
+
+            return true;
+        }
+
+        private void endDocument() {
+            if (peek() != -1) {
+                throw malformed("unexpected trailing content");
+            }
+        }
+
+        private void readString() {
+            this.consume('"');
+
+            this.tokenStart = position;
+            this.tokenSimple = true;
+
+            while (position < payload.length) {
+                byte next = payload[position];
+
+                if (next == '"') {
+                    this.tokenEnd = position++;
+                    return;
+                } else if (next == '\\') {
+                    this.tokenSimple = false;
+                    this.position++; // Skip the escaped character so an escaped quote doesn't end the string
+                } else if (next < 0) {
+                    this.tokenSimple = false;
+                }
+
+                this.position++;
+            }
+
+            throw malformed("unterminated string");
+        }
+
+        private void skipValue() {
+            this.skipValue(0);
+        }
+
+        private void skipValue(int depth) {
+            int next = peek();
+
+            if ((next == '{' || next == '[') && depth >= MAX_SKIPPED_DEPTH) {
+                throw malformed("nested too deeply");
+            }
+
+            if (next == '"') {
+                this.readString();
+            } else if (next == '{') {
+                this.beginObject();
+                for (boolean first = true; nextKey(first); first = false) {
+                    this.skipValue(depth + 1);
+                }
+            } else if (next == '[') {
+                this.beginArray();
+                for (boolean first = true; nextElement(first); first = false) {
+                    this.skipValue(depth + 1);
+                }
+            } else {
+                // Numbers, booleans and null. None of which Dyson actually sends, but they're valid JSON nonetheless
+                int start = position;
+                while (position < payload.length) {
+                    byte current = payload[position];
+                    if (current == ',' || current == '}' || current == ']' || current == ' ' || current == '\t' || current == '\n' || current == '\r') {
+                        break;
+                    }
+
+                    this.position++;
+                }
+
+                if (position == start) {
+                    throw malformed("expected a value");
+                }
+            }
+        }
+
+        private boolean tokenEquals(byte[] expected) {
+            if (!tokenSimple || tokenEnd - tokenStart != expected.length) {
+                return false;
+            }
+
+            for (int i = 0; i < expected.length; i++) {
+                if (payload[tokenStart + i] != expected[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private String tokenAsKnownString(String[] known, byte[][] encodedKnown) {
+            for (int i = 0; i < encodedKnown.length; i++) {
+                if (tokenEquals(encodedKnown[i])) {
+                    return known[i];
+                }
+            }
+
+            return tokenAsString();
+        }
+
+        private FanState<?> tokenAsKnownState() {
+            for (int i = 0; i < ENCODED_STATE_IDS.length; i++) {
+                if (tokenEquals(ENCODED_STATE_IDS[i])) {
+                    return FanState.values().get(i);
+                }
+            }
+
+            return null;
+        }
+
+        // Returns -1 if the token is not a non-negative integer, which none of the fields read as integers may legally be
+        private int tokenAsInt() {
+            int length = tokenEnd - tokenStart;
+            if (length == 0 || length > 9) {
+                return -1;
+            }
+
+            int value = 0;
+            for (int i = tokenStart; i < tokenEnd; i++) {
+                int digit = payload[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+
+                value = (value * 10) + digit;
+            }
+
+            return value;
+        }
+
+        private String tokenAsString() {
+            if (tokenSimple) {
+                return new String(payload, tokenStart, tokenEnd - tokenStart, StandardCharsets.ISO_8859_1);
+            }
+
+            StringBuilder builder = new StringBuilder(tokenEnd - tokenStart);
+            int runStart = tokenStart;
+
+            for (int i = tokenStart; i < tokenEnd; i++) {
+                if (payload[i] != '\\') {
+                    continue;
+                }
+
+                builder.append(new String(payload, runStart, i - runStart, StandardCharsets.UTF_8));
+                if (++i >= tokenEnd) {
+                    throw malformed("unterminated escape sequence");
+                }
+
+                switch (payload[i]) {
+                    case '"', '\\', '/' -> builder.append((char) payload[i]);
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> {
+                        if (i + 4 >= tokenEnd) {
+                            throw malformed("unterminated unicode escape sequence");
+                        }
+
+                        try {
+                            builder.append((char) Integer.parseInt(new String(payload, i + 1, 4, StandardCharsets.ISO_8859_1), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed("invalid unicode escape sequence");
+                        }
+
+                        i += 4;
+                    }
+                    default -> throw malformed("invalid escape sequence");
+                }
+
+                runStart = i + 1;
+            }
+
+            return builder.append(new String(payload, runStart, tokenEnd - runStart, StandardCharsets.UTF_8)).toString();
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException("Malformed message payload at index " + position + ": " + reason);
+        }
+
+    }
+
+}
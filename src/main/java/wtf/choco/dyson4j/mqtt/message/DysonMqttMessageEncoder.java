@@ -0,0 +1,291 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+
+/**
+ * An encoder writing {@link DysonMqttMessage DysonMqttMessages} directly as UTF-8 encoded JSON
+ * bytes without building an intermediate JSON tree or string.
+ * <p>
+ * Encoders are reused per thread, and the UTF-8 bytes of message ids, {@link FanState} ids and
+ * constant {@link MqttStateValueProvider} values are computed once and cached. Any other keys
+ * and values are encoded as they're written. The message timestamp is formatted at most once
+ * per second. As a result, encoding a message in steady state allocates only the final payload.
+ */
+public final class DysonMqttMessageEncoder {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final byte[] KEY_MESSAGE_ID = encodeString("msg");
+    private static final byte[] KEY_TIME = encodeString("time");
+
+    private static final ThreadLocal<DysonMqttMessageEncoder> ENCODERS = ThreadLocal.withInitial(DysonMqttMessageEncoder::new);
+    // Only fixed keys and ids are cached, otherwise arbitrary strings written by callers would be held on to forever
+    private static final Map<String, byte[]> ENCODED_STRINGS = encodeStrings(
+            DysonMqttMessage.MESSAGE_ID_STATE_SET, DysonMqttMessage.MESSAGE_ID_REQUEST_CURRENT_STATE, DysonMqttMessageSetState.DATA_KEY
+    );
+    private static final byte[][] ENCODED_STATE_IDS = FanState.values().stream().map(state -> encodeString(state.getId())).toArray(byte[][]::new);
+    private static final Map<MqttStateValueProvider, byte[]> ENCODED_CONSTANT_VALUES = new ConcurrentHashMap<>();
+
+    private static volatile CachedTimestamp cachedTimestamp = new CachedTimestamp(Long.MIN_VALUE, null);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+    private boolean needsSeparator;
+
+    private DysonMqttMessageEncoder() { }
+
+    /**
+     * Write a string field to the current JSON object.
+     *
+     * @param key the field's key
+     * @param value the field's value
+     */
+    public void writeField(@NotNull String key, @NotNull String value) {
+        this.writeKey(key);
+        this.writeEncodedString(value);
+    }
+
+    /**
+     * Write a {@link FanState} and its value as a field to the current JSON object.
+     *
+     * @param state the state whose id to write as the field's key
+     * @param value the value to write
+     */
+    public void writeField(@NotNull FanState<?> state, @NotNull MqttStateValueProvider value) {
+        this.writeKey(ENCODED_STATE_IDS[state.getOrdinal()]);
+
+        // Enum constants are finite and immutable, so their encoded values can be cached without concern
+        if (value instanceof Enum<?>) {
+            this.write(ENCODED_CONSTANT_VALUES.computeIfAbsent(value, constant -> encodeString(constant.getStateValue())));
+        } else {
+            this.writeEncodedString(value.getStateValue());
+        }
+    }
+
+    /**
+     * Begin a nested JSON object under the given key in the current JSON object. Every
+     * call to this method must be followed by a call to {@link #endObject()}.
+     *
+     * @param key the object's key
+     */
+    public void beginObject(@NotNull String key) {
+        this.writeKey(key);
+        this.write((byte) '{');
+        this.needsSeparator = false;
+    }
+
+    /**
+     * End the nested JSON object most recently begun with {@link #beginObject(String)}.
+     */
+    public void endObject() {
+        this.write((byte) '}');
+        this.needsSeparator = true;
+    }
+
+    /**
+     * Encode the given {@link DysonMqttMessage} as UTF-8 JSON bytes.
+     *
+     * @param message the message to encode
+     *
+     * @return the encoded bytes
+     */
+    @NotNull
+    public static byte[] encode(@NotNull DysonMqttMessage<?> message) {
+        return encode(message, Clock.systemUTC());
+    }
+
+    static byte[] encode(DysonMqttMessage<?> message, Clock clock) {
+        if (message instanceof DysonMqttMessageSetState setState && setState.precompiledPayload != null) {
+            return setState.precompiledPayload.encode(clock);
+        }
+
+        DysonMqttMessageEncoder encoder = ENCODERS.get();
+        encoder.size = 0;
+        encoder.needsSeparator = false;
+
+        encoder.write((byte) '{');
+        encoder.writeKey(KEY_MESSAGE_ID);
+        encoder.writeString(message.getMessageId());
+        encoder.writeKey(KEY_TIME);
+        encoder.write(getTimestamp(clock));
+        message.encodeAdditionalData(encoder);
+        encoder.write((byte) '}');
+
+        return Arrays.copyOf(encoder.buffer, encoder.size);
+    }
+
+    /*
+     * Everything in a message but its timestamp is fixed, so the bytes on either side of it can be encoded once. The
+     * timestamp is always the second field, immediately after the message id.
+     */
+    static PrecompiledPayload precompile(DysonMqttMessage<?> message) {
+        DysonMqttMessageEncoder encoder = new DysonMqttMessageEncoder();
+
+        encoder.write((byte) '{');
+        encoder.writeKey(KEY_MESSAGE_ID);
+        encoder.writeString(message.getMessageId());
+        encoder.writeKey(KEY_TIME);
+        byte[] prefix = Arrays.copyOf(encoder.buffer, encoder.size);
+
+        encoder.size = 0;
+        message.encodeAdditionalData(encoder);
+        encoder.write((byte) '}');
+        byte[] suffix = Arrays.copyOf(encoder.buffer, encoder.size);
+
+        return new PrecompiledPayload(prefix, suffix);
+    }
+
+    /*
+     * Dyson fans don't care for sub-second precision, so the formatted timestamp only needs to be updated once per
+     * second. The cached timestamp is immutable, so a stale read at worst results in it being formatted twice.
+     */
+    private static byte[] getTimestamp(Clock clock) {
+        long epochSecond = clock.instant().getEpochSecond();
+
+        CachedTimestamp timestamp = cachedTimestamp;
+        if (timestamp.epochSecond != epochSecond) {
+            timestamp = new CachedTimestamp(epochSecond, encodeString(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(epochSecond))));
+            cachedTimestamp = timestamp;
+        }
+
+        return timestamp.encoded;
+    }
+
+    private void writeKey(String key) {
+        if (needsSeparator) {
+            this.write((byte) ',');
+        }
+
+        this.writeString(key);
+        this.write((byte) ':');
+        this.needsSeparator = true;
+    }
+
+    private void writeKey(byte[] encodedKey) {
+        if (needsSeparator) {
+            this.write((byte) ',');
+        }
+
+        this.write(encodedKey);
+        this.write((byte) ':');
+        this.needsSeparator = true;
+    }
+
+    private void write(byte b) {
+        this.ensureCapacity(1);
+        this.buffer[size++] = b;
+    }
+
+    private void write(byte[] bytes) {
+        this.ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        this.size += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            this.buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    private void writeString(String value) {
+        byte[] encoded = ENCODED_STRINGS.get(value);
+        if (encoded != null) {
+            this.write(encoded);
+        } else {
+            this.writeEncodedString(value);
+        }
+    }
+
+    // Writes a quoted, escaped JSON string. State values are almost always ASCII, so we avoid String#getBytes() entirely
+    private void writeEncodedString(String value) {
+        this.write((byte) '"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+
+            if (character == '"' || character == '\\') {
+                this.write((byte) '\\');
+                this.write((byte) character);
+            } else if (character < 0x20) {
+                this.write((byte) '\\');
+                this.write((byte) 'u');
+                this.write((byte) '0');
+                this.write((byte) '0');
+                this.write((byte) Character.forDigit(character >> 4, 16));
+                this.write((byte) Character.forDigit(character & 0xF, 16));
+            } else if (character < 0x80) {
+                this.write((byte) character);
+            } else {
+                // Rare enough that the allocation here is of no concern
+                int end = Character.isHighSurrogate(character) && i + 1 < value.length() ? i + 2 : i + 1;
+                this.write(value.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                i = end - 1;
+            }
+        }
+
+        this.write((byte) '"');
+    }
+
+    private static Map<String, byte[]> encodeStrings(String... values) {
+        Map<String, byte[]> encodedStrings = new HashMap<>();
+        for (String value : values) {
+            encodedStrings.put(value, encodeString(value));
+        }
+
+        return Collections.unmodifiableMap(encodedStrings);
+    }
+
+    private static byte[] encodeString(String value) {
+        DysonMqttMessageEncoder encoder = new DysonMqttMessageEncoder();
+        encoder.writeEncodedString(value);
+        return Arrays.copyOf(encoder.buffer, encoder.size);
+    }
+
+    static final class PrecompiledPayload {
+
+        private final byte[] prefix, suffix;
+
+        private PrecompiledPayload(byte[] prefix, byte[] suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        private byte[] encode(Clock clock) {
+            byte[] timestamp = getTimestamp(clock);
+            byte[] payload = new byte[prefix.length + timestamp.length + suffix.length];
+
+            System.arraycopy(prefix, 0, payload, 0, prefix.length);
+            System.arraycopy(timestamp, 0, payload, prefix.length, timestamp.length);
+            System.arraycopy(suffix, 0, payload, prefix.length + timestamp.length, suffix.length);
+            return payload;
+        }
+
+    }
+
+    private static final class CachedTimestamp {
+
+        private final long epochSecond;
+        private final byte[] encoded;
+
+        private CachedTimestamp(long epochSecond, byte[] encoded) {
+            this.epochSecond = epochSecond;
+            this.encoded = encoded;
+        }
+
+    }
+
+}
@@ -1,7 +1,5 @@
 package wtf.choco.dyson4j.mqtt.message;
 
-import com.google.gson.JsonObject;
-
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -15,12 +13,17 @@ public abstract class DysonMqttMessageRespondable<R> extends DysonMqttMessage<R>
      * Dyson MQTT response message id for "CURRENT-STATE", sent in response to
      * {@link DysonMqttMessage#MESSAGE_ID_REQUEST_CURRENT_STATE}
      */
-    protected static final String MESSAGE_ID_RESPONSE_CURRENT_STATE = "CURRENT-STATE";
+    protected static final String MESSAGE_ID_RESPONSE_CURRENT_STATE = DysonMqttMessageDecoder.MESSAGE_ID_CURRENT_STATE;
     /**
      * Dyson MQTT response message id for "ENVIRONMENTAL-CURRENT-SENSOR-DATA", sent in response to
      * {@link DysonMqttMessage#MESSAGE_ID_REQUEST_CURRENT_STATE}
      */
-    protected static final String MESSAGE_ID_RESPONSE_ENVIRONMENTAL_CURRENT_SENSOR_DATA = "ENVIRONMENTAL-CURRENT-SENSOR-DATA";
+    protected static final String MESSAGE_ID_RESPONSE_ENVIRONMENTAL_CURRENT_SENSOR_DATA = DysonMqttMessageDecoder.MESSAGE_ID_ENVIRONMENTAL_CURRENT_SENSOR_DATA;
+    /**
+     * Dyson MQTT response message id for "STATE-CHANGE", sent in response to
+     * {@link DysonMqttMessage#MESSAGE_ID_STATE_SET}
+     */
+    protected static final String MESSAGE_ID_RESPONSE_STATE_CHANGE = DysonMqttMessageDecoder.MESSAGE_ID_STATE_CHANGE;
 
     private final String expectedResponseMessageId;
 
@@ -33,6 +36,7 @@ public abstract class DysonMqttMessageRespondable<R> extends DysonMqttMessage<R>
      *
      * @see #MESSAGE_ID_RESPONSE_CURRENT_STATE
      * @see #MESSAGE_ID_RESPONSE_ENVIRONMENTAL_CURRENT_SENSOR_DATA
+     * @see #MESSAGE_ID_RESPONSE_STATE_CHANGE
      */
     public DysonMqttMessageRespondable(@NotNull String messageId, @NotNull String expectedResponseMessageId) {
         super(messageId);
@@ -49,14 +53,46 @@ public abstract class DysonMqttMessageRespondable<R> extends DysonMqttMessage<R>
         return expectedResponseMessageId;
     }
 
+    /**
+     * Check whether or not concurrent requests of this message type may be coalesced into a
+     * single request. If true, while a message of this type is awaiting its response, any
+     * other messages of the same type will not be sent to the fan and will instead be
+     * completed by the same response.
+     * <p>
+     * This should only be true if the response is not affected by any input in the request
+     * message.
+     *
+     * @return true if coalescable, false otherwise
+     */
+    public boolean isCoalescable() {
+        return false;
+    }
+
+    /**
+     * Check whether or not the given message is the response to this message. Only messages
+     * whose id is the {@link #getExpectedResponseMessageId() expected response message id} are
+     * checked. Messages awaiting the same response message id are offered each response in the
+     * order in which they were sent, and a message for which this returns false continues to
+     * await its response.
+     * <p>
+     * By default, every message with the expected id is considered to be the response.
+     *
+     * @param response the decoded incoming message
+     *
+     * @return true if the message is the response to this message, false otherwise
+     */
+    public boolean isResponse(@NotNull DysonMqttIncomingMessage response) {
+        return true;
+    }
+
     /**
      * Called when a response has been received on the MQTT channel for this message.
      *
-     * @param response the response object
+     * @param response the decoded response message
      *
      * @return the result
      */
     @NotNull
-    public abstract R handleResponse(@NotNull JsonObject response);
+    public abstract R handleResponse(@NotNull DysonMqttIncomingMessage response);
 
 }
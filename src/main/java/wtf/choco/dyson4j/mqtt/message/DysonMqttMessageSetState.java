@@ -2,6 +2,7 @@ package wtf.choco.dyson4j.mqtt.message;
 
 import com.google.gson.JsonObject;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -16,10 +17,12 @@ import wtf.choco.dyson4j.setting.MqttStateValueProvider;
  */
 public final class DysonMqttMessageSetState extends DysonMqttMessage<Void> {
 
-    private static final String DATA_KEY = "data";
+    static final String DATA_KEY = "data";
 
     private final Map<FanState<?>, MqttStateValueProvider> states;
 
+    volatile DysonMqttMessageEncoder.PrecompiledPayload precompiledPayload;
+
     /**
      * Construct a new {@link DysonMqttMessageSetState}.
      *
@@ -41,8 +44,42 @@ public final class DysonMqttMessageSetState extends DysonMqttMessage<Void> {
         this(Map.of(state, value));
     }
 
+    /**
+     * Precompile this message such that every time it is encoded, only its timestamp needs to
+     * be written. This is worthwhile only for messages that will be sent many times.
+     *
+     * @return this instance. Allows for chained method calls
+     */
+    @NotNull
+    public DysonMqttMessageSetState precompile() {
+        if (precompiledPayload == null) {
+            this.precompiledPayload = DysonMqttMessageEncoder.precompile(this);
+        }
+
+        return this;
+    }
+
+    /**
+     * Get an unmodifiable view of the states set by this message.
+     *
+     * @return the states and their values
+     */
+    @NotNull
+    public Map<@NotNull FanState<?>, @NotNull MqttStateValueProvider> getStates() {
+        return Collections.unmodifiableMap(states);
+    }
+
     @Override
     protected void populateAdditionalData(JsonObject object) {
+        populateStates(object, states);
+    }
+
+    @Override
+    protected void encodeAdditionalData(DysonMqttMessageEncoder encoder) {
+        encodeStates(encoder, states);
+    }
+
+    static void populateStates(JsonObject object, Map<FanState<?>, MqttStateValueProvider> states) {
         JsonObject data = new JsonObject();
 
         for (Entry<FanState<?>, MqttStateValueProvider> state : states.entrySet()) {
@@ -52,4 +89,14 @@ public final class DysonMqttMessageSetState extends DysonMqttMessage<Void> {
         object.add(DATA_KEY, data);
     }
 
+    static void encodeStates(DysonMqttMessageEncoder encoder, Map<FanState<?>, MqttStateValueProvider> states) {
+        encoder.beginObject(DATA_KEY);
+
+        for (Entry<FanState<?>, MqttStateValueProvider> state : states.entrySet()) {
+            encoder.writeField(state.getKey(), state.getValue());
+        }
+
+        encoder.endObject();
+    }
+
 }
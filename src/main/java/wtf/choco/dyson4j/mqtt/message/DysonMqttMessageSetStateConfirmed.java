@@ -0,0 +1,63 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import com.google.gson.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+
+/**
+ * A {@link DysonMqttMessage} that sets one or more of the Dyson fan's states/settings, and awaits
+ * the "STATE-CHANGE" message with which the fan confirms it has applied them. A state change is
+ * only considered to be the response if it reports every set state at the value to which it was
+ * set, such that state changes made by other means are not mistaken for the confirmation. The
+ * response is packaged as the new values of every state reported by the fan.
+ *
+ * @see DysonMqttMessageSetState
+ */
+public final class DysonMqttMessageSetStateConfirmed extends DysonMqttMessageRespondable<Map<FanState<?>, MqttStateValueProvider>> {
+
+    private final Map<FanState<?>, MqttStateValueProvider> states;
+
+    /**
+     * Construct a new {@link DysonMqttMessageSetStateConfirmed}.
+     *
+     * @param states the states to set
+     */
+    public DysonMqttMessageSetStateConfirmed(@NotNull Map<FanState<?>, MqttStateValueProvider> states) {
+        super(MESSAGE_ID_STATE_SET, MESSAGE_ID_RESPONSE_STATE_CHANGE);
+        this.states = new HashMap<>(states);
+    }
+
+    @Override
+    protected void populateAdditionalData(JsonObject object) {
+        DysonMqttMessageSetState.populateStates(object, states);
+    }
+
+    @Override
+    protected void encodeAdditionalData(DysonMqttMessageEncoder encoder) {
+        DysonMqttMessageSetState.encodeStates(encoder, states);
+    }
+
+    @Override
+    public boolean isResponse(DysonMqttIncomingMessage response) {
+        Map<FanState<?>, MqttStateValueProvider> newStates = response.getNewStates();
+        for (Map.Entry<FanState<?>, MqttStateValueProvider> state : states.entrySet()) {
+            if (!state.getValue().equals(newStates.get(state.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Map<FanState<?>, MqttStateValueProvider> handleResponse(DysonMqttIncomingMessage response) {
+        return response.getNewStates();
+    }
+
+}
@@ -0,0 +1,108 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * The immutable settings with which an {@link MqttTransportConnection} connects to its MQTT server.
+ */
+public final class MqttConnectionSettings {
+
+    private final String host;
+    private final int port;
+    private final String clientId, username, password;
+    private final int keepAliveSeconds;
+
+    /**
+     * Construct new {@link MqttConnectionSettings}.
+     *
+     * @param host the host name or address of the MQTT server
+     * @param port the port of the MQTT server
+     * @param clientId the client id with which to identify to the server
+     * @param username the username with which to authenticate
+     * @param password the password with which to authenticate
+     * @param keepAliveSeconds the maximum amount of seconds between two packets sent to the server
+     * before a ping must be sent to keep the connection alive, or 0 to disable keepalive pings
+     */
+    public MqttConnectionSettings(@NotNull String host, int port, @NotNull String clientId, @NotNull String username, @NotNull String password, int keepAliveSeconds) {
+        Preconditions.checkArgument(host != null, "host must not be null");
+        Preconditions.checkArgument(port > 0 && port <= 0xFFFF, "port must be between 1 and 65535");
+        Preconditions.checkArgument(clientId != null, "clientId must not be null");
+        Preconditions.checkArgument(username != null, "username must not be null");
+        Preconditions.checkArgument(password != null, "password must not be null");
+        Preconditions.checkArgument(keepAliveSeconds >= 0 && keepAliveSeconds <= 0xFFFF, "keepAliveSeconds must be between 0 and 65535");
+
+        this.host = host;
+        this.port = port;
+        this.clientId = clientId;
+        this.username = username;
+        this.password = password;
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    /**
+     * Get the host name or address of the MQTT server.
+     *
+     * @return the host
+     */
+    @NotNull
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the port of the MQTT server.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the client id with which to identify to the server.
+     *
+     * @return the client id
+     */
+    @NotNull
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Get the username with which to authenticate.
+     *
+     * @return the username
+     */
+    @NotNull
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get the password with which to authenticate.
+     *
+     * @return the password
+     */
+    @NotNull
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Get the maximum amount of seconds between two packets sent to the server before a ping
+     * must be sent to keep the connection alive. 0 if keepalive pings are disabled.
+     *
+     * @return the keepalive interval in seconds
+     */
+    public int getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MqttConnectionSettings[host=%s, port=%s, clientId=%s, username=%s, keepAliveSeconds=%s]", host, port, clientId, username, keepAliveSeconds);
+    }
+
+}
@@ -0,0 +1,20 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A handler of messages published to a topic subscribed to by an {@link MqttTransportConnection}.
+ */
+@FunctionalInterface
+public interface MqttMessageHandler {
+
+    /**
+     * Handle a message received from the MQTT server. This method is called on a thread owned
+     * by the {@link MqttTransport} and should therefore return quickly.
+     *
+     * @param topic the topic to which the message was published
+     * @param payload the message payload. Owned by the handler
+     */
+    public void messageArrived(@NotNull String topic, @NotNull byte[] payload);
+
+}
@@ -0,0 +1,145 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Encoding of the handful of MQTT 3.1.1 control packets a client needs to talk to a Dyson fan. Every packet starts
+ * with a fixed header of one byte (packet type in the upper four bits, flags in the lower four) followed by the
+ * remaining length of the packet, encoded in one to four bytes of seven bits each, least significant group first.
+ */
+final class MqttPackets {
+
+    static final int TYPE_CONNACK = 2;
+    static final int TYPE_PUBLISH = 3;
+    static final int TYPE_PUBREL = 6;
+    static final int TYPE_SUBACK = 9;
+    static final int TYPE_PINGRESP = 13;
+
+    static final byte[] PINGREQ = {(byte) 0xC0, 0x00};
+    static final byte[] DISCONNECT = {(byte) 0xE0, 0x00};
+
+    private static final int MAX_REMAINING_LENGTH = 268_435_455;
+
+    private static final byte[] PROTOCOL_NAME = "MQTT".getBytes(StandardCharsets.US_ASCII);
+    private static final int PROTOCOL_LEVEL = 4;
+
+    private static final int CONNECT_FLAG_USERNAME = 0x80;
+    private static final int CONNECT_FLAG_PASSWORD = 0x40;
+    private static final int CONNECT_FLAG_CLEAN_SESSION = 0x02;
+
+    private MqttPackets() { }
+
+    static byte[] connect(MqttConnectionSettings settings) {
+        byte[] clientId = encodeString(settings.getClientId());
+        byte[] username = encodeString(settings.getUsername());
+        byte[] password = encodeString(settings.getPassword());
+
+        int remainingLength = (2 + PROTOCOL_NAME.length) + 1 + 1 + 2 + (2 + clientId.length) + (2 + username.length) + (2 + password.length);
+        ByteBuffer buffer = allocate(0x10, remainingLength);
+
+        putString(buffer, PROTOCOL_NAME);
+        buffer.put((byte) PROTOCOL_LEVEL);
+        buffer.put((byte) (CONNECT_FLAG_USERNAME | CONNECT_FLAG_PASSWORD | CONNECT_FLAG_CLEAN_SESSION));
+        buffer.putShort((short) settings.getKeepAliveSeconds());
+        putString(buffer, clientId);
+        putString(buffer, username);
+        putString(buffer, password);
+
+        return buffer.array();
+    }
+
+    static byte[] subscribe(int packetId, String topicFilter) {
+        byte[] topic = encodeString(topicFilter);
+        ByteBuffer buffer = allocate(0x82, 2 + (2 + topic.length) + 1);
+
+        buffer.putShort((short) packetId);
+        putString(buffer, topic);
+        buffer.put((byte) 0); // Requested QoS
+
+        return buffer.array();
+    }
+
+    static byte[] publish(String topicName, byte[] payload) {
+        byte[] topic = encodeString(topicName);
+        ByteBuffer buffer = allocate(0x30, (2 + topic.length) + payload.length);
+
+        putString(buffer, topic);
+        buffer.put(payload);
+
+        return buffer.array();
+    }
+
+    static byte[] pubAck(int packetId) {
+        return acknowledgement(0x40, packetId);
+    }
+
+    static byte[] pubRec(int packetId) {
+        return acknowledgement(0x50, packetId);
+    }
+
+    static byte[] pubComp(int packetId) {
+        return acknowledgement(0x70, packetId);
+    }
+
+    /*
+     * Decodes the remaining length following the fixed header byte at the buffer's position, advancing past it.
+     * Returns -1 without a meaningful position if not enough bytes are available to decode it yet.
+     */
+    static int readRemainingLength(ByteBuffer buffer) throws ProtocolException {
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int encodedByte = buffer.get() & 0xFF;
+            value |= (encodedByte & 0x7F) << (7 * i);
+
+            if ((encodedByte & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new ProtocolException("Malformed remaining length");
+    }
+
+    private static byte[] acknowledgement(int header, int packetId) {
+        return new byte[] {(byte) header, 0x02, (byte) (packetId >>> 8), (byte) packetId};
+    }
+
+    private static ByteBuffer allocate(int header, int remainingLength) {
+        if (remainingLength > MAX_REMAINING_LENGTH) {
+            throw new IllegalArgumentException("Packet exceeds the maximum MQTT packet size");
+        }
+
+        int lengthSize = (remainingLength < 0x80) ? 1 : (remainingLength < 0x4000) ? 2 : (remainingLength < 0x200000) ? 3 : 4;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + lengthSize + remainingLength);
+        buffer.put((byte) header);
+
+        do {
+            int encodedByte = remainingLength & 0x7F;
+            remainingLength >>>= 7;
+            buffer.put((byte) ((remainingLength > 0) ? (encodedByte | 0x80) : encodedByte));
+        } while (remainingLength > 0);
+
+        return buffer;
+    }
+
+    private static byte[] encodeString(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String exceeds the maximum MQTT string length");
+        }
+
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+}
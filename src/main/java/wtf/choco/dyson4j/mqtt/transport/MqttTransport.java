@@ -0,0 +1,27 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A factory of {@link MqttTransportConnection MqttTransportConnections}. A single transport
+ * is generally shared by many fans and is responsible for the resources (threads, sockets,
+ * buffers) backing the connections it creates.
+ *
+ * @see PahoMqttTransport
+ * @see NioMqttTransport
+ */
+public interface MqttTransport {
+
+    /**
+     * Create a new, not yet connected, {@link MqttTransportConnection} to an MQTT server.
+     *
+     * @param settings the settings with which to connect
+     *
+     * @return the connection
+     *
+     * @throws IllegalStateException if this transport can no longer create connections
+     */
+    @NotNull
+    public MqttTransportConnection createConnection(@NotNull MqttConnectionSettings settings);
+
+}
@@ -0,0 +1,82 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single client connection to an MQTT server created by an {@link MqttTransport}. Sessions
+ * are always clean, and messages are always published with a quality of service of 0 (at most
+ * once), which is all a Dyson fan requires.
+ * <p>
+ * Futures returned by a connection may be completed on a thread owned by the transport, so
+ * any dependent stages should be short and non-blocking.
+ */
+public interface MqttTransportConnection {
+
+    /**
+     * Check whether or not this connection is connected to its MQTT server.
+     *
+     * @return true if connected, false otherwise
+     */
+    public boolean isConnected();
+
+    /**
+     * Connect to the MQTT server. A connection that was disconnected may be connected again
+     * unless it was {@link #close() closed}.
+     *
+     * @param timeout the maximum amount of time to wait for the server to accept the connection
+     *
+     * @return a completable future, completed when the server has accepted the connection
+     */
+    @NotNull
+    public CompletableFuture<Void> connect(@NotNull Duration timeout);
+
+    /**
+     * Subscribe to a topic. Subscriptions only last for as long as the current connection.
+     *
+     * @param topicFilter the topic filter to which to subscribe
+     * @param handler the handler of messages published to matching topics
+     *
+     * @return a completable future, completed when the server has acknowledged the subscription
+     */
+    @NotNull
+    public CompletableFuture<Void> subscribe(@NotNull String topicFilter, @NotNull MqttMessageHandler handler);
+
+    /**
+     * Publish a message to a topic.
+     *
+     * @param topic the topic to which to publish
+     * @param payload the message payload. Must not be modified after calling this method
+     *
+     * @return a completable future, completed when the message has been handed off to the network
+     */
+    @NotNull
+    public CompletableFuture<Void> publish(@NotNull String topic, @NotNull byte[] payload);
+
+    /**
+     * Disconnect from the MQTT server.
+     *
+     * @return a completable future, completed when disconnected
+     */
+    @NotNull
+    public CompletableFuture<Void> disconnect();
+
+    /**
+     * Close this connection and release any resources held by it. A closed connection may not
+     * be connected again.
+     */
+    public void close();
+
+    /**
+     * Set the handler notified when an established connection is lost for any reason other than
+     * a call to {@link #disconnect()} or {@link #close()}.
+     *
+     * @param handler the handler, or null to remove it
+     */
+    public void setConnectionLostHandler(@Nullable Consumer<@NotNull Throwable> handler);
+
+}
@@ -0,0 +1,146 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A single thread multiplexing the sockets of any amount of connections over one Selector. All connection state is
+ * only ever touched on this thread, so connections hand work over by submitting tasks which are run between selects.
+ * Keepalive pings and connect or ping timeouts are checked by a sweep over every connection once per second, which
+ * is plenty precise for keepalive intervals measured in seconds and costs nothing per connection in between.
+ */
+final class NioEventLoop implements Runnable {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // Only accessed on the event loop thread
+    private final Set<NioMqttConnection> connections = new HashSet<>();
+    private long nextSweep;
+
+    private volatile boolean running = true, terminated;
+
+    NioEventLoop(ThreadFactory threadFactory) throws IOException {
+        this.selector = Selector.open();
+        this.thread = threadFactory.newThread(this);
+        this.thread.start();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        this.tasks.add(task);
+
+        // Nothing touches the connections anymore once terminated, so any straggling tasks may run on the caller
+        if (terminated) {
+            this.runTasks();
+        } else if (!inEventLoop()) {
+            this.selector.wakeup();
+        }
+    }
+
+    void register(NioMqttConnection connection) {
+        this.connections.add(connection);
+    }
+
+    void unregister(NioMqttConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    void awaitTermination() throws InterruptedException {
+        if (!inEventLoop()) {
+            this.thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+        this.nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+
+        try {
+            while (running) {
+                long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(nextSweep - System.nanoTime());
+                if (timeoutMillis > 0) {
+                    this.selector.select(timeoutMillis);
+                } else {
+                    this.selector.selectNow();
+                }
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    ((NioMqttConnection) key.attachment()).handleSelected(key);
+                }
+
+                this.runTasks();
+
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    for (NioMqttConnection connection : new ArrayList<>(connections)) {
+                        connection.sweep(now);
+                    }
+
+                    this.nextSweep = now + SWEEP_INTERVAL_NANOS;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("MQTT event loop " + thread.getName() + " failed, closing its " + connections.size() + " connection(s): " + e);
+        } finally {
+            this.running = false;
+
+            // Connections closed here complete their futures, and tasks submitted until now should still run
+            this.runTasks();
+            for (NioMqttConnection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            this.runTasks();
+
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // Nothing more to be done with it
+            }
+
+            this.terminated = true;
+            this.runTasks();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Left to the thread's handler as any executor would, but the event loop must keep running
+                this.thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,557 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/*
+ * A minimal MQTT 3.1.1 client connection driven entirely by its NioEventLoop. Every method of the public interface
+ * hands its work over to the event loop, and every field below the state is only ever accessed on the event loop
+ * thread, so no further synchronization is required.
+ *
+ * Only what a Dyson fan requires is implemented: a clean session, QoS 0 subscriptions and publishes, and keepalive
+ * pings. Incoming QoS 1 and 2 messages are acknowledged for completeness, but not deduplicated.
+ */
+final class NioMqttConnection implements MqttTransportConnection {
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 1024;
+    private static final int MAX_PACKET_SIZE = 1024 * 1024;
+
+    private enum State {
+
+        DISCONNECTED,
+        CONNECTING,
+        AWAITING_CONNACK,
+        CONNECTED,
+        CLOSED;
+
+    }
+
+    private final NioEventLoop eventLoop;
+    private final MqttConnectionSettings settings;
+    private final long keepAliveNanos;
+
+    private volatile State state = State.DISCONNECTED;
+    private volatile Consumer<Throwable> connectionLostHandler;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private final Queue<PendingWrite> writeQueue = new ArrayDeque<>();
+
+    private final Map<String, MqttMessageHandler> subscriptions = new LinkedHashMap<>();
+    private final Map<Integer, PendingSubscription> pendingSubscriptions = new HashMap<>();
+    private int nextPacketId;
+
+    private CompletableFuture<Void> connectFuture, disconnectFuture;
+    private long connectDeadline, lastWrite, pingSentAt;
+    private boolean pingOutstanding;
+
+    NioMqttConnection(NioEventLoop eventLoop, MqttConnectionSettings settings) {
+        this.eventLoop = eventLoop;
+        this.settings = settings;
+
+        // Pings are only checked once per sweep, so send them early enough to never exceed the keepalive (or half of it if shorter)
+        long keepAlive = TimeUnit.SECONDS.toNanos(settings.getKeepAliveSeconds());
+        this.keepAliveNanos = keepAlive - Math.min(TimeUnit.SECONDS.toNanos(1), keepAlive / 2);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> connect(@NotNull Duration timeout) {
+        Preconditions.checkArgument(timeout != null, "timeout must not be null");
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        this.eventLoop.execute(() -> {
+            if (state != State.DISCONNECTED) {
+                future.completeExceptionally(new IllegalStateException((state == State.CLOSED) ? "Connection is closed" : "Already connected or connecting"));
+                return;
+            }
+
+            this.state = State.CONNECTING;
+            this.connectFuture = future;
+            this.connectDeadline = System.nanoTime() + timeout.toNanos();
+            this.eventLoop.register(this);
+
+            try {
+                this.channel = SocketChannel.open();
+                this.channel.configureBlocking(false);
+                this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                if (channel.connect(new InetSocketAddress(settings.getHost(), settings.getPort()))) {
+                    this.key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+                    this.onTransportConnected();
+                } else {
+                    this.key = channel.register(eventLoop.getSelector(), SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                this.terminate(e, false);
+            }
+        });
+
+        return future;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> subscribe(@NotNull String topicFilter, @NotNull MqttMessageHandler handler) {
+        Preconditions.checkArgument(topicFilter != null, "topicFilter must not be null");
+        Preconditions.checkArgument(handler != null, "handler must not be null");
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        this.eventLoop.execute(() -> {
+            if (state != State.CONNECTED) {
+                future.completeExceptionally(new IllegalStateException("Not connected"));
+                return;
+            }
+
+            // Registered before the SUBACK so that no message published right after it is missed
+            int packetId = nextPacketId();
+            this.subscriptions.put(topicFilter, handler);
+            this.pendingSubscriptions.put(packetId, new PendingSubscription(topicFilter, future));
+            this.write(MqttPackets.subscribe(packetId, topicFilter), null);
+        });
+
+        return future;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> publish(@NotNull String topic, @NotNull byte[] payload) {
+        Preconditions.checkArgument(topic != null, "topic must not be null");
+        Preconditions.checkArgument(payload != null, "payload must not be null");
+
+        // Encoded on the caller's thread so the event loop only has to write it
+        byte[] packet = MqttPackets.publish(topic, payload);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        this.eventLoop.execute(() -> {
+            if (state != State.CONNECTED) {
+                future.completeExceptionally(new IllegalStateException("Not connected"));
+                return;
+            }
+
+            this.write(packet, future);
+        });
+
+        return future;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> disconnect() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        this.eventLoop.execute(() -> {
+            if (state == State.CONNECTED && disconnectFuture == null) {
+                // The connection is terminated once the DISCONNECT packet (and everything queued before it) is written
+                this.disconnectFuture = future;
+                this.write(MqttPackets.DISCONNECT, null);
+                return;
+            } else if (state == State.CONNECTED) {
+                this.disconnectFuture.whenComplete((ignore, e) -> future.complete(null));
+                return;
+            }
+
+            if (state == State.CONNECTING || state == State.AWAITING_CONNACK) {
+                this.terminate(new IOException("Disconnected before the connection was established"), false);
+            }
+
+            future.complete(null);
+        });
+
+        return future;
+    }
+
+    @Override
+    public void close() {
+        this.eventLoop.execute(() -> {
+            if (state == State.CLOSED) {
+                return;
+            }
+
+            this.terminate(new IOException("Connection closed"), false);
+            this.state = State.CLOSED;
+        });
+    }
+
+    @Override
+    public void setConnectionLostHandler(Consumer<Throwable> handler) {
+        this.connectionLostHandler = handler;
+    }
+
+    void handleSelected(SelectionKey selectedKey) {
+        try {
+            if (selectedKey.isValid() && selectedKey.isConnectable()) {
+                this.channel.finishConnect();
+                selectedKey.interestOps(SelectionKey.OP_READ);
+                this.onTransportConnected();
+            }
+
+            if (selectedKey.isValid() && selectedKey.isReadable()) {
+                this.read();
+            }
+
+            if (selectedKey.isValid() && selectedKey.isWritable()) {
+                this.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The cause is passed on to the connection lost handler
+            this.terminate(e, true);
+        }
+    }
+
+    void sweep(long now) {
+        if (state == State.CONNECTING || state == State.AWAITING_CONNACK) {
+            if (now - connectDeadline >= 0) {
+                this.terminate(new SocketTimeoutException("Timed out connecting to " + settings.getHost() + ":" + settings.getPort()), false);
+            }
+
+            return;
+        }
+
+        // A keepalive of 0 disables pings altogether
+        if (state != State.CONNECTED || keepAliveNanos == 0) {
+            return;
+        }
+
+        if (pingOutstanding) {
+            if (now - pingSentAt >= keepAliveNanos + TimeUnit.SECONDS.toNanos(1)) {
+                this.terminate(new SocketTimeoutException("Timed out waiting for a ping response"), true);
+            }
+        } else if (now - lastWrite >= keepAliveNanos) {
+            this.pingOutstanding = true;
+            this.pingSentAt = now;
+            this.write(MqttPackets.PINGREQ, null);
+        }
+    }
+
+    private void onTransportConnected() {
+        this.state = State.AWAITING_CONNACK;
+        this.write(MqttPackets.connect(settings), null);
+    }
+
+    private int nextPacketId() {
+        // Packet ids are unsigned 16 bit integers and must not be 0
+        this.nextPacketId = (nextPacketId % 0xFFFF) + 1;
+        return nextPacketId;
+    }
+
+    private void write(byte[] packet, CompletableFuture<Void> future) {
+        if (channel == null) {
+            if (future != null) {
+                future.completeExceptionally(new IllegalStateException("Not connected"));
+            }
+
+            return;
+        }
+
+        this.writeQueue.add(new PendingWrite(ByteBuffer.wrap(packet), future));
+
+        try {
+            this.flush();
+        } catch (IOException e) {
+            this.terminate(e, true);
+        }
+    }
+
+    private void flush() throws IOException {
+        PendingWrite pendingWrite;
+        while ((pendingWrite = writeQueue.peek()) != null) {
+            this.channel.write(pendingWrite.buffer);
+            if (pendingWrite.buffer.hasRemaining()) {
+                break;
+            }
+
+            this.writeQueue.poll();
+            this.lastWrite = System.nanoTime();
+
+            if (pendingWrite.future != null) {
+                pendingWrite.future.complete(null);
+            }
+        }
+
+        if (!writeQueue.isEmpty()) {
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+
+        this.key.interestOps(SelectionKey.OP_READ);
+
+        if (disconnectFuture != null) {
+            this.terminate(null, false);
+        }
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("Connection closed by the server");
+        }
+
+        this.readBuffer.flip();
+
+        while (readBuffer.remaining() >= 2) {
+            int packetStart = readBuffer.position();
+            int header = readBuffer.get() & 0xFF;
+            int remainingLength = MqttPackets.readRemainingLength(readBuffer);
+
+            if (remainingLength > MAX_PACKET_SIZE) {
+                throw new ProtocolException("Packet of " + remainingLength + " bytes exceeds the maximum packet size");
+            }
+
+            if (remainingLength < 0 || readBuffer.remaining() < remainingLength) {
+                this.readBuffer.position(packetStart);
+                break;
+            }
+
+            int packetEnd = readBuffer.position() + remainingLength;
+            this.handlePacket(header, packetEnd);
+            this.readBuffer.position(packetEnd);
+
+            // The packet may have terminated the connection
+            if (channel == null) {
+                return;
+            }
+        }
+
+        this.readBuffer.compact();
+
+        // Grow the buffer if a single packet does not fit. Remaining length is at most 4 bytes, plus 1 for the header
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer grownBuffer = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_PACKET_SIZE + 5));
+            this.readBuffer.flip();
+            grownBuffer.put(readBuffer);
+            this.readBuffer = grownBuffer;
+        }
+    }
+
+    private void handlePacket(int header, int packetEnd) throws IOException {
+        switch (header >>> 4) {
+            case MqttPackets.TYPE_CONNACK -> {
+                if (state != State.AWAITING_CONNACK) {
+                    throw new ProtocolException("Unexpected CONNACK");
+                }
+
+                this.readBuffer.get(); // Acknowledge flags
+                int returnCode = readBuffer.get() & 0xFF;
+                if (returnCode != 0) {
+                    this.terminate(new IOException("Connection refused by the server (return code " + returnCode + ")"), false);
+                    return;
+                }
+
+                this.state = State.CONNECTED;
+                CompletableFuture<Void> future = connectFuture;
+                this.connectFuture = null;
+                future.complete(null);
+            }
+            case MqttPackets.TYPE_PUBLISH -> {
+                int qos = (header >>> 1) & 0x03;
+                int topicLength = readBuffer.getShort() & 0xFFFF;
+                String topic = new String(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), topicLength, StandardCharsets.UTF_8);
+                this.readBuffer.position(readBuffer.position() + topicLength);
+
+                if (qos == 1) {
+                    this.write(MqttPackets.pubAck(readBuffer.getShort() & 0xFFFF), null);
+                } else if (qos == 2) {
+                    this.write(MqttPackets.pubRec(readBuffer.getShort() & 0xFFFF), null);
+                }
+
+                byte[] payload = new byte[packetEnd - readBuffer.position()];
+                this.readBuffer.get(payload);
+                this.dispatch(topic, payload);
+            }
+            case MqttPackets.TYPE_PUBREL -> this.write(MqttPackets.pubComp(readBuffer.getShort() & 0xFFFF), null);
+            case MqttPackets.TYPE_SUBACK -> {
+                int packetId = readBuffer.getShort() & 0xFFFF;
+                int returnCode = readBuffer.get() & 0xFF;
+
+                PendingSubscription subscription = pendingSubscriptions.remove(packetId);
+                if (subscription == null) {
+                    return;
+                }
+
+                if (returnCode == 0x80) {
+                    this.subscriptions.remove(subscription.topicFilter);
+                    subscription.future.completeExceptionally(new IOException("Subscription to \"" + subscription.topicFilter + "\" was refused by the server"));
+                } else {
+                    subscription.future.complete(null);
+                }
+            }
+            case MqttPackets.TYPE_PINGRESP -> this.pingOutstanding = false;
+            default -> { } // PUBACK, PUBREC, PUBCOMP and UNSUBACK are never expected as we never ask for them
+        }
+    }
+
+    private void dispatch(String topic, byte[] payload) {
+        MqttMessageHandler handler = subscriptions.get(topic);
+        if (handler == null) {
+            for (Map.Entry<String, MqttMessageHandler> subscription : subscriptions.entrySet()) {
+                if (matchesTopicFilter(subscription.getKey(), topic)) {
+                    handler = subscription.getValue();
+                    break;
+                }
+            }
+        }
+
+        if (handler == null) {
+            return;
+        }
+
+        try {
+            handler.messageArrived(topic, payload);
+        } catch (RuntimeException e) {
+            System.err.println("Message handler failed to handle MQTT message from " + settings.getHost() + " on topic \"" + topic + "\": " + e);
+        }
+    }
+
+    /*
+     * Closes the socket and fails everything still waiting on it. If the connection was established and terminated for
+     * any reason other than the user's request, the connection lost handler is notified.
+     */
+    private void terminate(Throwable cause, boolean lost) {
+        boolean wasConnected = (state == State.CONNECTED);
+        if (state != State.CLOSED) {
+            this.state = State.DISCONNECTED;
+        }
+
+        this.eventLoop.unregister(this);
+
+        if (channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // The channel is of no further use either way
+            }
+
+            this.channel = null;
+            this.key = null;
+        }
+
+        this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        this.subscriptions.clear();
+        this.pingOutstanding = false;
+
+        Throwable failure = (cause != null) ? cause : new IOException("Disconnected");
+
+        PendingWrite pendingWrite;
+        while ((pendingWrite = writeQueue.poll()) != null) {
+            if (pendingWrite.future != null) {
+                pendingWrite.future.completeExceptionally(failure);
+            }
+        }
+
+        for (PendingSubscription subscription : pendingSubscriptions.values()) {
+            subscription.future.completeExceptionally(failure);
+        }
+        this.pendingSubscriptions.clear();
+
+        if (connectFuture != null) {
+            CompletableFuture<Void> future = connectFuture;
+            this.connectFuture = null;
+            future.completeExceptionally(failure);
+        }
+
+        if (disconnectFuture != null) {
+            CompletableFuture<Void> future = disconnectFuture;
+            this.disconnectFuture = null;
+            future.complete(null);
+            return;
+        }
+
+        Consumer<Throwable> handler = connectionLostHandler;
+        if (lost && wasConnected && handler != null) {
+            handler.accept(failure);
+        }
+    }
+
+    static boolean matchesTopicFilter(String topicFilter, String topic) {
+        int filterIndex = 0, topicIndex = 0;
+        int filterLength = topicFilter.length(), topicLength = topic.length();
+
+        while (filterIndex < filterLength) {
+            char filterChar = topicFilter.charAt(filterIndex);
+
+            if (filterChar == '#') {
+                return true;
+            }
+
+            if (filterChar == '+') {
+                // Match a single level, up to but excluding the next separator
+                while (topicIndex < topicLength && topic.charAt(topicIndex) != '/') {
+                    topicIndex++;
+                }
+
+                filterIndex++;
+                continue;
+            }
+
+            if (topicIndex >= topicLength) {
+                // "a/#" also matches its parent level "a"
+                return filterChar == '/' && filterIndex + 2 == filterLength && topicFilter.charAt(filterIndex + 1) == '#';
+            }
+
+            if (filterChar != topic.charAt(topicIndex)) {
+                return false;
+            }
+
+            filterIndex++;
+            topicIndex++;
+        }
+
+        return topicIndex == topicLength;
+    }
+
+    private static final class PendingWrite {
+
+        private final ByteBuffer buffer;
+        private final CompletableFuture<Void> future;
+
+        private PendingWrite(ByteBuffer buffer, CompletableFuture<Void> future) {
+            this.buffer = buffer;
+            this.future = future;
+        }
+
+    }
+
+    private static final class PendingSubscription {
+
+        private final String topicFilter;
+        private final CompletableFuture<Void> future;
+
+        private PendingSubscription(String topicFilter, CompletableFuture<Void> future) {
+            this.topicFilter = topicFilter;
+            this.future = future;
+        }
+
+    }
+
+}
@@ -0,0 +1,123 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.DaemonThreadFactory;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An {@link MqttTransport} implementing a minimal MQTT 3.1.1 client over non-blocking sockets.
+ * Every connection is assigned to one of a fixed amount of event loop threads, each of which
+ * multiplexes the sockets of all of its connections over a single {@link java.nio.channels.Selector}.
+ * Unlike the {@link PahoMqttTransport}, an idle connection occupies no thread at all, allowing
+ * thousands of fans to be connected using only a handful of threads.
+ * <p>
+ * Message handlers and the futures returned by connections of this transport are run on the
+ * connection's event loop thread. They must be short and must never block, or they will delay
+ * the I/O of every other connection on the same event loop.
+ * <p>
+ * The transport must be {@link #close() closed} once no longer needed in order to stop its
+ * event loop threads, which closes any connection still open.
+ */
+public final class NioMqttTransport implements MqttTransport, AutoCloseable {
+
+    private final NioEventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Construct a new {@link NioMqttTransport}.
+     *
+     * @param eventLoopThreads the amount of event loop threads across which connections are
+     * distributed. Must be positive
+     *
+     * @throws UncheckedIOException if a selector could not be opened
+     */
+    public NioMqttTransport(int eventLoopThreads) {
+        Preconditions.checkArgument(eventLoopThreads > 0, "eventLoopThreads must be positive");
+
+        ThreadFactory threadFactory = new DaemonThreadFactory("Dyson4J MQTT Event Loop");
+        this.eventLoops = new NioEventLoop[eventLoopThreads];
+
+        try {
+            for (int i = 0; i < eventLoopThreads; i++) {
+                this.eventLoops[i] = new NioEventLoop(threadFactory);
+            }
+        } catch (IOException e) {
+            this.close();
+            throw new UncheckedIOException("Could not open selector", e);
+        }
+    }
+
+    /**
+     * Construct a new {@link NioMqttTransport} with one event loop thread per two available
+     * processors.
+     */
+    public NioMqttTransport() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    @NotNull
+    @Override
+    public MqttTransportConnection createConnection(@NotNull MqttConnectionSettings settings) {
+        Preconditions.checkArgument(settings != null, "settings must not be null");
+
+        if (closed) {
+            throw new IllegalStateException("Transport is closed");
+        }
+
+        NioEventLoop eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+        return new NioMqttConnection(eventLoop, settings);
+    }
+
+    /**
+     * Get the amount of event loop threads across which connections are distributed.
+     *
+     * @return the event loop thread count
+     */
+    public int getEventLoopThreads() {
+        return eventLoops.length;
+    }
+
+    /**
+     * Check whether or not this transport has been closed.
+     *
+     * @return true if closed, false otherwise
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close this transport, closing every connection still open and stopping all event loop
+     * threads. This method blocks until every event loop thread has stopped unless called from
+     * one of them.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+
+        for (NioEventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+
+        try {
+            for (NioEventLoop eventLoop : eventLoops) {
+                if (eventLoop != null) {
+                    eventLoop.awaitTermination();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.exception.DysonConnectionException;
+import wtf.choco.dyson4j.mqtt.ICompoundMqttActionListener;
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An {@link MqttTransport} backed by the Eclipse Paho MQTT client. Every connection performs
+ * blocking socket I/O on threads of the connection executor, occupying up to three of them for
+ * as long as it is connected. This is the default transport.
+ */
+public final class PahoMqttTransport implements MqttTransport {
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Construct a new {@link PahoMqttTransport}.
+     *
+     * @param scheduler the scheduler on which keepalive pings are scheduled
+     * @param connectionExecutor the executor on which the blocking comms loops of each client
+     * are run. Must be able to run at least three tasks concurrently per connection
+     */
+    public PahoMqttTransport(@NotNull ScheduledExecutorService scheduler, @NotNull Executor connectionExecutor) {
+        Preconditions.checkArgument(scheduler != null, "scheduler must not be null");
+        Preconditions.checkArgument(connectionExecutor != null, "connectionExecutor must not be null");
+
+        this.executor = new SharedMqttExecutorService(scheduler, connectionExecutor);
+    }
+
+    @NotNull
+    @Override
+    public MqttTransportConnection createConnection(@NotNull MqttConnectionSettings settings) {
+        Preconditions.checkArgument(settings != null, "settings must not be null");
+
+        try {
+            return new PahoConnection(settings, executor);
+        } catch (MqttException e) {
+            throw new DysonConnectionException("Could not create MQTT client", e);
+        }
+    }
+
+    private static final class PahoConnection implements MqttTransportConnection, MqttCallback {
+
+        private final IMqttAsyncClient client;
+        private final MqttConnectOptions connectionOptions;
+
+        private volatile Consumer<Throwable> connectionLostHandler;
+
+        private PahoConnection(MqttConnectionSettings settings, ScheduledExecutorService executor) throws MqttException {
+            /*
+             * We do not need any persistent storage, so null will suffice as per the library's specification.
+             *
+             * Left to its own devices, Paho starts a timer thread for pings and dedicated threads for its comms
+             * loops for every client. Instead, pings are scheduled on the shared scheduler and the comms loops
+             * run on the shared connection executor.
+             */
+            this.client = new MqttAsyncClient("tcp://" + settings.getHost() + ":" + settings.getPort(), settings.getClientId(), null, new ScheduledExecutorPingSender(executor), executor);
+            this.client.setCallback(this);
+
+            this.connectionOptions = new MqttConnectOptions();
+            this.connectionOptions.setCleanSession(true);
+            this.connectionOptions.setKeepAliveInterval(settings.getKeepAliveSeconds());
+            this.connectionOptions.setMaxInflight(0xFFFF); // In flight messages are bounded by the connection handler
+            this.connectionOptions.setUserName(settings.getUsername());
+            this.connectionOptions.setPassword(settings.getPassword().toCharArray());
+        }
+
+        @Override
+        public boolean isConnected() {
+            return client.isConnected();
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> connect(@NotNull Duration timeout) {
+            Preconditions.checkArgument(timeout != null, "timeout must not be null");
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            try {
+                // Paho treats a connection timeout of 0 as no timeout at all
+                this.connectionOptions.setConnectionTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout.getSeconds())));
+                this.client.connect(connectionOptions, null, completing(future));
+            } catch (MqttException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> subscribe(@NotNull String topicFilter, @NotNull MqttMessageHandler handler) {
+            Preconditions.checkArgument(topicFilter != null, "topicFilter must not be null");
+            Preconditions.checkArgument(handler != null, "handler must not be null");
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            try {
+                this.client.subscribe(topicFilter, 0, null, completing(future), (topic, message) -> handler.messageArrived(topic, message.getPayload()));
+            } catch (MqttException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> publish(@NotNull String topic, @NotNull byte[] payload) {
+            Preconditions.checkArgument(topic != null, "topic must not be null");
+            Preconditions.checkArgument(payload != null, "payload must not be null");
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            try {
+                this.client.publish(topic, payload, 0, false, null, completing(future));
+            } catch (MqttException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> disconnect() {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            try {
+                this.client.disconnect(null, completing(future));
+            } catch (MqttException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future;
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.client.close();
+            } catch (MqttException e) {
+                throw new DysonConnectionException("Could not close MQTT client", e);
+            }
+        }
+
+        @Override
+        public void setConnectionLostHandler(Consumer<Throwable> handler) {
+            this.connectionLostHandler = handler;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            Consumer<Throwable> handler = connectionLostHandler;
+            if (handler != null) {
+                handler.accept(cause);
+            }
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) { }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) { }
+
+        private static ICompoundMqttActionListener completing(CompletableFuture<Void> future) {
+            return (token, optionalException) -> optionalException.ifPresentOrElse(future::completeExceptionally, () -> future.complete(null));
+        }
+
+    }
+
+}
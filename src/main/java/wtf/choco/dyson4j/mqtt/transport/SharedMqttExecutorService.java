@@ -0,0 +1,80 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Paho only accepts a single ScheduledExecutorService, but uses it for two very different kinds of work. Keepalive pings
+ * are short scheduled tasks that a single shared thread can serve for any amount of clients, whereas the comms receiver,
+ * sender and callback are blocking loops that occupy a thread for as long as the client is connected and would starve a
+ * fixed-size pool. This splits the two, sending scheduled tasks to the shared scheduler and everything else to an
+ * executor able to grow with the amount of connected clients.
+ *
+ * Both executors are shared between clients, so their lifecycle belongs to whoever supplied them. Shutting this
+ * executor down does nothing.
+ */
+final class SharedMqttExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    SharedMqttExecutorService(ScheduledExecutorService scheduler, Executor executor) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.executor.execute(command);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return scheduler.schedule(command, delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return scheduler.schedule(callable, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(command, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+
+    @Override
+    public void shutdown() { }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return false;
+    }
+
+}
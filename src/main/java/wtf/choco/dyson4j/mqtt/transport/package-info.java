@@ -0,0 +1,8 @@
+/**
+ * The transport layer over which a fan's MQTT connection is established. A
+ * {@link wtf.choco.dyson4j.mqtt.transport.MqttTransport} may be set in the
+ * {@link wtf.choco.dyson4j.DysonFanOptions} to replace the default Eclipse Paho client, such as
+ * the {@link wtf.choco.dyson4j.mqtt.transport.NioMqttTransport} which multiplexes any amount
+ * of connections over a few threads.
+ */
+package wtf.choco.dyson4j.mqtt.transport;
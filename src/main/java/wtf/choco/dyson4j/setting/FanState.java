@@ -1,7 +1,11 @@
 package wtf.choco.dyson4j.setting;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -10,47 +14,53 @@ import wtf.choco.dyson4j.util.Preconditions;
 
 /**
  * Represents a state that a Dyson fan possesses.
+ * <p>
+ * Every state is assigned a dense {@link #getOrdinal() ordinal} in the order in which it was
+ * declared, allowing state values to be stored in arrays or bitsets indexed by state rather than
+ * in hash-based collections.
  *
  * @param <T> the state value type
  */
 public final class FanState<T extends MqttStateValueProvider> {
 
     private static final Map<String, FanState<? extends MqttStateValueProvider>> BY_ID = new HashMap<>();
+    private static final List<FanState<?>> VALUES = new ArrayList<>();
+    private static final List<FanState<?>> VALUES_VIEW = Collections.unmodifiableList(VALUES);
 
     /**
      * The mode of the fan.
      *
      * @see FanMode
      */
-    public static final FanState<FanMode> MODE = new FanState<>("fmod", "Fan Mode", FanMode.class);
+    public static final FanState<FanMode> MODE = new FanState<>("fmod", "Fan Mode", FanMode.class, FanMode::getById);
 
     /**
      * The speed of the fan.
      *
      * @see FanSpeed
      */
-    public static final FanState<FanSpeed> SPEED = new FanState<>("fnsp", "Fan Speed", FanSpeed.class);
+    public static final FanState<FanSpeed> SPEED = new FanState<>("fnsp", "Fan Speed", FanSpeed.class, FanSpeed::getById);
 
     /**
      * Whether or not the fan is oscillating.
      *
      * @see FanOscillation
      */
-    public static final FanState<FanOscillation> OSCILLATION = new FanState<>("oson", "Oscillation", FanOscillation.class);
+    public static final FanState<FanOscillation> OSCILLATION = new FanState<>("oson", "Oscillation", FanOscillation.class, FanOscillation::getById);
 
     /**
      * The sleep timer (in minutes).
      *
      * @see SleepTimer
      */
-    public static final FanState<SleepTimer> SLEEP_TIMER = new FanState<>("sltm", "Sleep Timer", SleepTimer.class);
+    public static final FanState<SleepTimer> SLEEP_TIMER = new FanState<>("sltm", "Sleep Timer", SleepTimer.class, SleepTimer::getById);
 
     /**
      * Whether or not the fan will passively monitor air quality.
      *
      * @see AirQualityMonitor
      */
-    public static final FanState<AirQualityMonitor> MONITOR_AIR_QUALITY = new FanState<>("rhtm", "Monitor Air Quality", AirQualityMonitor.class);
+    public static final FanState<AirQualityMonitor> MONITOR_AIR_QUALITY = new FanState<>("rhtm", "Monitor Air Quality", AirQualityMonitor.class, AirQualityMonitor::getById);
 
     /**
      * Whether or not the fan requires a filter change.
@@ -60,53 +70,68 @@ public final class FanState<T extends MqttStateValueProvider> {
      *
      * @see ResetFilterState
      */
-    public static final FanState<ResetFilterState> RESET_FILTER_STATE = new FanState<>("rsft", "Reset Filter State", ResetFilterState.class);
+    public static final FanState<ResetFilterState> RESET_FILTER_STATE = new FanState<>("rsft", "Reset Filter State", ResetFilterState.class, ResetFilterState::getById);
 
     /**
      * The target air quality the fan will attempt to achieve with its filter.
      *
      * @see AirQualityTarget
      */
-    public static final FanState<AirQualityTarget> AIR_QUALITY_TARGET = new FanState<>("qtar", "Air Quality Target", AirQualityTarget.class);
+    public static final FanState<AirQualityTarget> AIR_QUALITY_TARGET = new FanState<>("qtar", "Air Quality Target", AirQualityTarget.class, AirQualityTarget::getById);
 
     /**
      * Night mode (not to be confused with {@link #MODE}).
      *
      * @see NightMode
      */
-    public static final FanState<NightMode> NIGHT_MODE = new FanState<>("nmod", "Night Mode", NightMode.class);
+    public static final FanState<NightMode> NIGHT_MODE = new FanState<>("nmod", "Night Mode", NightMode.class, NightMode::getById);
 
     /**
      * Heater mode.
      *
      * @see HeatMode
      */
-    public static final FanState<HeatMode> HEAT_MODE = new FanState<>("hmod", "Heat Mode", HeatMode.class);
+    public static final FanState<HeatMode> HEAT_MODE = new FanState<>("hmod", "Heat Mode", HeatMode.class, HeatMode::getById);
 
     /**
      * The type of air distribution focus.
      *
      * @see FocusMode
      */
-    public static final FanState<FocusMode> FOCUS_MODE = new FanState<>("ffoc", "Focus Mode", FocusMode.class);
+    public static final FanState<FocusMode> FOCUS_MODE = new FanState<>("ffoc", "Focus Mode", FocusMode.class, FocusMode::getById);
 
     /**
      * The maximum temperature (in Kelvin) that the fan will attempt to achieve in heat mode.
      *
      * @see TemperatureLimit
      */
-    public static final FanState<TemperatureLimit> MAXIMUM_TEMPERATURE = new FanState<>("hmax", "Maximum Temperature", TemperatureLimit.class);
+    public static final FanState<TemperatureLimit> MAXIMUM_TEMPERATURE = new FanState<>("hmax", "Maximum Temperature", TemperatureLimit.class, TemperatureLimit::getById);
 
+    private final int ordinal;
     private final String id;
     private final String name;
     private final Class<T> valueType;
+    private final Function<String, T> valueParser;
 
-    private FanState(String id, String name, Class<T> valueType) {
+    private FanState(String id, String name, Class<T> valueType, Function<String, T> valueParser) {
+        this.ordinal = VALUES.size();
         this.id = id;
         this.name = name;
         this.valueType = valueType;
+        this.valueParser = valueParser;
 
         BY_ID.put(id, this);
+        VALUES.add(this);
+    }
+
+    /**
+     * Get the ordinal of this fan state. Ordinals are dense, starting at 0 and ending at
+     * {@code values().size() - 1}, and are assigned in the order in which states are declared.
+     *
+     * @return the ordinal
+     */
+    public int getOrdinal() {
+        return ordinal;
     }
 
     /**
@@ -139,6 +164,19 @@ public final class FanState<T extends MqttStateValueProvider> {
         return valueType;
     }
 
+    /**
+     * Parse a value of this state from its internal MQTT value as sent by the fan.
+     *
+     * @param value the MQTT value
+     *
+     * @return the parsed value, or null if the value is not a known value of this state
+     */
+    @Nullable
+    public T parseValue(@NotNull String value) {
+        Preconditions.checkArgument(value != null, "value must not be null");
+        return valueParser.apply(value);
+    }
+
     /**
      * Get a {@link FanState} by its internal MQTT id.
      *
@@ -154,4 +192,15 @@ public final class FanState<T extends MqttStateValueProvider> {
         return (FanState<T>) BY_ID.get(id);
     }
 
+    /**
+     * Get an unmodifiable list of all {@link FanState FanStates}, ordered by their
+     * {@link #getOrdinal() ordinal}.
+     *
+     * @return all fan states
+     */
+    @NotNull
+    public static List<@NotNull FanState<?>> values() {
+        return VALUES_VIEW;
+    }
+
 }
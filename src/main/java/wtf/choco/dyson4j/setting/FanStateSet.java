@@ -0,0 +1,214 @@
+package wtf.choco.dyson4j.setting;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dyson4j.util.Preconditions;
+
+/**
+ * An immutable {@link java.util.Set} of {@link FanState FanStates} represented as a bitmask
+ * over {@link FanState#getOrdinal() state ordinals}. Membership tests and bulk operations
+ * such as {@link #intersect(FanStateSet)} are single bitwise operations.
+ */
+public final class FanStateSet extends AbstractSet<@NotNull FanState<?>> {
+
+    private static final FanStateSet EMPTY = new FanStateSet(0L);
+
+    // There are far fewer than 64 states, but should that ever change, this class will have to be backed by a long[]
+    private static final long ALL_MASK = (FanState.values().size() == Long.SIZE) ? -1L : (1L << FanState.values().size()) - 1;
+    private static final FanStateSet ALL = new FanStateSet(ALL_MASK);
+
+    private final long mask;
+
+    private FanStateSet(long mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Check whether or not this set contains the given {@link FanState}.
+     *
+     * @param state the state to check
+     *
+     * @return true if contained, false otherwise
+     */
+    public boolean contains(@NotNull FanState<?> state) {
+        return state != null && (mask & (1L << state.getOrdinal())) != 0;
+    }
+
+    /**
+     * Get a set of the states contained in both this set and the given set.
+     *
+     * @param other the other set
+     *
+     * @return the intersection of both sets
+     */
+    @NotNull
+    public FanStateSet intersect(@NotNull FanStateSet other) {
+        Preconditions.checkArgument(other != null, "other must not be null");
+        return fromBitMask(mask & other.mask);
+    }
+
+    /**
+     * Get a set of the states contained in either this set or the given set.
+     *
+     * @param other the other set
+     *
+     * @return the union of both sets
+     */
+    @NotNull
+    public FanStateSet union(@NotNull FanStateSet other) {
+        Preconditions.checkArgument(other != null, "other must not be null");
+        return fromBitMask(mask | other.mask);
+    }
+
+    /**
+     * Get a set of the states contained in this set but not in the given set.
+     *
+     * @param other the other set
+     *
+     * @return the difference of both sets
+     */
+    @NotNull
+    public FanStateSet difference(@NotNull FanStateSet other) {
+        Preconditions.checkArgument(other != null, "other must not be null");
+        return fromBitMask(mask & ~other.mask);
+    }
+
+    /**
+     * Get the bitmask representing this set. The bit at each state's {@link FanState#getOrdinal()
+     * ordinal} is set if, and only if, the state is contained in this set.
+     *
+     * @return the bitmask
+     */
+    public long toBitMask() {
+        return mask;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof FanState<?> state && contains(state);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> collection) {
+        if (collection instanceof FanStateSet other) {
+            return (mask & other.mask) == other.mask;
+        }
+
+        return super.containsAll(collection);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(mask);
+    }
+
+    @Override
+    public Iterator<FanState<?>> iterator() {
+        return new Iterator<>() {
+
+            private long remaining = mask;
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            @Override
+            public FanState<?> next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                int ordinal = Long.numberOfTrailingZeros(remaining);
+                this.remaining &= remaining - 1;
+                return FanState.values().get(ordinal);
+            }
+
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof FanStateSet other) {
+            return mask == other.mask;
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Get a {@link FanStateSet} containing the given states.
+     *
+     * @param states the states
+     *
+     * @return the set
+     */
+    @NotNull
+    public static FanStateSet of(@NotNull FanState<?> @NotNull... states) {
+        Preconditions.checkArgument(states != null, "states must not be null");
+
+        long mask = 0L;
+        for (FanState<?> state : states) {
+            Preconditions.checkArgument(state != null, "states must not contain null");
+            mask |= 1L << state.getOrdinal();
+        }
+
+        return fromBitMask(mask);
+    }
+
+    /**
+     * Get a {@link FanStateSet} from the given bitmask, as returned by {@link #toBitMask()}.
+     *
+     * @param mask the bitmask
+     *
+     * @return the set
+     */
+    @NotNull
+    public static FanStateSet fromBitMask(long mask) {
+        Preconditions.checkArgument((mask & ~ALL_MASK) == 0, "mask contains bits that do not represent a FanState");
+
+        if (mask == 0) {
+            return EMPTY;
+        } else if (mask == ALL_MASK) {
+            return ALL;
+        }
+
+        return new FanStateSet(mask);
+    }
+
+    /**
+     * Get an empty {@link FanStateSet}.
+     *
+     * @return the empty set
+     */
+    @NotNull
+    public static FanStateSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Get a {@link FanStateSet} containing every {@link FanState}.
+     *
+     * @return the set of all states
+     */
+    @NotNull
+    public static FanStateSet all() {
+        return ALL;
+    }
+
+}
@@ -4,6 +4,7 @@ import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.dyson4j.util.Preconditions;
 
@@ -87,4 +88,24 @@ public interface SleepTimer extends MqttStateValueProvider {
         return of(hours, TimeUnit.HOURS);
     }
 
+    /**
+     * Get a {@link SleepTimer} by its internal MQTT id.
+     *
+     * @param id the MQTT id
+     *
+     * @return the value that matches the given id, or null if none exists
+     */
+    @Nullable
+    public static SleepTimer getById(@NotNull String id) {
+        if (OFF.getStateValue().equals(id)) {
+            return OFF;
+        }
+
+        try {
+            return ofMinutes(Integer.parseInt(id));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
 }
@@ -1,6 +1,7 @@
 package wtf.choco.dyson4j.setting;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a maximum temperature (represented in Kelvin) that a heater will not exceed.
@@ -34,4 +35,25 @@ public interface TemperatureLimit extends MqttStateValueProvider {
         return new TemperatureLimitKelvin(unit.toKelvin(temperature));
     }
 
+    /**
+     * Get a {@link TemperatureLimit} by its internal MQTT id. The id is represented as a
+     * temperature in tenths of a Kelvin (e.g. {@code "2950"} for 295 Kelvin).
+     *
+     * @param id the MQTT id
+     *
+     * @return the value that matches the given id, or null if none exists
+     */
+    @Nullable
+    public static TemperatureLimit getById(@NotNull String id) {
+        if (id.length() < 3) {
+            return null;
+        }
+
+        try {
+            return of(Integer.parseInt(id.substring(0, 3)), TemperatureUnit.KELVIN);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,35 @@
+package wtf.choco.dyson4j.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link ThreadFactory} creating daemon threads named with a common prefix followed by an
+ * incrementing number. Threads created by Dyson4J are daemon threads so that they never keep
+ * the JVM alive on their own.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Construct a new {@link DaemonThreadFactory}.
+     *
+     * @param namePrefix the prefix of each thread's name
+     */
+    public DaemonThreadFactory(@NotNull String namePrefix) {
+        Preconditions.checkArgument(namePrefix != null, "namePrefix must not be null");
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + " #" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
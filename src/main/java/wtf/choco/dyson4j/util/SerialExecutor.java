@@ -0,0 +1,81 @@
+package wtf.choco.dyson4j.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An {@link Executor} running its tasks one at a time, in the order in which they were
+ * submitted, on a delegate executor. Any amount of serial executors may share the same
+ * delegate, in which case tasks of one serial executor are run in order while tasks of
+ * different serial executors may run in parallel.
+ * <p>
+ * Tasks are run in batches so that a serial executor with a long queue does not occupy a
+ * thread of the delegate indefinitely at the expense of the others.
+ */
+public final class SerialExecutor implements Executor {
+
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Construct a new {@link SerialExecutor}.
+     *
+     * @param delegate the executor on which tasks are run
+     */
+    public SerialExecutor(@NotNull Executor delegate) {
+        Preconditions.checkArgument(delegate != null, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable task) {
+        Preconditions.checkArgument(task != null, "task must not be null");
+
+        this.tasks.add(task);
+        this.schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.delegate.execute(this::runBatch);
+        } catch (RejectedExecutionException e) {
+            this.scheduled.set(false);
+            throw e;
+        }
+    }
+
+    private void runBatch() {
+        try {
+            Runnable task;
+            for (int i = 0; i < MAX_BATCH_SIZE && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // Left to the thread's handler as any executor would, but the remaining tasks must still run
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } finally {
+            this.scheduled.set(false);
+
+            // Tasks may have been added after the last poll but before we were unscheduled
+            if (!tasks.isEmpty()) {
+                this.schedule();
+            }
+        }
+    }
+
+}
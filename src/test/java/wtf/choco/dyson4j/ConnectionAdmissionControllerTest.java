@@ -0,0 +1,73 @@
+package wtf.choco.dyson4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionAdmissionControllerTest {
+
+    @Test
+    void testConcurrencyLimitAndPriority() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            ConnectionAdmissionController controller = new ConnectionAdmissionController(1, Duration.ZERO, scheduler);
+            List<String> started = new CopyOnWriteArrayList<>();
+
+            CompletableFuture<Void> first = new CompletableFuture<>();
+            controller.submit(false, () -> {
+                started.add("first");
+                return first;
+            });
+
+            CompletableFuture<Void> normal = controller.submit(false, () -> {
+                started.add("normal");
+                return CompletableFuture.completedFuture(null);
+            });
+            CompletableFuture<Void> priority = controller.submit(true, () -> {
+                started.add("priority");
+                return CompletableFuture.completedFuture(null);
+            });
+
+            // Only one attempt may be in progress, so the others must wait for the first to complete
+            scheduler.submit(() -> { }).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("first"), started);
+            assertEquals(1, controller.getActiveAttempts());
+            assertEquals(2, controller.getQueuedAttempts());
+
+            first.complete(null);
+            CompletableFuture.allOf(normal, priority).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("first", "priority", "normal"), started);
+            assertEquals(0, controller.getActiveAttempts());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testShutdownSchedulerFailsAttempts() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.shutdown();
+
+        ConnectionAdmissionController controller = new ConnectionAdmissionController(1, Duration.ZERO, scheduler);
+        CompletableFuture<Void> future = controller.submit(false, () -> CompletableFuture.completedFuture(null));
+
+        // The attempt can never start, so it must fail rather than hold onto its slot
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(0, controller.getActiveAttempts());
+    }
+
+}
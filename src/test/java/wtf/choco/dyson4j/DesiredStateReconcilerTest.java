@@ -0,0 +1,104 @@
+package wtf.choco.dyson4j;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import wtf.choco.dyson4j.setting.FanMode;
+import wtf.choco.dyson4j.setting.FanOscillation;
+import wtf.choco.dyson4j.setting.FanSpeed;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.SleepTimer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DesiredStateReconcilerTest {
+
+    private static final String SERIAL_NUMBER = "AB1-US-ABC1234A";
+
+    @Test
+    void testJournalReplay(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("desired-states");
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(DesiredStateJournal.file(path))) {
+            reconciler.setDesiredState(SERIAL_NUMBER, FanState.SPEED, FanSpeed.power(3));
+            reconciler.setDesiredState(SERIAL_NUMBER, FanState.SPEED, FanSpeed.power(7));
+            reconciler.setDesiredState(SERIAL_NUMBER, FanState.MODE, FanMode.AUTO);
+            reconciler.clearDesiredState(SERIAL_NUMBER, FanState.MODE);
+        }
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(DesiredStateJournal.file(path))) {
+            assertEquals(Map.of(FanState.SPEED, FanSpeed.power(7)), reconciler.getDesiredStates(SERIAL_NUMBER));
+        }
+    }
+
+    @Test
+    void testJournalReplayWithTornLine(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("desired-states");
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(DesiredStateJournal.file(path))) {
+            reconciler.setDesiredState(SERIAL_NUMBER, FanState.SPEED, FanSpeed.power(7));
+        }
+
+        // A crash while writing a sleep timer of 120 minutes, which would otherwise replay as 1 minute
+        Files.writeString(path, SERIAL_NUMBER + "\tsltm\t01", StandardOpenOption.APPEND);
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(DesiredStateJournal.file(path))) {
+            assertEquals(Map.of(FanState.SPEED, FanSpeed.power(7)), reconciler.getDesiredStates(SERIAL_NUMBER));
+            reconciler.setDesiredState(SERIAL_NUMBER, FanState.SLEEP_TIMER, SleepTimer.ofMinutes(30));
+        }
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(DesiredStateJournal.file(path))) {
+            assertEquals(Map.of(FanState.SPEED, FanSpeed.power(7), FanState.SLEEP_TIMER, SleepTimer.ofMinutes(30)), reconciler.getDesiredStates(SERIAL_NUMBER));
+        }
+    }
+
+    @Test
+    void testOnlyDifferencesAreSent() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, InetAddress.getByAddress(new byte[] {(byte) 192, (byte) 168, 0, 1}), new DysonFanCredentials(SERIAL_NUMBER, "password"), DysonFanOptions.builder().transport(transport).build());
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler()) {
+            reconciler.setDesiredStates(SERIAL_NUMBER, Map.of(FanState.SPEED, FanSpeed.power(4), FanState.OSCILLATION, FanOscillation.ON));
+            reconciler.manage(fan);
+
+            fan.connect().get(5, TimeUnit.SECONDS);
+            transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\","
+                    + "\"product-state\":{\"fmod\":\"FAN\",\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+
+            List<String> stateSets = awaitStateSets(transport, 1);
+            assertFalse(stateSets.get(0).contains("fnsp"));
+            assertTrue(stateSets.get(0).contains("\"oson\":\"ON\""));
+
+            // Once the fan reports the change, there is nothing left to send
+            transport.lastConnection().deliver("{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:16.000Z\",\"product-state\":{\"oson\":[\"OFF\",\"ON\"]}}");
+            Thread.sleep(100);
+            assertEquals(1, awaitStateSets(transport, 1).size());
+        }
+    }
+
+    private static List<String> awaitStateSets(FakeMqttTransport transport, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        List<String> stateSets;
+        do {
+            stateSets = transport.lastConnection().published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+            if (stateSets.size() >= count) {
+                break;
+            }
+
+            Thread.sleep(10);
+        } while (System.nanoTime() < deadline);
+
+        return stateSets;
+    }
+
+}
@@ -0,0 +1,105 @@
+package wtf.choco.dyson4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DysonFleetTest {
+
+    @Test
+    void testRegister() throws UnknownHostException {
+        try (DysonFleet fleet = DysonFleet.builder().build()) {
+            InetAddress address = address(1);
+            DysonFan fan = fleet.register(FanModel.DYSON_PURE_COOL_LINK_TOWER, address, new DysonFanCredentials("DYSON-AB1-US-ABC1234A", "password"));
+
+            assertEquals("AB1-US-ABC1234A", fan.getSerialNumber());
+            assertSame(fan, fleet.getBySerialNumber("AB1-US-ABC1234A"));
+            assertSame(fan, fleet.getByAddress(address));
+            assertSame(fleet.getBySerialNumber("AB1-US-ABC1234A"), fleet.getFans().iterator().next());
+
+            // Neither serial numbers nor addresses may be registered twice
+            assertThrows(IllegalArgumentException.class, () -> fleet.register(FanModel.DYSON_PURE_COOL, address(2), new DysonFanCredentials("AB1-US-ABC1234A", "password")));
+            assertThrows(IllegalArgumentException.class, () -> fleet.register(FanModel.DYSON_PURE_COOL, address, new DysonFanCredentials("AB1-US-ABC1234B", "password")));
+            assertNull(fleet.getBySerialNumber("AB1-US-ABC1234B"));
+            assertEquals(1, fleet.size());
+
+            fleet.unregister("AB1-US-ABC1234A").join();
+            assertNull(fleet.getByAddress(address));
+            assertEquals(0, fleet.size());
+        }
+    }
+
+    @Test
+    void testHealthAndClose() throws UnknownHostException {
+        DysonFleet fleet = DysonFleet.builder().build();
+        fleet.register(FanModel.DYSON_PURE_COOL, address(1), new DysonFanCredentials("AB1-US-ABC1234A", "password"));
+        fleet.register(FanModel.DYSON_PURE_COOL, address(2), new DysonFanCredentials("AB1-US-ABC1234B", "password"));
+
+        FleetHealth health = fleet.getHealth();
+        assertEquals(2, health.getRegisteredFans());
+        assertEquals(2, health.getDisconnectedFans());
+        assertFalse(health.isHealthy());
+
+        fleet.close();
+        assertTrue(fleet.isClosed());
+        assertEquals(0, fleet.size());
+        assertThrows(IllegalStateException.class, () -> fleet.register(FanModel.DYSON_PURE_COOL, address(3), new DysonFanCredentials("AB1-US-ABC1234C", "password")));
+    }
+
+    @Test
+    void testRegisterDuringClose() throws Exception {
+        DysonFleet fleet = DysonFleet.builder().build();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int thread = i;
+            Thread registeringThread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 50; j++) {
+                        fleet.register(FanModel.DYSON_PURE_COOL, address(thread * 50 + j + 1), new DysonFanCredentials("AB1-US-" + thread + "-" + j, "password"));
+                    }
+                } catch (IllegalStateException e) {
+                    // The fleet was closed. No further fans may be registered
+                } catch (InterruptedException | UnknownHostException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            registeringThread.start();
+            threads.add(registeringThread);
+        }
+
+        start.countDown();
+        fleet.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // No fan may have been registered after the fleet had closed its fans
+        assertEquals(0, fleet.size());
+    }
+
+    @Test
+    void testDefaultTransportIsShared() {
+        DysonFanOptions options = DysonFanOptions.builder().build();
+        assertSame(options.getTransport(), options.getTransport());
+    }
+
+    private static InetAddress address(int lastOctet) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 168, 0, (byte) lastOctet });
+    }
+
+}
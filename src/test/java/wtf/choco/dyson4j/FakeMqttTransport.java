@@ -0,0 +1,119 @@
+package wtf.choco.dyson4j;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import wtf.choco.dyson4j.mqtt.transport.MqttConnectionSettings;
+import wtf.choco.dyson4j.mqtt.transport.MqttMessageHandler;
+import wtf.choco.dyson4j.mqtt.transport.MqttTransport;
+import wtf.choco.dyson4j.mqtt.transport.MqttTransportConnection;
+
+/*
+ * An in-memory transport standing in for a fan's MQTT server. Connections succeed immediately, published payloads are
+ * recorded, and messages may be delivered to subscribers as if sent by the fan.
+ */
+final class FakeMqttTransport implements MqttTransport {
+
+    final List<FakeConnection> connections = new CopyOnWriteArrayList<>();
+
+    // Whether or not connections are dropped as soon as they subscribe, just before the fan considers itself connected
+    volatile boolean dropOnSubscribe;
+
+    @Override
+    public MqttTransportConnection createConnection(MqttConnectionSettings settings) {
+        FakeConnection connection = new FakeConnection(settings, dropOnSubscribe);
+        this.connections.add(connection);
+        return connection;
+    }
+
+    FakeConnection lastConnection() {
+        return connections.get(connections.size() - 1);
+    }
+
+    static final class FakeConnection implements MqttTransportConnection {
+
+        final MqttConnectionSettings settings;
+        final List<String> published = new CopyOnWriteArrayList<>();
+        final Map<String, MqttMessageHandler> subscriptions = new ConcurrentHashMap<>();
+
+        private final boolean dropOnSubscribe;
+
+        volatile boolean closed;
+
+        private volatile boolean connected;
+        private volatile Consumer<Throwable> connectionLostHandler;
+
+        private FakeConnection(MqttConnectionSettings settings, boolean dropOnSubscribe) {
+            this.settings = settings;
+            this.dropOnSubscribe = dropOnSubscribe;
+        }
+
+        void deliver(String payload) {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            this.subscriptions.forEach((topic, handler) -> handler.messageArrived(topic, bytes));
+        }
+
+        void loseConnection(Throwable cause) {
+            this.connected = false;
+            this.subscriptions.clear();
+            this.connectionLostHandler.accept(cause);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public CompletableFuture<Void> connect(Duration timeout) {
+            this.connected = true;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> subscribe(String topicFilter, MqttMessageHandler handler) {
+            this.subscriptions.put(topicFilter, handler);
+            if (dropOnSubscribe) {
+                this.connected = false;
+            }
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> publish(String topic, byte[] payload) {
+            if (!connected) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Not connected"));
+            }
+
+            this.published.add(new String(payload, StandardCharsets.UTF_8));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> disconnect() {
+            this.connected = false;
+            this.subscriptions.clear();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            this.connected = false;
+            this.closed = true;
+        }
+
+        @Override
+        public void setConnectionLostHandler(Consumer<Throwable> handler) {
+            this.connectionLostHandler = handler;
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+package wtf.choco.dyson4j;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import wtf.choco.dyson4j.setting.FanState;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanModelTest {
+
+    private static final Set<FanModel> HEATING_MODELS = Set.of(FanModel.DYSON_PURE_HOT_COOL_LINK_TOWER, FanModel.DYSON_PURE_HOT_COOL);
+
+    @Test
+    void testFansSupportEveryNonHeatingState() {
+        for (FanModel model : FanModel.values()) {
+            if (model == FanModel.DYSON_360_EYE) {
+                continue;
+            }
+
+            // Every state could be set on every model before support was declared per model
+            for (FanState<?> state : FanState.values()) {
+                boolean heating = (state == FanState.HEAT_MODE || state == FanState.MAXIMUM_TEMPERATURE);
+                assertEquals(!heating || HEATING_MODELS.contains(model), model.supportsFeature(state), () -> model + " " + state.getId());
+            }
+        }
+    }
+
+    @Test
+    void test360EyeSupportsNoFanStates() {
+        assertTrue(FanModel.DYSON_360_EYE.supportedStates().isEmpty());
+    }
+
+}
@@ -0,0 +1,45 @@
+package wtf.choco.dyson4j;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconnectPolicyTest {
+
+    @Test
+    void testBackoff() {
+        ReconnectPolicy policy = ReconnectPolicy.builder().initialDelay(Duration.ofSeconds(1)).maxDelay(Duration.ofSeconds(10)).jitter(0).build();
+
+        assertEquals(Duration.ofSeconds(1), policy.getDelay(1));
+        assertEquals(Duration.ofSeconds(2), policy.getDelay(2));
+        assertEquals(Duration.ofSeconds(8), policy.getDelay(4));
+        assertEquals(Duration.ofSeconds(10), policy.getDelay(5));
+        assertEquals(Duration.ofSeconds(10), policy.getDelay(100));
+    }
+
+    @Test
+    void testJitter() {
+        ReconnectPolicy policy = ReconnectPolicy.builder().initialDelay(Duration.ofSeconds(4)).jitter(0.5).build();
+
+        for (int i = 0; i < 100; i++) {
+            Duration delay = policy.getDelay(1);
+            assertTrue(delay.compareTo(Duration.ofSeconds(2)) >= 0 && delay.compareTo(Duration.ofSeconds(4)) <= 0, delay::toString);
+        }
+    }
+
+    @Test
+    void testMaxAttempts() {
+        ReconnectPolicy policy = ReconnectPolicy.builder().maxAttempts(3).build();
+        assertTrue(policy.canAttempt(3));
+        assertFalse(policy.canAttempt(4));
+
+        assertTrue(ReconnectPolicy.defaults().canAttempt(Integer.MAX_VALUE));
+        assertFalse(ReconnectPolicy.disabled().isEnabled());
+        assertFalse(ReconnectPolicy.disabled().canAttempt(1));
+    }
+
+}
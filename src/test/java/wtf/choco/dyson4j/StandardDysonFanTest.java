@@ -0,0 +1,665 @@
+package wtf.choco.dyson4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import wtf.choco.dyson4j.event.DysonFanEvent;
+import wtf.choco.dyson4j.event.EventOverflowPolicy;
+import wtf.choco.dyson4j.event.FanConnectionStateEvent;
+import wtf.choco.dyson4j.event.FanStateChangeEvent;
+import wtf.choco.dyson4j.event.FanStatusEvent;
+import wtf.choco.dyson4j.exception.DysonBackpressureException;
+import wtf.choco.dyson4j.exception.DysonConnectionException;
+import wtf.choco.dyson4j.setting.FanMode;
+import wtf.choco.dyson4j.setting.FanOscillation;
+import wtf.choco.dyson4j.setting.FanSpeed;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.HeatMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandardDysonFanTest {
+
+    private static final DysonFanCredentials CREDENTIALS = new DysonFanCredentials("AB1-US-ABC1234A", "password");
+    private static final String STATUS = "{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}";
+
+    @Test
+    void testConcurrentConnectCreatesSingleHandler() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<DysonFan>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return fan;
+                }, executor).thenCompose(DysonFan::connect));
+            }
+
+            start.countDown();
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(fan.isConnected());
+        assertEquals(1, transport.connections.size());
+    }
+
+    @Test
+    void testEagerConnectionHandler() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).eagerConnectionHandler(true).build());
+        assertEquals(1, transport.connections.size());
+
+        fan.connect().get(5, TimeUnit.SECONDS);
+        assertEquals(1, transport.connections.size());
+    }
+
+    @Test
+    void testStateChangesAreSentInOrder() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(fan.setState(FanState.SPEED, FanSpeed.power((i % 10) + 1)));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        List<String> speeds = new ArrayList<>();
+        for (String payload : transport.lastConnection().published) {
+            int index = payload.indexOf("\"fnsp\":\"");
+            if (index >= 0) {
+                speeds.add(payload.substring(index + 8, index + 12));
+            }
+        }
+
+        assertEquals(100, speeds.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FanSpeed.power((i % 10) + 1).getStateValue(), speeds.get(i));
+        }
+    }
+
+    @Test
+    void testConnectionLostWhileSeedingStatus() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        transport.dropOnSubscribe = true;
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build());
+
+        // The status can't be requested, but the connection itself was made
+        assertSame(fan, fan.connect().get(5, TimeUnit.SECONDS));
+        assertFalse(fan.isConnected());
+        assertTrue(transport.lastConnection().published.isEmpty());
+    }
+
+    @Test
+    void testDestroyWhileReconnecting() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).reconnectPolicy(ReconnectPolicy.builder().initialDelay(Duration.ofMinutes(1)).build()).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        fan.getEventPublisher().subscribe(new Flow.Subscriber<>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(DysonFanEvent item) { }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+
+        });
+
+        // The connection loss is handled on the completion executor
+        transport.lastConnection().loseConnection(new IOException("Connection reset"));
+        for (int i = 0; i < 50 && fan.getConnectionState() != FanConnectionState.RECONNECTING; i++) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(FanConnectionState.RECONNECTING, fan.getConnectionState());
+
+        // The handler exists but isn't connected, and must still be torn down along with the event publisher
+        fan.disconnect(true).get(5, TimeUnit.SECONDS);
+        assertTrue(transport.lastConnection().closed);
+        completed.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testSlowSubscriberDoesNotBlockConnectionStateChanges() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport)
+                .eventOverflowPolicy(EventOverflowPolicy.BLOCK).eventBufferCapacity(1)
+                .reconnectPolicy(ReconnectPolicy.disabled())
+                .build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        // Never requests anything, so its buffer fills up with the first event
+        CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        fan.getEventPublisher().subscribe(new Flow.Subscriber<>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription value) {
+                subscription.complete(value);
+            }
+
+            @Override
+            public void onNext(DysonFanEvent item) { }
+
+            @Override
+            public void onError(Throwable throwable) { }
+
+            @Override
+            public void onComplete() { }
+
+        });
+
+        try {
+            fan.disconnect(false).get(5, TimeUnit.SECONDS);
+
+            // Blocks publishing its event as the subscriber's buffer is full, but must not hold up anything else while doing so
+            CompletableFuture.runAsync(fan::connect);
+            for (int i = 0; i < 50 && fan.getConnectionState() != FanConnectionState.CONNECTED; i++) {
+                Thread.sleep(100);
+            }
+
+            // Only the state change is of interest here, the disconnection itself is free to complete whenever it can
+            CompletableFuture.supplyAsync(() -> fan.disconnect(false)).get(5, TimeUnit.SECONDS);
+            assertEquals(FanConnectionState.DISCONNECTED, fan.getConnectionState());
+        } finally {
+            subscription.get(5, TimeUnit.SECONDS).cancel();
+        }
+    }
+
+    @Test
+    void testKeepAliveInterval() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).keepAliveInterval(Duration.ofSeconds(30)).keepAliveJitter(Duration.ofSeconds(5)).build();
+        new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+        int keepAlive = transport.lastConnection().settings.getKeepAliveSeconds();
+        assertTrue(keepAlive >= 25 && keepAlive <= 30, () -> "keepalive of " + keepAlive);
+
+        // A zero interval disables pings, which no amount of jitter may change
+        options = DysonFanOptions.builder().transport(transport).keepAliveInterval(Duration.ZERO).build();
+        new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+        assertEquals(0, transport.lastConnection().settings.getKeepAliveSeconds());
+
+        assertThrows(IllegalArgumentException.class, () -> DysonFanOptions.builder().keepAliveInterval(Duration.ofMillis(500)));
+    }
+
+    @Test
+    void testInFlightWindowQueuesMessages() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).maxInFlightMessages(1).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        // The state request holds the only slot until the fan responds to it
+        CompletableFuture<?> request = fan.requestCurrentState();
+        CompletableFuture<Void> change = fan.setState(FanState.SPEED, FanSpeed.power(5));
+
+        Thread.sleep(100);
+        assertFalse(change.isDone());
+        assertEquals(1, transport.lastConnection().published.size());
+        assertEquals(2, fan.getPendingMessages());
+
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fmod\":\"FAN\",\"fnsp\":\"0004\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        request.get(5, TimeUnit.SECONDS);
+        change.get(5, TimeUnit.SECONDS);
+        assertEquals(2, transport.lastConnection().published.size());
+    }
+
+    @Test
+    void testInFlightWindowFailsFast() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).maxInFlightMessages(1).backpressurePolicy(BackpressurePolicy.FAIL_FAST).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        fan.requestCurrentState();
+        CompletableFuture<Void> change = fan.setState(FanState.SPEED, FanSpeed.power(5));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> change.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DysonBackpressureException.class, e.getCause());
+        assertEquals(1, transport.lastConnection().published.size());
+    }
+
+    @Test
+    void testInFlightWindowBlocksCaller() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).maxInFlightMessages(1).backpressurePolicy(BackpressurePolicy.BLOCK).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        // The state request sent upon connecting holds the only slot until the fan responds to it
+        CompletableFuture<CompletableFuture<Void>> change = new CompletableFuture<>();
+        Thread caller = new Thread(() -> change.complete(fan.setState(FanState.SPEED, FanSpeed.power(5))));
+        caller.start();
+
+        // It's the caller that waits for the slot, not a thread of the completion executor
+        Thread.sleep(100);
+        assertFalse(change.isDone());
+        assertEquals(Thread.State.TIMED_WAITING, caller.getState());
+        assertEquals(1, transport.lastConnection().published.size());
+
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fmod\":\"FAN\",\"fnsp\":\"0004\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        change.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertEquals(2, transport.lastConnection().published.size());
+        assertTrue(transport.lastConnection().published.get(1).contains("\"fnsp\":\"0005\""));
+    }
+
+    @Test
+    void testResponseTimeout() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+        deliverStatus(transport, fan, STATUS);
+
+        // The fan never responds
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> fan.requestCurrentState(Duration.ofMillis(100)).get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        awaitPendingMessages(fan, 0);
+    }
+
+    @Test
+    void testCancellationRemovesPendingMessage() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+        deliverStatus(transport, fan, STATUS);
+
+        CompletableFuture<DeviceStatus> future = fan.requestCurrentState(Duration.ofSeconds(5));
+        assertEquals(1, fan.getPendingMessages());
+
+        future.cancel(false);
+        awaitPendingMessages(fan, 0);
+
+        // A response arriving afterwards is of no concern to anybody
+        deliverStatus(transport, fan, STATUS.replace("0004", "0005"));
+        assertEquals(0, fan.getPendingMessages());
+    }
+
+    @Test
+    void testDisconnectFailsPendingMessages() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+        deliverStatus(transport, fan, STATUS);
+
+        CompletableFuture<DeviceStatus> future = fan.requestCurrentState(Duration.ofSeconds(5));
+        fan.disconnect(false).get(5, TimeUnit.SECONDS);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DysonConnectionException.class, exception.getCause());
+    }
+
+    @Test
+    void testRequestsAreCoalesced() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+        deliverStatus(transport, fan, STATUS);
+
+        CompletableFuture<DeviceStatus> first = fan.requestCurrentState(Duration.ofSeconds(5));
+        CompletableFuture<DeviceStatus> second = fan.requestCurrentState(Duration.ofSeconds(5));
+        CompletableFuture<DeviceStatus> third = fan.requestCurrentState(Duration.ofSeconds(5));
+        assertEquals(1, fan.getPendingMessages());
+
+        // One caller giving up leaves the others waiting on the same request
+        first.cancel(false);
+        assertEquals(1, fan.getPendingMessages());
+
+        deliverStatus(transport, fan, STATUS.replace("0004", "0005"));
+        assertEquals(FanSpeed.power(5), second.get(5, TimeUnit.SECONDS).getState(FanState.SPEED));
+        assertEquals(FanSpeed.power(5), third.get(5, TimeUnit.SECONDS).getState(FanState.SPEED));
+        assertTrue(first.isCancelled());
+
+        // Once upon connecting, and once more for all three callers
+        assertEquals(2, transport.lastConnection().published.stream().filter(payload -> payload.contains("REQUEST-CURRENT-STATE")).count());
+        awaitPendingMessages(fan, 0);
+    }
+
+    @Test
+    void testStateChangeUpdatesCachedStatus() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+        deliverStatus(transport, fan, STATUS);
+
+        deliverStatus(transport, fan, "{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:16.000Z\",\"product-state\":{\"fnsp\":[\"0004\",\"0005\"]}}");
+        assertEquals(FanSpeed.power(5), fan.getCachedStatus().getState(FanState.SPEED));
+        assertEquals(FanOscillation.OFF, fan.getCachedStatus().getState(FanState.OSCILLATION));
+    }
+
+    @Test
+    void testStateChangesAreMergedWithinCoalescingWindow() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).stateCoalescingWindow(Duration.ofMillis(100)).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> speed = fan.setState(FanState.SPEED, FanSpeed.power(3));
+        CompletableFuture<Void> oscillation = fan.setState(FanState.OSCILLATION, FanOscillation.ON);
+        CompletableFuture<Void> newSpeed = fan.setState(FanState.SPEED, FanSpeed.power(5));
+        CompletableFuture.allOf(speed, oscillation, newSpeed).get(5, TimeUnit.SECONDS);
+
+        List<String> stateSets = transport.lastConnection().published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+        assertEquals(1, stateSets.size());
+        assertTrue(stateSets.get(0).contains("\"fnsp\":\"0005\""));
+        assertTrue(stateSets.get(0).contains("\"oson\":\"ON\""));
+    }
+
+    @Test
+    void testEventsArePublished() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build());
+
+        BlockingQueue<DysonFanEvent> events = new LinkedBlockingQueue<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        fan.getEventPublisher().subscribe(new Flow.Subscriber<>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(DysonFanEvent item) {
+                events.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) { }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+
+        });
+
+        fan.connect().get(5, TimeUnit.SECONDS);
+        FanConnectionStateEvent connected = assertInstanceOf(FanConnectionStateEvent.class, events.poll(5, TimeUnit.SECONDS));
+        assertEquals(FanConnectionState.DISCONNECTED, connected.getPreviousState());
+        assertEquals(FanConnectionState.CONNECTED, connected.getNewState());
+
+        transport.lastConnection().deliver(STATUS);
+        assertInstanceOf(FanStatusEvent.class, events.poll(5, TimeUnit.SECONDS));
+
+        transport.lastConnection().deliver("{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:16.000Z\",\"product-state\":{\"oson\":[\"OFF\",\"ON\"]}}");
+        FanStateChangeEvent stateChange = assertInstanceOf(FanStateChangeEvent.class, events.poll(5, TimeUnit.SECONDS));
+        assertEquals(FanOscillation.ON, stateChange.getNewValue(FanState.OSCILLATION));
+
+        // Destroying the fan completes its subscribers once the last event has been delivered
+        fan.disconnect().get(5, TimeUnit.SECONDS);
+        FanConnectionStateEvent disconnected = assertInstanceOf(FanConnectionStateEvent.class, events.poll(5, TimeUnit.SECONDS));
+        assertEquals(FanConnectionState.DISCONNECTED, disconnected.getNewState());
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void testCoalescedRequestOutlivesFirstCallerTimeout() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+
+        // Answer the status request made upon connecting first, so that it isn't the request being coalesced with
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:14.000Z\",\"product-state\":{\"fnsp\":\"0003\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        CompletableFuture<DeviceStatus> impatient = fan.requestCurrentState(Duration.ofMillis(100));
+        CompletableFuture<DeviceStatus> patient = fan.requestCurrentState(Duration.ofSeconds(5));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> impatient.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof TimeoutException);
+
+        // The second caller is still waiting on the same request, which must not have timed out with the first
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        assertEquals(FanSpeed.power(4), patient.get(5, TimeUnit.SECONDS).getState(FanState.SPEED));
+        assertEquals(2, transport.lastConnection().published.stream().filter(payload -> payload.contains("REQUEST-CURRENT-STATE")).count());
+    }
+
+    @Test
+    void testSnapshotIsNotCoalescedWithCurrentStateRequest() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+
+        String currentState = "{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fmod\":\"FAN\",\"fnsp\":\"0004\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}";
+        String sensorData = "{\"msg\":\"ENVIRONMENTAL-CURRENT-SENSOR-DATA\",\"time\":\"2022-06-01T12:30:15.000Z\",\"data\":{\"tact\":\"2950\",\"hact\":\"0053\",\"pact\":\"0004\",\"vact\":\"INIT\",\"sltm\":\"OFF\"}}";
+
+        // The sensor data sent in response to a request already in flight arrives before the snapshot is requested
+        CompletableFuture<DeviceStatus> request = fan.requestCurrentState();
+        transport.lastConnection().deliver(sensorData);
+        Thread.sleep(100);
+
+        CompletableFuture<DeviceSnapshot> snapshot = fan.requestSnapshot();
+        assertEquals(2, transport.lastConnection().published.stream().filter(payload -> payload.contains("REQUEST-CURRENT-STATE")).count());
+
+        transport.lastConnection().deliver(currentState);
+        transport.lastConnection().deliver(currentState);
+        transport.lastConnection().deliver(sensorData);
+
+        request.get(5, TimeUnit.SECONDS);
+        DeviceSnapshot result = snapshot.get(5, TimeUnit.SECONDS);
+        assertEquals(FanSpeed.power(4), result.getStatus().getState(FanState.SPEED));
+        assertEquals(53, result.getSensorData().getRelativeHumidity());
+    }
+
+    @Test
+    void testOfflineStatesAreMergedOnConnect() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).offlineBufferDeadline(Duration.ofSeconds(5)).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            futures.add(fan.setState(FanState.SPEED, FanSpeed.power(i)));
+        }
+
+        futures.add(fan.setState(FanState.OSCILLATION, FanOscillation.ON));
+        assertFalse(futures.get(0).isDone());
+
+        fan.connect().get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        List<String> stateSets = transport.lastConnection().published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+        assertEquals(1, stateSets.size());
+        assertTrue(stateSets.get(0).contains("\"fnsp\":\"" + FanSpeed.power(10).getStateValue() + "\""));
+        assertTrue(stateSets.get(0).contains("\"oson\":\"ON\""));
+    }
+
+    @Test
+    void testOfflineStatesExpire() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).offlineBufferDeadline(Duration.ofMillis(50)).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options);
+
+        CompletableFuture<Void> change = fan.setState(FanState.SPEED, FanSpeed.power(5));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> change.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+
+        fan.connect().get(5, TimeUnit.SECONDS);
+        assertTrue(transport.lastConnection().published.stream().noneMatch(payload -> payload.contains("STATE-SET")));
+    }
+
+    @Test
+    void testRedundantStateChangesAreSuppressed() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).suppressRedundantStateChanges(true).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Nothing changes, so nothing is sent
+        assertTrue(fan.setState(FanState.SPEED, FanSpeed.power(4)).isDone());
+
+        // Only the oscillation changes
+        fan.setState(change -> change.setState(FanState.SPEED, FanSpeed.power(4)).setState(FanState.OSCILLATION, FanOscillation.ON)).get(5, TimeUnit.SECONDS);
+
+        // The fan has not yet confirmed the speed of 5, so setting it back to 4 is not redundant
+        fan.setState(FanState.SPEED, FanSpeed.power(5)).get(5, TimeUnit.SECONDS);
+        fan.setState(FanState.SPEED, FanSpeed.power(4)).get(5, TimeUnit.SECONDS);
+        assertTrue(fan.setState(FanState.SPEED, FanSpeed.power(4)).isDone());
+
+        List<String> stateSets = transport.lastConnection().published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+        assertEquals(3, stateSets.size());
+        assertFalse(stateSets.get(0).contains("fnsp"));
+        assertTrue(stateSets.get(0).contains("\"oson\":\"ON\""));
+    }
+
+    @Test
+    void testRejectedStateChangeIsSentAgain() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).suppressRedundantStateChanges(true).build();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        fan.setState(FanState.SPEED, FanSpeed.power(5)).get(5, TimeUnit.SECONDS);
+        assertTrue(fan.setState(FanState.SPEED, FanSpeed.power(5)).isDone());
+        DeviceStatus status = fan.getCachedStatus();
+
+        // The fan didn't take the new speed, so setting it once more is no longer redundant
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:16.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == status && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        fan.setState(FanState.SPEED, FanSpeed.power(5)).get(5, TimeUnit.SECONDS);
+
+        List<String> stateSets = transport.lastConnection().published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+        assertEquals(2, stateSets.size());
+    }
+
+    @Test
+    void testSetStateConfirmed() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+
+        transport.lastConnection().deliver("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"product-state\":{\"fnsp\":\"0004\",\"oson\":\"OFF\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\"}}");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        CompletableFuture<DeviceStatus> future = fan.setStateConfirmed(FanState.SPEED, FanSpeed.power(5));
+
+        // A state change made by other means is not the confirmation
+        transport.lastConnection().deliver("{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:16.000Z\",\"product-state\":{\"oson\":[\"OFF\",\"ON\"]}}");
+        Thread.sleep(100);
+        assertFalse(future.isDone());
+
+        transport.lastConnection().deliver("{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:17.000Z\",\"product-state\":{\"fnsp\":[\"0004\",\"0005\"]}}");
+        DeviceStatus status = future.get(5, TimeUnit.SECONDS);
+        assertEquals(FanSpeed.power(5), status.getState(FanState.SPEED));
+        assertEquals(FanOscillation.ON, status.getState(FanState.OSCILLATION));
+    }
+
+    @Test
+    void testUnsupportedStatesAreRejected() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFan fan = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, DysonFanOptions.builder().transport(transport).build()).connect().get(5, TimeUnit.SECONDS);
+
+        assertThrows(IllegalArgumentException.class, () -> fan.setState(FanState.HEAT_MODE, HeatMode.HEAT));
+        assertThrows(IllegalArgumentException.class, () -> fan.setState(change -> change.setState(FanState.SPEED, FanSpeed.power(5)).setState(FanState.HEAT_MODE, HeatMode.HEAT)));
+        assertThrows(IllegalArgumentException.class, () -> fan.setStateConfirmed(FanState.HEAT_MODE, HeatMode.HEAT));
+        assertTrue(transport.lastConnection().published.stream().noneMatch(payload -> payload.contains("STATE-SET")));
+
+        // Power control remains available
+        fan.setState(FanState.MODE, FanMode.OFF).get(5, TimeUnit.SECONDS);
+        assertTrue(transport.lastConnection().published.stream().anyMatch(payload -> payload.contains("\"fmod\":\"OFF\"")));
+    }
+
+    @Test
+    void testStateChangeAppliedToManyFans() throws Exception {
+        FakeMqttTransport transport = new FakeMqttTransport();
+        DysonFanOptions options = DysonFanOptions.builder().transport(transport).build();
+        DysonFan first = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), CREDENTIALS, options).connect().get(5, TimeUnit.SECONDS);
+        DysonFan second = new StandardDysonFan(FanModel.DYSON_PURE_COOL, address(), new DysonFanCredentials("AB1-US-ABC1234B", "password"), options).connect().get(5, TimeUnit.SECONDS);
+
+        StateChange change = StateChange.builder().setState(FanState.SPEED, FanSpeed.power(5)).setState(FanState.HEAT_MODE, HeatMode.HEAT).build();
+        assertSame(change.compile(FanModel.DYSON_PURE_COOL), change.compile(FanModel.DYSON_PURE_COOL));
+
+        change.applyTo(List.of(first, second)).get(5, TimeUnit.SECONDS);
+        change.applyTo(List.of(first, second)).get(5, TimeUnit.SECONDS);
+
+        for (FakeMqttTransport.FakeConnection connection : transport.connections) {
+            List<String> stateSets = connection.published.stream().filter(payload -> payload.contains("STATE-SET")).toList();
+            assertEquals(2, stateSets.size());
+            assertTrue(stateSets.get(0).contains("\"fnsp\":\"" + FanSpeed.power(5).getStateValue() + "\""));
+
+            // Heat mode is not supported by the Pure Cool
+            assertFalse(stateSets.get(0).contains("hmod"));
+        }
+    }
+
+    // Delivers a message from the fan and waits for it to have been applied to the cached status
+    private static void deliverStatus(FakeMqttTransport transport, DysonFan fan, String payload) throws InterruptedException {
+        DeviceStatus status = fan.getCachedStatus();
+        transport.lastConnection().deliver(payload);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getCachedStatus() == status && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitPendingMessages(DysonFan fan, int pendingMessages) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fan.getPendingMessages() != pendingMessages && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(pendingMessages, fan.getPendingMessages());
+    }
+
+    private static InetAddress address() throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] {(byte) 192, (byte) 168, 0, 1});
+    }
+
+}
@@ -0,0 +1,55 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import wtf.choco.dyson4j.setting.FanMode;
+import wtf.choco.dyson4j.setting.FanSpeed;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.setting.SleepTimer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DysonDeviceStatusTest {
+
+    private static final DysonDeviceStatus STATUS = new DysonDeviceStatus("02C0", "NONE", 1000, new MqttStateValueProvider[FanState.values().size()])
+            .withStates(Map.of(FanState.MODE, FanMode.ON, FanState.SLEEP_TIMER, SleepTimer.ofMinutes(30)));
+
+    @Test
+    void testGetState() {
+        assertEquals(FanMode.ON, STATUS.getState(FanState.MODE));
+        assertEquals(SleepTimer.ofMinutes(30), STATUS.getState(FanState.SLEEP_TIMER));
+        assertNull(STATUS.getState(FanState.SPEED));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    void testWithStates() {
+        DysonDeviceStatus status = STATUS.withStates(Map.of(FanState.SPEED, FanSpeed.POWER_3));
+
+        assertEquals(FanSpeed.POWER_3, status.getState(FanState.SPEED));
+        assertNull(STATUS.getState(FanState.SPEED)); // Original must be unchanged
+        assertThrows(IllegalArgumentException.class, () -> STATUS.withStates((Map) Map.of(FanState.SPEED, FanMode.OFF)));
+    }
+
+    @Test
+    void testEqualsAndChangedStates() {
+        DysonDeviceStatus same = STATUS.withStates(Map.of(FanState.SLEEP_TIMER, SleepTimer.ofMinutes(30)));
+        DysonDeviceStatus different = STATUS.withStates(Map.of(FanState.MODE, FanMode.AUTO, FanState.SPEED, FanSpeed.AUTO));
+
+        assertEquals(STATUS, same);
+        assertEquals(STATUS.hashCode(), same.hashCode());
+        assertTrue(STATUS.getChangedStates(same).isEmpty());
+
+        assertNotEquals(STATUS, different);
+        assertEquals(Set.of(FanState.MODE, FanState.SPEED), STATUS.getChangedStates(different));
+    }
+
+}
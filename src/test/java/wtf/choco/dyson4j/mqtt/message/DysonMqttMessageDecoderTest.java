@@ -0,0 +1,99 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import wtf.choco.dyson4j.DeviceStatus;
+import wtf.choco.dyson4j.EnvironmentalSensorData;
+import wtf.choco.dyson4j.setting.FanMode;
+import wtf.choco.dyson4j.setting.FanSpeed;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.SleepTimer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DysonMqttMessageDecoderTest {
+
+    @Test
+    void testDecodeCurrentState() {
+        DysonMqttIncomingMessage message = decode("{\"msg\":\"CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15.000Z\",\"mode-reason\":\"LAPP\",\"dial\":\"OFF\",\"rssi\":\"-31\","
+                + "\"product-state\":{\"fmod\":\"FAN\",\"fnst\":\"FAN\",\"fnsp\":\"0004\",\"qtar\":\"0003\",\"oson\":\"ON\",\"ercd\":\"NONE\",\"wacd\":\"NONE\",\"filf\":\"2087\",\"sltm\":\"0090\",\"unknown\":[1, {\"a\": null}]},"
+                + "\"scheduler\":{\"srsc\":\"a58d\",\"dstv\":\"0001\",\"tzid\":\"0001\"}}");
+
+        assertEquals(DysonMqttMessageDecoder.MESSAGE_ID_CURRENT_STATE, message.getMessageId());
+        assertNull(message.getSensorData());
+
+        DeviceStatus status = message.getDeviceStatus();
+        assertNotNull(status);
+        assertEquals("NONE", status.getErrorCode());
+        assertEquals(2087, status.getRemainingFilterLife());
+        assertEquals(FanMode.ON, status.getState(FanState.MODE));
+        assertEquals(FanSpeed.POWER_4, status.getState(FanState.SPEED));
+        assertEquals(SleepTimer.ofMinutes(90), status.getState(FanState.SLEEP_TIMER));
+    }
+
+    @Test
+    void testDecodeStateChange() {
+        DysonMqttIncomingMessage message = decode("{\"msg\":\"STATE-CHANGE\",\"time\":\"2022-06-01T12:30:15.000Z\","
+                + "\"product-state\":{\"fmod\":[\"AUTO\",\"FAN\"],\"fnsp\":[\"AUTO\",\"0002\"],\"ercd\":[\"NONE\",\"NONE\"],\"oson\":[\"ON\"]}}");
+
+        assertEquals(DysonMqttMessageDecoder.MESSAGE_ID_STATE_CHANGE, message.getMessageId());
+        assertNull(message.getDeviceStatus());
+        assertEquals(2, message.getNewStates().size());
+        assertEquals(FanMode.AUTO, message.getPreviousStates().get(FanState.MODE));
+        assertEquals(FanMode.ON, message.getNewStates().get(FanState.MODE));
+        assertEquals(FanSpeed.POWER_2, message.getNewStates().get(FanState.SPEED));
+    }
+
+    @Test
+    void testDecodeSensorData() {
+        // Message id deliberately last. The fan makes no guarantees about field order
+        DysonMqttIncomingMessage message = decode(" {\"time\" : \"2022-06-01T12:30:15.000Z\", \"data\" : {\"tact\":\"2950\",\"hact\":\"0053\",\"pact\":\"0004\",\"vact\":\"INIT\",\"sltm\":\"OFF\"},"
+                + " \"msg\" : \"ENVIRONMENTAL-CURRENT-SENSOR-DATA\"}\n");
+
+        EnvironmentalSensorData sensorData = message.getSensorData();
+        assertNotNull(sensorData);
+        assertEquals(295.0, sensorData.getTemperature());
+        assertEquals(53, sensorData.getRelativeHumidity());
+        assertEquals(4, sensorData.getParticles());
+        assertEquals(-1, sensorData.getVolatileCompounds());
+        assertEquals(SleepTimer.OFF, sensorData.getSleepTimer());
+
+        // Incomplete sensor data is not decoded
+        assertNull(decode("{\"msg\":\"ENVIRONMENTAL-CURRENT-SENSOR-DATA\",\"data\":{\"tact\":\"OFF\",\"hact\":\"abc\"}}").getSensorData());
+    }
+
+    @Test
+    void testDecodeEscapedStrings() {
+        DysonMqttIncomingMessage message = decode("{\"msg\":\"CUSTOM\\u002DMESSAGE \\\"é\\\"\"}");
+        assertEquals("CUSTOM-MESSAGE \"é\"", message.getMessageId());
+    }
+
+    @Test
+    void testDecodeInvalid() {
+        assertNull(DysonMqttMessageDecoder.decode("{\"time\":\"2022-06-01T12:30:15.000Z\"}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"msg\":\"CURRENT-STATE\""));
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"msg\" \"CURRENT-STATE\"}"));
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"msg\":\"CURRENT-STATE\"}}"));
+        assertNull(decode("{\"msg\":\"CURRENT-STATE\",\"product-state\":{}}").getDeviceStatus());
+    }
+
+    @Test
+    void testDecodeDeeplyNested() {
+        // Must fail as any other malformed payload rather than overflowing the stack
+        String nested = "[".repeat(100_000);
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"msg\":\"CURRENT-STATE\",\"extra\":" + nested + "}"));
+
+        // Reasonably nested unknown values are still skipped
+        assertNull(decode("{\"msg\":\"CURRENT-STATE\",\"extra\":[[{\"a\":[1]}]]}").getDeviceStatus());
+    }
+
+    private static DysonMqttIncomingMessage decode(String payload) {
+        return DysonMqttMessageDecoder.decode(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
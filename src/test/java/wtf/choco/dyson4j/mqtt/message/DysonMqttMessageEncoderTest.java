@@ -0,0 +1,82 @@
+package wtf.choco.dyson4j.mqtt.message;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import wtf.choco.dyson4j.setting.FanMode;
+import wtf.choco.dyson4j.setting.FanSpeed;
+import wtf.choco.dyson4j.setting.FanState;
+import wtf.choco.dyson4j.setting.MqttStateValueProvider;
+import wtf.choco.dyson4j.setting.SleepTimer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DysonMqttMessageEncoderTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2022-06-01T12:30:15.250Z"), ZoneOffset.UTC);
+
+    @Test
+    void testEncodeRequest() {
+        byte[] encoded = DysonMqttMessageEncoder.encode(new DysonMqttMessageRequestCurrentState(), CLOCK);
+        assertEquals("{\"msg\":\"REQUEST-CURRENT-STATE\",\"time\":\"2022-06-01T12:30:15Z\"}", new String(encoded, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEncodeSetState() {
+        Map<FanState<?>, MqttStateValueProvider> states = new LinkedHashMap<>();
+        states.put(FanState.MODE, FanMode.ON);
+        states.put(FanState.SPEED, FanSpeed.POWER_4);
+        states.put(FanState.SLEEP_TIMER, SleepTimer.ofMinutes(90));
+
+        DysonMqttMessageSetState message = new DysonMqttMessageSetState(states);
+        String encoded = new String(DysonMqttMessageEncoder.encode(message, CLOCK), StandardCharsets.UTF_8);
+
+        // Must be identical in content to the Gson representation
+        JsonObject expected = message.asJsonObject();
+        expected.addProperty("time", "2022-06-01T12:30:15Z");
+        assertEquals(expected, new Gson().fromJson(encoded, JsonObject.class));
+    }
+
+    @Test
+    void testEncodeMatchesJsonObject() {
+        Map<FanState<?>, MqttStateValueProvider> states = Map.of(FanState.MODE, FanMode.ON, FanState.SPEED, FanSpeed.POWER_4, FanState.SLEEP_TIMER, SleepTimer.ofMinutes(90));
+
+        // Every message type must write the same data whether encoded directly or populated as a JsonObject
+        List<DysonMqttMessage<?>> messages = List.of(
+                new DysonMqttMessageRequestCurrentState(),
+                new DysonMqttMessageRequestCurrentState(false),
+                new DysonMqttMessageRequestEnvironmentalSensorData(),
+                new DysonMqttMessageSetState(states),
+                new DysonMqttMessageSetState(states).precompile(),
+                new DysonMqttMessageSetStateConfirmed(states)
+        );
+
+        for (DysonMqttMessage<?> message : messages) {
+            String encoded = new String(DysonMqttMessageEncoder.encode(message, CLOCK), StandardCharsets.UTF_8);
+
+            JsonObject expected = message.asJsonObject();
+            expected.addProperty("time", "2022-06-01T12:30:15Z");
+            assertEquals(expected, new Gson().fromJson(encoded, JsonObject.class), () -> message.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void testEncodePrecompiledSetState() {
+        DysonMqttMessageSetState message = new DysonMqttMessageSetState(Map.of(FanState.MODE, FanMode.ON, FanState.SPEED, FanSpeed.POWER_4));
+        byte[] expected = DysonMqttMessageEncoder.encode(message, CLOCK);
+
+        message.precompile();
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(DysonMqttMessageEncoder.encode(message, CLOCK), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,131 @@
+package wtf.choco.dyson4j.mqtt.transport;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioMqttTransportTest {
+
+    @Test
+    void testConnectSubscribePublish() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()); NioMqttTransport transport = new NioMqttTransport(1)) {
+            CompletableFuture<byte[]> published = CompletableFuture.supplyAsync(() -> {
+                try (Socket socket = server.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    OutputStream out = socket.getOutputStream();
+
+                    Packet connect = readPacket(in);
+                    assertEquals(0x10, connect.header);
+                    out.write(new byte[] {0x20, 0x02, 0x00, 0x00}); // CONNACK, accepted
+
+                    Packet subscribe = readPacket(in);
+                    assertEquals(0x82, subscribe.header);
+                    out.write(new byte[] {(byte) 0x90, 0x03, subscribe.body[0], subscribe.body[1], 0x00}); // SUBACK, QoS 0
+
+                    out.write(MqttPackets.publish("475/ABC/status/current", "{\"msg\":\"CURRENT-STATE\"}".getBytes(StandardCharsets.UTF_8)));
+
+                    Packet publish = readPacket(in);
+                    assertEquals(0x30, publish.header);
+
+                    assertEquals(0xE0, readPacket(in).header); // DISCONNECT
+                    return publish.body;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            MqttTransportConnection connection = transport.createConnection(new MqttConnectionSettings(server.getInetAddress().getHostAddress(), server.getLocalPort(), "client", "ABC", "password", 60));
+            connection.connect(Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertTrue(connection.isConnected());
+
+            CompletableFuture<String> received = new CompletableFuture<>();
+            connection.subscribe("475/+/status/current", (topic, payload) -> received.complete(topic + " " + new String(payload, StandardCharsets.UTF_8))).get(5, TimeUnit.SECONDS);
+            assertEquals("475/ABC/status/current {\"msg\":\"CURRENT-STATE\"}", received.get(5, TimeUnit.SECONDS));
+
+            byte[] payload = "{\"msg\":\"REQUEST-CURRENT-STATE\"}".getBytes(StandardCharsets.UTF_8);
+            connection.publish("475/ABC/command", payload).get(5, TimeUnit.SECONDS);
+            connection.disconnect().get(5, TimeUnit.SECONDS);
+            assertFalse(connection.isConnected());
+
+            ByteBuffer body = ByteBuffer.wrap(published.get(5, TimeUnit.SECONDS));
+            byte[] topic = new byte[body.getShort()];
+            body.get(topic);
+            byte[] receivedPayload = new byte[body.remaining()];
+            body.get(receivedPayload);
+
+            assertEquals("475/ABC/command", new String(topic, StandardCharsets.UTF_8));
+            assertArrayEquals(payload, receivedPayload);
+        }
+    }
+
+    @Test
+    void testConnectionRefused() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()); NioMqttTransport transport = new NioMqttTransport(1)) {
+            CompletableFuture.runAsync(() -> {
+                try (Socket socket = server.accept()) {
+                    readPacket(new DataInputStream(socket.getInputStream()));
+                    socket.getOutputStream().write(new byte[] {0x20, 0x02, 0x00, 0x05}); // CONNACK, not authorized
+                    socket.getInputStream().read();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            MqttTransportConnection connection = transport.createConnection(new MqttConnectionSettings(server.getInetAddress().getHostAddress(), server.getLocalPort(), "client", "ABC", "wrong", 60));
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> connection.connect(Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IOException);
+            assertFalse(connection.isConnected());
+        }
+    }
+
+    @Test
+    void testMatchesTopicFilter() {
+        assertTrue(NioMqttConnection.matchesTopicFilter("475/ABC/status/current", "475/ABC/status/current"));
+        assertTrue(NioMqttConnection.matchesTopicFilter("475/+/status/current", "475/ABC/status/current"));
+        assertTrue(NioMqttConnection.matchesTopicFilter("475/#", "475/ABC/status/current"));
+        assertTrue(NioMqttConnection.matchesTopicFilter("475/#", "475"));
+        assertFalse(NioMqttConnection.matchesTopicFilter("475/+", "475/ABC/status"));
+        assertFalse(NioMqttConnection.matchesTopicFilter("475/ABC/status", "475/ABC/status/current"));
+    }
+
+    @Test
+    void testKeepAliveBounds() {
+        assertEquals(0, new MqttConnectionSettings("localhost", 1883, "client", "ABC", "password", 0).getKeepAliveSeconds());
+        assertEquals(0xFFFF, new MqttConnectionSettings("localhost", 1883, "client", "ABC", "password", 0xFFFF).getKeepAliveSeconds());
+        assertThrows(IllegalArgumentException.class, () -> new MqttConnectionSettings("localhost", 1883, "client", "ABC", "password", -1));
+        assertThrows(IllegalArgumentException.class, () -> new MqttConnectionSettings("localhost", 1883, "client", "ABC", "password", 0x10000));
+    }
+
+    private static Packet readPacket(DataInputStream in) throws IOException {
+        int header = in.readUnsignedByte();
+        int remainingLength = 0;
+        for (int shift = 0, encodedByte = 0x80; (encodedByte & 0x80) != 0; shift += 7) {
+            encodedByte = in.readUnsignedByte();
+            remainingLength |= (encodedByte & 0x7F) << shift;
+        }
+
+        byte[] body = new byte[remainingLength];
+        in.readFully(body);
+        return new Packet(header, body);
+    }
+
+    private record Packet(int header, byte[] body) { }
+
+}
@@ -0,0 +1,53 @@
+package wtf.choco.dyson4j.setting;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanStateSetTest {
+
+    @Test
+    void testContains() {
+        FanStateSet set = FanStateSet.of(FanState.MODE, FanState.SPEED);
+
+        assertTrue(set.contains(FanState.MODE));
+        assertTrue(set.contains((Object) FanState.SPEED));
+        assertFalse(set.contains(FanState.HEAT_MODE));
+        assertFalse(set.contains("fmod"));
+        assertEquals(2, set.size());
+        assertEquals(Set.of(FanState.MODE, FanState.SPEED), set);
+    }
+
+    @Test
+    void testBulkOperations() {
+        FanStateSet first = FanStateSet.of(FanState.MODE, FanState.SPEED, FanState.OSCILLATION);
+        FanStateSet second = FanStateSet.of(FanState.SPEED, FanState.HEAT_MODE);
+
+        assertEquals(FanStateSet.of(FanState.SPEED), first.intersect(second));
+        assertEquals(FanStateSet.of(FanState.MODE, FanState.SPEED, FanState.OSCILLATION, FanState.HEAT_MODE), first.union(second));
+        assertEquals(FanStateSet.of(FanState.MODE, FanState.OSCILLATION), first.difference(second));
+        assertTrue(first.containsAll(FanStateSet.of(FanState.MODE, FanState.OSCILLATION)));
+        assertFalse(first.containsAll(second));
+        assertSame(FanStateSet.empty(), first.intersect(FanStateSet.of(FanState.HEAT_MODE)));
+    }
+
+    @Test
+    void testIterationOrder() {
+        assertEquals(FanState.values(), List.copyOf(FanStateSet.all()));
+        assertEquals(List.of(FanState.MODE, FanState.MAXIMUM_TEMPERATURE), List.copyOf(FanStateSet.of(FanState.MAXIMUM_TEMPERATURE, FanState.MODE)));
+    }
+
+    @Test
+    void testFromBitMask() {
+        assertEquals(FanStateSet.of(FanState.SPEED), FanStateSet.fromBitMask(1L << FanState.SPEED.getOrdinal()));
+        assertThrows(IllegalArgumentException.class, () -> FanStateSet.fromBitMask(1L << FanState.values().size()));
+    }
+
+}
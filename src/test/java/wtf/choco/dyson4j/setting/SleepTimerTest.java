@@ -46,4 +46,12 @@ class SleepTimerTest {
         assertNotEquals(SleepTimer.ofMinutes(10), SleepTimer.ofMinutes(11));
     }
 
+    @Test
+    void testGetById() {
+        assertSame(SleepTimer.OFF, SleepTimer.getById("OFF"));
+        assertEquals(SleepTimer.ofMinutes(45), SleepTimer.getById("0045"));
+        assertNull(SleepTimer.getById("ABCD"));
+        assertNull(SleepTimer.getById("10000"));
+    }
+
 }
@@ -3,6 +3,7 @@ package wtf.choco.dyson4j.setting;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class TemperatureLimitTest {
@@ -26,4 +27,12 @@ class TemperatureLimitTest {
         assertEquals(TemperatureLimit.of(21, TemperatureUnit.CELSIUS), TemperatureLimit.of(69.8F, TemperatureUnit.FAHRENHEIT));
     }
 
+    @Test
+    void testGetById() {
+        assertEquals(TemperatureLimit.of(295, TemperatureUnit.KELVIN), TemperatureLimit.getById("2950"));
+        assertEquals("2950", TemperatureLimit.getById("2950").getStateValue());
+        assertNull(TemperatureLimit.getById("9990"));
+        assertNull(TemperatureLimit.getById("OFF"));
+    }
+
 }
@@ -0,0 +1,43 @@
+package wtf.choco.dyson4j.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerialExecutorTest {
+
+    @Test
+    void testOrdering() throws InterruptedException {
+        ExecutorService delegate = Executors.newFixedThreadPool(4);
+
+        try {
+            SerialExecutor executor = new SerialExecutor(delegate);
+            List<Integer> results = new ArrayList<>(); // Deliberately not thread-safe, tasks must never overlap
+            CountDownLatch done = new CountDownLatch(1000);
+
+            for (int i = 0; i < 1000; i++) {
+                int value = i;
+                executor.execute(() -> {
+                    results.add(value);
+                    done.countDown();
+                });
+            }
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, results.get(i));
+            }
+        } finally {
+            delegate.shutdown();
+        }
+    }
+
+}